@@ -0,0 +1,162 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One recognition query against galleries of 100, 10k and 100k random 192-d faces.
+ *
+ * {@link #mapScan} is the original {@code recognizeFace} loop (scalar cosine against
+ * every entry of a name-to-embedding map); {@link #findNearest} runs the same query through
+ * each {@link GalleryIndex}. New index types only need a case in {@link Index#build}.
+ * {@link #rejectUnknown} searches for faces that are not registered against the
+ * recognition threshold, the common case for hallway cameras.
+ * {@link #findTopK} ranks the best {@value #TOP_K} faces through the bounded heap.
+ * Building the 100k HNSW graph takes a minute or two per fork.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Thread)
+public class GallerySearchBenchmark {
+    private static final int DIMENSION = 192;
+    private static final int QUERIES = 256;
+    private static final float QUERY_NOISE = 0.6f;
+    private static final float SIMILARITY_THRESHOLD = 0.75f;
+    private static final int TOP_K = 5;
+
+    @State(Scope.Benchmark)
+    public static class Gallery {
+        @Param({"100", "10000", "100000"})
+        public int gallerySize;
+
+        Map<String, float[]> faces;
+        float[][] queries;
+        float[][] unknownQueries;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(42);
+            faces = TestEmbeddings.gallery(random, gallerySize, DIMENSION);
+
+            List<float[]> identities = new ArrayList<>(faces.values());
+            queries = new float[QUERIES][];
+            for (int i = 0; i < QUERIES; i++) {
+                float[] identity = identities.get(random.nextInt(identities.size()));
+                queries[i] = TestEmbeddings.withNoise(random, identity, QUERY_NOISE);
+            }
+            unknownQueries = new float[QUERIES][];
+            for (int i = 0; i < QUERIES; i++) {
+                unknownQueries[i] = TestEmbeddings.randomVector(random, DIMENSION);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Index {
+        @Param({"matrix", "int8", "pq", "hnsw"})
+        public String index;
+
+        GalleryIndex gallery;
+
+        @Setup(Level.Trial)
+        public void build(Gallery faces) {
+            gallery = build(index, faces.faces);
+        }
+
+        static GalleryIndex build(String type, Map<String, float[]> faces) {
+            switch (type) {
+                case "matrix":
+                    return EmbeddingMatrix.fromMap(faces);
+                case "int8":
+                    return Int8GalleryIndex.fromMap(DIMENSION, faces);
+                case "pq":
+                    List<float[]> vectors = new ArrayList<>(faces.values());
+                    ProductQuantizer quantizer = ProductQuantizer.train(vectors, DIMENSION,
+                            ProductQuantizer.DEFAULT_SUBSPACES, faces.size());
+                    return PqGalleryIndex.fromMap(quantizer, faces);
+                case "hnsw":
+                    HnswIndex hnsw = new HnswIndex();
+                    for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+                        hnsw.put(entry.getKey(), entry.getValue());
+                    }
+                    return hnsw;
+                default:
+                    throw new IllegalArgumentException("Unknown index: " + type);
+            }
+        }
+    }
+
+    private int next = 0;
+
+    private float[] nextQuery(Gallery gallery) {
+        return nextQuery(gallery.queries);
+    }
+
+    private float[] nextQuery(float[][] queries) {
+        float[] query = queries[next];
+        next = (next + 1) % QUERIES;
+        return query;
+    }
+
+    @Benchmark
+    public String mapScan(Gallery gallery) {
+        float[] query = nextQuery(gallery);
+        String bestMatch = null;
+        float bestSimilarity = 0f;
+        for (Map.Entry<String, float[]> entry : gallery.faces.entrySet()) {
+            float similarity = cosineScalar(query, entry.getValue());
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                bestMatch = entry.getKey();
+            }
+        }
+        return bestMatch;
+    }
+
+    // The original single-accumulator cosine, so mapScan stays the pre-index baseline
+    private static float cosineScalar(float[] a, float[] b) {
+        float dotProduct = 0f;
+        float norm1 = 0f;
+        float norm2 = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dotProduct += a[i] * b[i];
+            norm1 += a[i] * a[i];
+            norm2 += b[i] * b[i];
+        }
+        return dotProduct / ((float) Math.sqrt(norm1) * (float) Math.sqrt(norm2));
+    }
+
+    @Benchmark
+    public EmbeddingMatrix.Match findNearest(Gallery gallery, Index index) {
+        return index.gallery.findNearest(nextQuery(gallery));
+    }
+
+    @Benchmark
+    public List<EmbeddingMatrix.Match> findTopK(Gallery gallery, Index index) {
+        return index.gallery.findTopK(nextQuery(gallery), TOP_K);
+    }
+
+    @Benchmark
+    public EmbeddingMatrix.Match rejectUnknown(Gallery gallery, Index index) {
+        return index.gallery.findNearest(nextQuery(gallery.unknownQueries), SIMILARITY_THRESHOLD);
+    }
+}
@@ -0,0 +1,119 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 192-d comparisons with each {@link SimilarityKernels} kernel. These back
+ * {@code SimilarityClassifier.Utils} and {@code FaceNetModel.calculateSimilarity}.
+ * The {@code *Scalar} methods are the single-accumulator loops the kernels replaced,
+ * kept as the baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimilarityKernelsBenchmark {
+    private static final int DIMENSION = 192;
+    private static final int ROWS = 1000;
+
+    private float[] a;
+    private float[] b;
+    private float normA;
+    private float normB;
+    private float[] rows;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        a = TestEmbeddings.randomVector(random, DIMENSION);
+        b = TestEmbeddings.randomVector(random, DIMENSION);
+        normA = SimilarityKernels.norm(a);
+        normB = SimilarityKernels.norm(b);
+        rows = new float[ROWS * DIMENSION];
+        for (int row = 0; row < ROWS; row++) {
+            System.arraycopy(TestEmbeddings.randomVector(random, DIMENSION), 0, rows, row * DIMENSION, DIMENSION);
+        }
+    }
+
+    @Benchmark
+    public float cosine() {
+        return SimilarityKernels.cosine(a, b);
+    }
+
+    @Benchmark
+    public float cosinePrecomputedNorms() {
+        return SimilarityKernels.cosine(a, normA, b, normB);
+    }
+
+    @Benchmark
+    public float cosineScalar() {
+        float dotProduct = 0f;
+        float norm1 = 0f;
+        float norm2 = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dotProduct += a[i] * b[i];
+            norm1 += a[i] * a[i];
+            norm2 += b[i] * b[i];
+        }
+        return dotProduct / ((float) Math.sqrt(norm1) * (float) Math.sqrt(norm2));
+    }
+
+    @Benchmark
+    public float euclidean() {
+        return SimilarityKernels.euclidean(a, b);
+    }
+
+    @Benchmark
+    public float euclideanScalar() {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            float diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    @Benchmark
+    public float dot() {
+        return SimilarityKernels.dot(a, 0, b, 0, DIMENSION);
+    }
+
+    /**
+     * One query against 1000 rows, as in an exact gallery scan
+     */
+    @Benchmark
+    public int maxDotRow() {
+        return SimilarityKernels.maxDotRow(a, rows, ROWS, DIMENSION);
+    }
+
+    @Benchmark
+    public int maxDotRowScalar() {
+        int bestRow = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int row = 0, offset = 0; row < ROWS; row++, offset += DIMENSION) {
+            float dot = 0f;
+            for (int i = 0; i < DIMENSION; i++) {
+                dot += a[i] * rows[offset + i];
+            }
+            if (dot > bestScore) {
+                bestScore = dot;
+                bestRow = row;
+            }
+        }
+        return bestRow;
+    }
+}
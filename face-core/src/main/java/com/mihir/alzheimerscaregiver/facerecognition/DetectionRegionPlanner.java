@@ -0,0 +1,194 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides where in each frame the face detector runs: while faces are tracked, only on
+ * the previous boxes grown by {@code margin}, and on the whole frame every
+ * {@code fullScanInterval} frames or as soon as a tracked face is not found again.
+ * A face that walks in outside the region is therefore picked up by the next full scan.
+ *
+ * Because the detector sees a different crop on every frame, its own tracking IDs are
+ * not stable; this class assigns them instead by matching each box to the previous one
+ * it overlaps most. All boxes are in upright full-frame coordinates. Regions are aligned
+ * to {@value #ALIGNMENT} pixels, which keeps chroma subsampling intact and lets callers
+ * reuse crop buffers while a face stays put.
+ *
+ * Not thread-safe; call {@link #nextRegion} and {@link #update} in turn from the camera
+ * thread. The scan statistics may be read from any thread.
+ */
+public class DetectionRegionPlanner {
+    public static final int DEFAULT_FULL_SCAN_INTERVAL = 10;
+    // Growth of each tracked box per side, relative to its size, to cover motion between frames
+    public static final float DEFAULT_MARGIN = 0.5f;
+    // Least overlap (intersection over union) for a box to continue a track
+    public static final float MIN_OVERLAP = 0.3f;
+    // A region covering more of the frame than this saves too little to be worth a crop
+    private static final float MAX_REGION_FRACTION = 0.6f;
+    private static final int ALIGNMENT = 32;
+
+    private final int fullScanInterval;
+    private final float margin;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextTrackId = 0;
+    private int framesSinceFullScan = 0;
+    private boolean trackLost = false;
+    private boolean lastScanFull = true;
+    // Only written on the camera thread; volatile so statistics can be read from any thread
+    private volatile long fullScans = 0;
+    private volatile long regionScans = 0;
+    private volatile double scannedFraction = 0;
+
+    public DetectionRegionPlanner() {
+        this(DEFAULT_FULL_SCAN_INTERVAL, DEFAULT_MARGIN);
+    }
+
+    /**
+     * @param fullScanInterval At most this many frames between full-frame scans
+     * @param margin Growth of each tracked box per side, relative to its width and height
+     */
+    public DetectionRegionPlanner(int fullScanInterval, float margin) {
+        this.fullScanInterval = fullScanInterval;
+        this.margin = margin;
+    }
+
+    /**
+     * Region to detect faces in on the next frame
+     * @param width Upright frame width
+     * @param height Upright frame height
+     * @return {left, top, right, bottom} in upright coordinates, or null to scan the full frame
+     */
+    public int[] nextRegion(int width, int height) {
+        int[] region = tracks.isEmpty() || trackLost || framesSinceFullScan + 1 >= fullScanInterval
+                ? null : region(width, height);
+        lastScanFull = region == null;
+        if (region == null) {
+            framesSinceFullScan = 0;
+            fullScans++;
+            scannedFraction += 1;
+        } else {
+            framesSinceFullScan++;
+            regionScans++;
+            scannedFraction += (region[2] - region[0]) * (double) (region[3] - region[1]) / ((double) width * height);
+        }
+        return region;
+    }
+
+    /**
+     * Report the faces found in the region returned by the last {@link #nextRegion}
+     * @param boxes {left, top, right, bottom} per face, in upright full-frame coordinates
+     * @return Track ID per face
+     */
+    public int[] update(List<int[]> boxes) {
+        int[] trackIds = new int[boxes.size()];
+        boolean[] continued = new boolean[tracks.size()];
+        List<Track> next = new ArrayList<>(boxes.size());
+
+        // Greedy matching: each box takes the free track it overlaps most
+        for (int i = 0; i < boxes.size(); i++) {
+            int[] box = boxes.get(i);
+            int best = -1;
+            float bestOverlap = MIN_OVERLAP;
+            for (int t = 0; t < tracks.size(); t++) {
+                float overlap = overlap(box, tracks.get(t).box);
+                if (!continued[t] && overlap >= bestOverlap) {
+                    best = t;
+                    bestOverlap = overlap;
+                }
+            }
+            int id;
+            if (best >= 0) {
+                continued[best] = true;
+                id = tracks.get(best).id;
+            } else {
+                id = nextTrackId++;
+            }
+            trackIds[i] = id;
+            next.add(new Track(id, box.clone()));
+        }
+
+        // A tracked face missing from a region scan may have left the region; look everywhere
+        trackLost = false;
+        if (!lastScanFull) {
+            for (boolean found : continued) {
+                trackLost |= !found;
+            }
+        }
+        tracks.clear();
+        tracks.addAll(next);
+        return trackIds;
+    }
+
+    /**
+     * Forget all tracks, so the next frame is scanned in full
+     */
+    public void reset() {
+        tracks.clear();
+        trackLost = false;
+    }
+
+    public long getFullScanCount() {
+        return fullScans;
+    }
+
+    public long getRegionScanCount() {
+        return regionScans;
+    }
+
+    /**
+     * Mean fraction of the frame's pixels handed to the detector
+     */
+    public double getMeanScannedFraction() {
+        long scans = fullScans + regionScans;
+        return scans == 0 ? 0 : scannedFraction / scans;
+    }
+
+    // Union of the grown track boxes, aligned and clamped; null if it would be most of the frame
+    private int[] region(int width, int height) {
+        int left = width;
+        int top = height;
+        int right = 0;
+        int bottom = 0;
+        for (Track track : tracks) {
+            int[] box = track.box;
+            int growX = (int) ((box[2] - box[0]) * margin);
+            int growY = (int) ((box[3] - box[1]) * margin);
+            left = Math.min(left, box[0] - growX);
+            top = Math.min(top, box[1] - growY);
+            right = Math.max(right, box[2] + growX);
+            bottom = Math.max(bottom, box[3] + growY);
+        }
+        left = Math.max(0, Math.floorDiv(left, ALIGNMENT) * ALIGNMENT);
+        top = Math.max(0, Math.floorDiv(top, ALIGNMENT) * ALIGNMENT);
+        right = Math.min(width, Math.floorDiv(right + ALIGNMENT - 1, ALIGNMENT) * ALIGNMENT);
+        bottom = Math.min(height, Math.floorDiv(bottom + ALIGNMENT - 1, ALIGNMENT) * ALIGNMENT);
+        if (right <= left || bottom <= top
+                || (right - left) * (float) (bottom - top) > MAX_REGION_FRACTION * width * height) {
+            return null;
+        }
+        return new int[]{left, top, right, bottom};
+    }
+
+    static float overlap(int[] a, int[] b) {
+        float width = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        float height = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        if (width <= 0 || height <= 0) {
+            return 0f;
+        }
+        float intersection = width * height;
+        float union = (a[2] - a[0]) * (float) (a[3] - a[1]) + (b[2] - b[0]) * (float) (b[3] - b[1]) - intersection;
+        return intersection / union;
+    }
+
+    private static class Track {
+        private final int id;
+        private final int[] box;
+
+        Track(int id, int[] box) {
+            this.id = id;
+            this.box = box;
+        }
+    }
+}
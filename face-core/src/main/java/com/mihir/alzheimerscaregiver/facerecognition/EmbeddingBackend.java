@@ -0,0 +1,30 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.List;
+
+/**
+ * Turns preprocessed face crops into embeddings. The app uses a TFLite FaceNet
+ * model; {@link FakeEmbeddingBackend} stands in for it on a plain JVM.
+ */
+public interface EmbeddingBackend {
+
+    /**
+     * @return Side of the square input, in pixels
+     */
+    int getInputSize();
+
+    int getEmbeddingSize();
+
+    /**
+     * Embed a batch of faces
+     * @param inputs Arrays of {@code getInputSize() * getInputSize() * 3} floats in [-1, 1],
+     *               RGB order, e.g. from {@link FacePreprocessor}
+     * @return Embeddings in the same order, or null if the backend is unavailable
+     */
+    List<float[]> embed(List<float[]> inputs);
+
+    /**
+     * Release the backend; later calls to {@link #embed} return null
+     */
+    void close();
+}
@@ -0,0 +1,417 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory face gallery stored as one contiguous row-major float[] of
+ * L2-normalized embeddings with a parallel name index.
+ *
+ * Because every row has unit length, cosine similarity against a normalized
+ * query is a plain dot product and the gallery norms are never recomputed.
+ * Removal swaps the last row into the freed slot so rows stay dense.
+ *
+ * Threshold searches walk each row in blocks of {@value #BLOCK_SIZE}
+ * dimensions. By Cauchy-Schwarz the remaining blocks can add at most
+ * |q_rest| * |row_rest|, with the row's tail norms kept per block, so a row is abandoned
+ * as soon as it can no longer beat the threshold or the k-th best row so far. The result is
+ * the same as a full scan; most rows of an unregistered face are dropped after a block or two.
+ */
+public class EmbeddingMatrix implements GalleryIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    static final int BLOCK_SIZE = 32;
+    // Absorbs float rounding between the bound and the blocked sum, so pruning stays exact
+    private static final float BOUND_SLACK = 1e-5f;
+
+    private int dimension;
+    private float[] rows = new float[0];
+    // tailNorms[row * blocks + b]: L2 norm of the row from block b to the end
+    private float[] tailNorms = new float[0];
+    private final PruningStats pruningStats;
+    private final ArrayList<String> names = new ArrayList<>();
+    private final HashMap<String, Integer> rowIndex = new HashMap<>();
+
+    public EmbeddingMatrix() {
+        this(0);
+    }
+
+    /**
+     * @param dimension Embedding length, or 0 to take it from the first added embedding
+     */
+    public EmbeddingMatrix(int dimension) {
+        this.dimension = dimension;
+        this.pruningStats = new PruningStats();
+    }
+
+    // Copies keep counting into the same stats; one row of spare room for the usual next put
+    private EmbeddingMatrix(EmbeddingMatrix source) {
+        int count = source.names.size();
+        this.dimension = source.dimension;
+        this.rows = Arrays.copyOf(source.rows, (count + 1) * source.dimension);
+        this.tailNorms = Arrays.copyOf(source.tailNorms, (count + 1) * source.blockCount());
+        this.names.addAll(source.names);
+        this.rowIndex.putAll(source.rowIndex);
+        this.pruningStats = source.pruningStats;
+    }
+
+    public static EmbeddingMatrix fromMap(Map<String, float[]> faces) {
+        return fromMap(0, faces);
+    }
+
+    /**
+     * @param dimension Embedding length, or 0 to take it from the first added embedding
+     */
+    public static EmbeddingMatrix fromMap(int dimension, Map<String, float[]> faces) {
+        EmbeddingMatrix matrix = new EmbeddingMatrix(dimension);
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            matrix.put(entry.getKey(), entry.getValue());
+        }
+        return matrix;
+    }
+
+    /**
+     * Add or replace the embedding for {@code name}. The stored row is a normalized copy.
+     */
+    @Override
+    public void put(String name, float[] embedding) {
+        if (dimension == 0) {
+            dimension = embedding.length;
+        } else if (embedding.length != dimension) {
+            throw new IllegalArgumentException("Expected embedding of size " + dimension
+                    + " but got " + embedding.length);
+        }
+
+        Integer existing = rowIndex.get(name);
+        int row;
+        if (existing != null) {
+            row = existing;
+        } else {
+            row = names.size();
+            ensureCapacity(row + 1);
+            names.add(name);
+            rowIndex.put(name, row);
+        }
+
+        int offset = row * dimension;
+        System.arraycopy(embedding, 0, rows, offset, dimension);
+        normalize(rows, offset, dimension);
+        tailNorms(rows, offset, dimension, tailNorms, row * blockCount());
+    }
+
+    @Override
+    public boolean remove(String name) {
+        Integer removed = rowIndex.remove(name);
+        if (removed == null) {
+            return false;
+        }
+
+        int row = removed;
+        int last = names.size() - 1;
+        if (row != last) {
+            // Keep rows dense by moving the last row into the hole
+            System.arraycopy(rows, last * dimension, rows, row * dimension, dimension);
+            System.arraycopy(tailNorms, last * blockCount(), tailNorms, row * blockCount(), blockCount());
+            String moved = names.get(last);
+            names.set(row, moved);
+            rowIndex.put(moved, row);
+        }
+        names.remove(last);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        names.clear();
+        rowIndex.clear();
+        rows = new float[0];
+        tailNorms = new float[0];
+    }
+
+    @Override
+    public EmbeddingMatrix copy() {
+        return new EmbeddingMatrix(this);
+    }
+
+    @Override
+    public int size() {
+        return names.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return rowIndex.containsKey(name);
+    }
+
+    public String getName(int row) {
+        return names.get(row);
+    }
+
+    @Override
+    public String[] getNames() {
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Backing row-major array; only the first {@code size() * getDimension()} values are valid
+     */
+    public float[] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Copy of the normalized embedding for {@code name}, or null if not registered
+     */
+    public float[] get(String name) {
+        Integer row = rowIndex.get(name);
+        if (row == null) {
+            return null;
+        }
+        int offset = row * dimension;
+        return Arrays.copyOfRange(rows, offset, offset + dimension);
+    }
+
+    @Override
+    public float similarity(float[] normalizedQuery, String name) {
+        Integer row = rowIndex.get(name);
+        return row != null ? SimilarityKernels.dot(normalizedQuery, 0, rows, row * dimension, dimension) : Float.NaN;
+    }
+
+    @Override
+    public Map<String, float[]> toMap() {
+        Map<String, float[]> faces = new LinkedHashMap<>();
+        for (int row = 0; row < names.size(); row++) {
+            int offset = row * dimension;
+            faces.put(names.get(row), Arrays.copyOfRange(rows, offset, offset + dimension));
+        }
+        return faces;
+    }
+
+    /**
+     * Find the row with the highest cosine similarity to {@code query}
+     * @param query Raw embedding; it is not modified
+     * @return Best match, or null if the gallery is empty or sizes differ
+     */
+    @Override
+    public Match findNearest(float[] query) {
+        int count = names.size();
+        if (count == 0 || query.length != dimension) {
+            return null;
+        }
+
+        float[] q = Arrays.copyOf(query, dimension);
+        if (normalize(q, 0, dimension) == 0f) {
+            return null;
+        }
+
+        int bestRow = SimilarityKernels.maxDotRow(q, rows, count, dimension);
+        float bestScore = SimilarityKernels.dot(q, 0, rows, bestRow * dimension, dimension);
+        return new Match(names.get(bestRow), bestRow, bestScore);
+    }
+
+    /**
+     * Without a threshold the k-th best score stays low and the block bounds rarely
+     * prune, so this is a plain scan
+     */
+    @Override
+    public List<Match> findTopK(float[] query, int k) {
+        int count = names.size();
+        TopK top = new TopK(Math.min(k, count));
+        if (count == 0 || query.length != dimension) {
+            return top.toMatches(names);
+        }
+
+        float[] q = Arrays.copyOf(query, dimension);
+        if (normalize(q, 0, dimension) == 0f) {
+            return top.toMatches(names);
+        }
+
+        for (int row = 0, offset = 0; row < count; row++, offset += dimension) {
+            top.offer(row, SimilarityKernels.dot(q, 0, rows, offset, dimension));
+        }
+        return top.toMatches(names);
+    }
+
+    /**
+     * Exact best match above {@code minSimilarity}; see {@link #findTopK(float[], int, float)}
+     * @param query Raw embedding; it is not modified
+     * @return Best match with similarity strictly above {@code minSimilarity}, or null
+     */
+    @Override
+    public Match findNearest(float[] query, float minSimilarity) {
+        List<Match> matches = findTopK(query, 1, minSimilarity);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /**
+     * Exact top-k above {@code minSimilarity}, abandoning rows whose Cauchy-Schwarz
+     * bound falls below the threshold or the k-th best row so far
+     * @param query Raw embedding; it is not modified
+     * @return Matches with similarity strictly above {@code minSimilarity}, best first
+     */
+    @Override
+    public List<Match> findTopK(float[] query, int k, float minSimilarity) {
+        int count = names.size();
+        TopK top = new TopK(Math.min(k, count));
+        if (count == 0 || query.length != dimension) {
+            return top.toMatches(names);
+        }
+
+        float[] q = Arrays.copyOf(query, dimension);
+        if (normalize(q, 0, dimension) == 0f) {
+            return top.toMatches(names);
+        }
+
+        final float[] data = rows;
+        final float[] rowTails = tailNorms;
+        final int dim = dimension;
+        final int blocks = blockCount();
+        float[] queryTails = new float[blocks];
+        tailNorms(q, 0, dim, queryTails, 0);
+
+        float cutoff = Math.max(minSimilarity, top.floor());
+        long pruned = 0;
+        long skipped = 0;
+
+        for (int row = 0, offset = 0, tail = 0; row < count; row++, offset += dim, tail += blocks) {
+            float partial = 0f;
+            boolean abandoned = false;
+            for (int b = 0, start = 0; b < blocks; b++, start += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, dim - start);
+                partial += SimilarityKernels.dot(q, start, data, offset + start, length);
+                int next = b + 1;
+                if (next < blocks && partial + queryTails[next] * rowTails[tail + next] + BOUND_SLACK <= cutoff) {
+                    pruned++;
+                    skipped += dim - start - length;
+                    abandoned = true;
+                    break;
+                }
+            }
+            if (!abandoned && partial > cutoff) {
+                top.offer(row, partial);
+                cutoff = Math.max(minSimilarity, top.floor());
+            }
+        }
+
+        pruningStats.record(count, pruned, skipped, (long) count * dim);
+        return top.toMatches(names);
+    }
+
+    /**
+     * Counters for the threshold searches
+     */
+    public PruningStats getPruningStats() {
+        return pruningStats;
+    }
+
+    /**
+     * Scale {@code length} values starting at {@code offset} to unit L2 norm, in place
+     * @return The original norm; zero vectors are left untouched
+     */
+    public static float normalize(float[] vector, int offset, int length) {
+        float norm = (float) Math.sqrt(SimilarityKernels.squaredNorm(vector, offset, length));
+        if (norm > 0f) {
+            float inv = 1f / norm;
+            for (int i = offset; i < offset + length; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return norm;
+    }
+
+    private int blockCount() {
+        return (dimension + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    // out[outOffset + b] = norm of vector[offset + b * BLOCK_SIZE .. offset + length)
+    private static void tailNorms(float[] vector, int offset, int length, float[] out, int outOffset) {
+        int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        float squared = 0f;
+        for (int b = blocks - 1; b >= 0; b--) {
+            int start = b * BLOCK_SIZE;
+            squared += SimilarityKernels.squaredNorm(vector, offset + start, Math.min(BLOCK_SIZE, length - start));
+            out[outOffset + b] = (float) Math.sqrt(squared);
+        }
+    }
+
+    private void ensureCapacity(int rowCount) {
+        int needed = rowCount * dimension;
+        if (needed > rows.length) {
+            int capacity = Math.max(needed, Math.max(INITIAL_CAPACITY * dimension, rows.length * 2));
+            rows = Arrays.copyOf(rows, capacity);
+            tailNorms = Arrays.copyOf(tailNorms, capacity / dimension * blockCount());
+        }
+    }
+
+    /**
+     * How much work threshold search avoided. Safe to read from any thread.
+     */
+    public static class PruningStats {
+        private final AtomicLong rowsVisited = new AtomicLong();
+        private final AtomicLong rowsPruned = new AtomicLong();
+        private final AtomicLong valuesSkipped = new AtomicLong();
+        private final AtomicLong valuesTotal = new AtomicLong();
+
+        void record(long visited, long pruned, long skipped, long total) {
+            rowsVisited.addAndGet(visited);
+            rowsPruned.addAndGet(pruned);
+            valuesSkipped.addAndGet(skipped);
+            valuesTotal.addAndGet(total);
+        }
+
+        public long getRowsVisited() { return rowsVisited.get(); }
+        public long getRowsPruned() { return rowsPruned.get(); }
+
+        /**
+         * @return Fraction of rows abandoned before their last block
+         */
+        public float getPruningRate() {
+            long visited = rowsVisited.get();
+            return visited == 0 ? 0f : rowsPruned.get() / (float) visited;
+        }
+
+        /**
+         * @return Fraction of multiply-adds a full scan would have done that were skipped
+         */
+        public float getSkippedWorkRate() {
+            long total = valuesTotal.get();
+            return total == 0 ? 0f : valuesSkipped.get() / (float) total;
+        }
+
+        public void reset() {
+            rowsVisited.set(0);
+            rowsPruned.set(0);
+            valuesSkipped.set(0);
+            valuesTotal.set(0);
+        }
+    }
+
+    public static class Match {
+        private final String name;
+        private final int row;
+        private final float similarity;
+
+        public Match(String name, int row, float similarity) {
+            this.name = name;
+            this.row = row;
+            this.similarity = similarity;
+        }
+
+        public String getName() { return name; }
+        public int getRow() { return row; }
+        public float getSimilarity() { return similarity; }
+    }
+}
@@ -0,0 +1,189 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary gallery file holding the registered face embeddings.
+ *
+ * Layout (little endian):
+ *   header      magic, version, dimension, count, name table offset
+ *   records     count * dimension float32 values, fixed stride
+ *   name table  count * (u16 length + UTF-8 bytes), same order as the records
+ *
+ * The file is memory mapped on load so records are copied straight into
+ * float arrays without boxing or JSON parsing.
+ */
+public class EmbeddingStore {
+    static final int MAGIC = 0x464C4731; // "FLG1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    private final File file;
+
+    public EmbeddingStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean exists() {
+        return file.exists() && file.length() >= HEADER_SIZE;
+    }
+
+    /**
+     * Load all records from the gallery file
+     * @return Map of person name to embedding, in file order. Empty if the file does not exist
+     * @throws IOException if the file is unreadable or corrupt
+     */
+    public Map<String, float[]> load() throws IOException {
+        return load(null);
+    }
+
+    /**
+     * Load only the records stored under {@code names}; the others are skipped without
+     * being copied out of the mapping
+     * @param names Names to read, or null for all
+     * @return Map of name to embedding for the names present, in file order
+     * @throws IOException if the file is unreadable or corrupt
+     */
+    public Map<String, float[]> load(Set<String> names) throws IOException {
+        Map<String, float[]> faces = new LinkedHashMap<>();
+        if (!exists()) {
+            return faces;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException("Not a face gallery file: " + file);
+            }
+            if (mapped.getInt(4) != VERSION) {
+                throw new IOException("Unsupported gallery version " + mapped.getInt(4));
+            }
+            int dimension = mapped.getInt(8);
+            int count = mapped.getInt(12);
+            long namesOffset = mapped.getLong(16);
+
+            long recordsEnd = HEADER_SIZE + (long) count * dimension * 4;
+            if (dimension <= 0 || count < 0 || namesOffset != recordsEnd || namesOffset > mapped.capacity()) {
+                throw new IOException("Corrupt gallery header in " + file);
+            }
+
+            // Name table
+            mapped.position((int) namesOffset);
+            String[] recordNames = new String[count];
+            for (int i = 0; i < count; i++) {
+                int length = mapped.getShort() & 0xFFFF;
+                byte[] bytes = new byte[length];
+                mapped.get(bytes);
+                recordNames[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            // Fixed-stride records
+            mapped.position(HEADER_SIZE);
+            FloatBuffer records = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            for (int i = 0; i < count; i++) {
+                if (names != null && !names.contains(recordNames[i])) {
+                    continue;
+                }
+                float[] embedding = new float[dimension];
+                records.position(i * dimension);
+                records.get(embedding);
+                faces.put(recordNames[i], embedding);
+            }
+        } catch (IndexOutOfBoundsException | java.nio.BufferUnderflowException e) {
+            throw new IOException("Truncated gallery file " + file, e);
+        }
+
+        return faces;
+    }
+
+    /**
+     * Replace the gallery file with the given faces.
+     * The new contents are written to a temporary file and renamed over the old one,
+     * so a crash mid-write leaves the previous gallery intact.
+     * @param faces Map of person name to embedding. All embeddings must have the same length
+     * @throws IOException if the file could not be written
+     */
+    public void save(Map<String, float[]> faces) throws IOException {
+        int count = faces.size();
+        int dimension = 0;
+        byte[][] nameBytes = new byte[count][];
+        int namesSize = 0;
+
+        int i = 0;
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            if (i == 0) {
+                dimension = entry.getValue().length;
+            } else if (entry.getValue().length != dimension) {
+                throw new IOException("Embedding size mismatch for " + entry.getKey());
+            }
+            byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("Name too long: " + entry.getKey());
+            }
+            nameBytes[i++] = bytes;
+            namesSize += 2 + bytes.length;
+        }
+        if (count == 0) {
+            dimension = 1;
+        }
+
+        long namesOffset = HEADER_SIZE + (long) count * dimension * 4;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (namesOffset + namesSize)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(dimension)
+                .putInt(count)
+                .putLong(namesOffset);
+
+        FloatBuffer records = buffer.asFloatBuffer();
+        for (float[] embedding : faces.values()) {
+            records.put(embedding);
+        }
+
+        buffer.position((int) namesOffset);
+        for (byte[] bytes : nameBytes) {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.flip();
+
+        writeAtomically(buffer, file);
+    }
+
+    /**
+     * Write {@code data} to a temporary file, sync it and rename it over {@code file}
+     */
+    static void writeAtomically(ByteBuffer data, File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer source = data.duplicate();
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            channel.force(true);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+}
@@ -0,0 +1,834 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent gallery of registered faces in one directory: an {@link EmbeddingStore}
+ * snapshot plus {@link GalleryJournal}, and the search index built from them
+ * (exact, HNSW, int8 or product-quantized depending on size and {@link CompressionMode}).
+ *
+ * Each person is an {@link IdentityProfile}: a running centroid under their name plus,
+ * once they have more than one sample, up to {@link IdentityProfile#MAX_EXEMPLARS}
+ * exemplars under hidden keys. The search index holds one centroid row per person, so a
+ * query costs about one comparison per person; exemplars sit in a second index that is
+ * only looked up by key. A person scores their best centroid or exemplar similarity.
+ *
+ * No exemplar of a person is further from their centroid than the person's spread, the
+ * angle of {@link IdentityProfile#getSpread()}. A query at angle a from the centroid is
+ * therefore at least a - spread from every exemplar. Searches fetch centroids best
+ * first down to the cutoff that bound implies for the threshold or the current k-th
+ * score, and rescore only the exemplars of people whose bound can still beat it. On the
+ * exact index the result is the same as scoring every exemplar. {@link #findTopK} returns
+ * the ranking with the margin between the first two, for telling close calls apart.
+ *
+ * Only the indexes and each person's exemplar count and spread stay in memory, so
+ * compressed modes keep their savings for exemplars too. When a person enrolls again their full-precision
+ * samples are read back from the snapshot and journal, except for the person enrolled
+ * last, whose profile is kept so a follow-up enrollment costs no read. A capture burst
+ * should still go through {@link #enroll(String, List)} as one call.
+ *
+ * Indexes and exemplar metadata are published as an immutable snapshot through an
+ * {@link AtomicReference}. Recognition reads the current snapshot without locking, so it
+ * never waits for registration, deletion or journal I/O. Writers are serialized: each one
+ * copies the indexes, applies its change and swaps the copy in. A write therefore costs
+ * one copy of each index, so many changes at once should go through {@link #apply}.
+ *
+ * Mutations are journaled before the new snapshot is published. Snapshot, graph and
+ * codebook writes run on the persistence executor. So does switching the centroid index
+ * once the number of people grows into HNSW or product quantization, or past twice what
+ * the codebooks were trained on; searches keep using the old index until the new one is
+ * swapped in.
+ */
+public class FaceGallery {
+    private static final Logger LOG = Logger.getLogger("FaceGallery");
+    public static final String GALLERY_FILE = "face_gallery.bin";
+    public static final String JOURNAL_FILE = "face_gallery.journal";
+    public static final String HNSW_FILE = "face_gallery.hnsw";
+    public static final String PQ_FILE = "face_gallery.pq";
+    // Below this size an exact scan beats graph traversal
+    private static final int HNSW_MIN_FACES = 1000;
+    private static final int HNSW_EF_SEARCH = 64;
+    // Product quantization needs enough faces to train meaningful codebooks
+    private static final int PQ_MIN_FACES = 256;
+    // Absorbs float rounding in the centroid cutoff so pruning never drops a real match
+    private static final float BOUND_SLACK = 1e-5f;
+    // Exemplars share the journal and index with centroids under "<name>\0<slot>"; no UI name has a NUL
+    private static final char EXEMPLAR_SEPARATOR = '\0';
+
+    public enum CompressionMode {
+        NONE,
+        INT8,
+        PRODUCT_QUANTIZATION
+    }
+
+    private final int dimension;
+    private final CompressionMode compressionMode;
+    private final Executor persistenceExecutor;
+    private final EmbeddingStore embeddingStore;
+    private final GalleryJournal galleryJournal;
+    private final File hnswFile;
+    private final File pqFile;
+    private final AtomicReference<Version> registeredFaces;
+    // Whether open() has loaded the files and whether close() has run since, both
+    // guarded by the gallery lock
+    private boolean opened = false;
+    private boolean closed = false;
+    // Whether an index rebuild is queued on the persistence executor, guarded by the gallery lock
+    private boolean rebuildQueued = false;
+    // Last profile written, guarded by the gallery lock
+    private String cachedName;
+    private IdentityProfile cachedProfile;
+
+    /**
+     * Nothing is read until {@link #open()}
+     * @param directory Directory holding the gallery files
+     * @param dimension Embedding size
+     * @param persistenceExecutor Background executor for snapshot and index writes
+     */
+    public FaceGallery(File directory, int dimension, CompressionMode compressionMode, Executor persistenceExecutor) {
+        this.dimension = dimension;
+        this.compressionMode = compressionMode;
+        this.persistenceExecutor = persistenceExecutor;
+        this.embeddingStore = new EmbeddingStore(new File(directory, GALLERY_FILE));
+        this.galleryJournal = new GalleryJournal(new File(directory, JOURNAL_FILE), embeddingStore);
+        this.hnswFile = new File(directory, HNSW_FILE);
+        this.pqFile = new File(directory, PQ_FILE);
+        this.registeredFaces = new AtomicReference<>(emptyVersion());
+    }
+
+    /**
+     * @return true if a snapshot was written before, e.g. to skip a legacy migration
+     */
+    public boolean exists() {
+        return embeddingStore.exists();
+    }
+
+    /**
+     * Write {@code faces} as the snapshot, before {@link #open()}
+     */
+    public void importSnapshot(Map<String, float[]> faces) throws IOException {
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            checkDimension(entry.getKey(), entry.getValue());
+        }
+        embeddingStore.save(faces);
+    }
+
+    // A wrong-sized embedding would be journaled and then fail or skew every reload, and
+    // an empty index would adopt its length, so reject it before anything is written
+    private void checkDimension(String name, float[] embedding) {
+        if (embedding.length != dimension) {
+            throw new IllegalArgumentException("Expected embedding of size " + dimension
+                    + " for " + name + " but got " + embedding.length);
+        }
+    }
+
+    // A write or profile read that beats the background open loads the files first, so
+    // nothing is journaled against an unloaded gallery. A closed gallery stays closed.
+    private void openIfPending() {
+        if (!opened && !closed) {
+            open();
+        }
+    }
+
+    /**
+     * Load the snapshot and journal and build the index. On failure the gallery starts empty.
+     * Does nothing if already open. May run in the background: until it finishes searches
+     * see an empty gallery, and the first write or profile read opens the gallery itself.
+     */
+    public synchronized void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        closed = false;
+        forgetCachedProfile();
+        try {
+            Map<String, float[]> stored = galleryJournal.open();
+            // Profiles are only needed to lay out the rows; the indexes keep the samples from here on
+            Map<String, IdentityProfile> profiles = loadProfiles(stored);
+            Map<String, float[]> centroidRows = new HashMap<>();
+            Map<String, float[]> exemplarRows = new HashMap<>();
+            Map<String, Slots> people = new HashMap<>();
+            for (Map.Entry<String, IdentityProfile> entry : profiles.entrySet()) {
+                indexPut(centroidRows, exemplarRows, entry.getKey(), entry.getValue());
+                people.put(entry.getKey(), Slots.of(entry.getValue()));
+            }
+            publish(new Version(createIndex(centroidRows), createExemplarIndex(exemplarRows), people));
+            LOG.fine("Loaded " + people.size() + " registered faces");
+            compactIfNeeded();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Failed to load registered faces", e);
+            registeredFaces.set(emptyVersion());
+        }
+    }
+
+    /**
+     * Register {@code name} with this embedding alone, dropping any earlier samples
+     */
+    public synchronized void put(String name, float[] embedding) throws IOException {
+        checkDimension(name, embedding);
+        openIfPending();
+        IdentityProfile profile = IdentityProfile.of(embedding);
+        if (profile == null) {
+            throw new IllegalArgumentException("Cannot register a zero embedding for " + name);
+        }
+        write(name, profile);
+    }
+
+    /**
+     * Add a sample to {@code name}, creating the person if needed
+     * @return false if the sample was rejected as an outlier
+     */
+    public boolean enroll(String name, float[] embedding) throws IOException {
+        return enroll(name, Collections.singletonList(embedding)) == 1;
+    }
+
+    /**
+     * Add a burst of samples to {@code name} with one index copy and one journal record
+     * @return Number of samples accepted; outliers are skipped
+     */
+    public synchronized int enroll(String name, List<float[]> embeddings) throws IOException {
+        for (float[] embedding : embeddings) {
+            checkDimension(name, embedding);
+        }
+        openIfPending();
+        Slots slots = registeredFaces.get().people.get(name);
+        IdentityProfile profile = slots != null ? readProfile(name, slots.exemplars) : null;
+        int accepted = 0;
+        for (float[] embedding : embeddings) {
+            IdentityProfile next = profile == null ? IdentityProfile.of(embedding) : profile.withSample(embedding);
+            if (next != null) {
+                profile = next;
+                accepted++;
+            }
+        }
+        if (accepted > 0) {
+            write(name, profile);
+        }
+        return accepted;
+    }
+
+    /**
+     * @return true if {@code name} was registered
+     * @throws IOException If the deletion could not be journaled; the person stays registered
+     */
+    public synchronized boolean remove(String name) throws IOException {
+        openIfPending();
+        Version current = registeredFaces.get();
+        Slots slots = current.people.get(name);
+        if (slots == null) {
+            return false;
+        }
+        List<GalleryJournal.Entry> entries = new ArrayList<>();
+        deleteEntries(name, slots.exemplars, entries);
+        galleryJournal.appendBatch(entries);
+        Version next = current.copy();
+        indexRemove(next, name, slots.exemplars);
+        next.people.remove(name);
+        publish(next);
+        if (name.equals(cachedName)) {
+            forgetCachedProfile();
+        }
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Apply a batch atomically: either every entry is persisted and applied, or none.
+     * A put replaces the person with that single sample, as {@link #put} does.
+     */
+    public synchronized void apply(List<GalleryJournal.Entry> entries) throws IOException {
+        for (GalleryJournal.Entry entry : entries) {
+            if (entry.op == GalleryJournal.OP_PUT) {
+                checkDimension(entry.name, entry.embedding);
+            }
+        }
+        openIfPending();
+        Version next = registeredFaces.get().copy();
+        List<GalleryJournal.Entry> stored = new ArrayList<>();
+        for (GalleryJournal.Entry entry : entries) {
+            switch (entry.op) {
+                case GalleryJournal.OP_PUT:
+                    IdentityProfile profile = IdentityProfile.of(entry.embedding);
+                    if (profile == null) {
+                        throw new IllegalArgumentException("Cannot register a zero embedding for " + entry.name);
+                    }
+                    int replaced = exemplarCount(next, entry.name);
+                    profileEntries(entry.name, replaced, profile, stored);
+                    indexReplace(next, entry.name, replaced, profile);
+                    next.people.put(entry.name, Slots.of(profile));
+                    break;
+                case GalleryJournal.OP_DELETE:
+                    Slots old = next.people.remove(entry.name);
+                    if (old != null) {
+                        deleteEntries(entry.name, old.exemplars, stored);
+                        indexRemove(next, entry.name, old.exemplars);
+                    }
+                    break;
+                case GalleryJournal.OP_CLEAR:
+                    stored.add(GalleryJournal.Entry.clear());
+                    next.centroids.clear();
+                    next.exemplars.clear();
+                    next.people.clear();
+                    break;
+            }
+        }
+        // Write ahead: only publish the new gallery once the batch is on disk
+        galleryJournal.appendBatch(stored);
+        publish(next);
+        queueRebuildIfOutgrown();
+        forgetCachedProfile();
+        compactIfNeeded();
+    }
+
+    /**
+     * @return Best match, or null if the gallery is empty
+     */
+    public EmbeddingMatrix.Match findNearest(float[] query) {
+        return findTopK(query, 1).getBest();
+    }
+
+    /**
+     * Best match only if it scores strictly above {@code minSimilarity}
+     * @return Best match above the threshold, or null
+     */
+    public EmbeddingMatrix.Match findNearest(float[] query, float minSimilarity) {
+        return findTopK(query, 1, minSimilarity).getBest();
+    }
+
+    /**
+     * The {@code k} people most similar to {@code query}, each scored by their best
+     * centroid or exemplar
+     * @return Matches best first, with the margin between the first two
+     */
+    public TopMatches findTopK(float[] query, int k) {
+        return findTopK(query, k, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Top-k restricted to people scoring strictly above {@code minSimilarity}. The exact
+     * index abandons most centroids of an unknown face early against the threshold.
+     * To judge a close call, pass a threshold below the acceptance threshold by the
+     * margin of interest so the runner-up is not cut off.
+     */
+    public TopMatches findTopK(float[] query, int k, float minSimilarity) {
+        Version version = registeredFaces.get();
+        if (k <= 0 || version.centroids.isEmpty() || query.length != dimension) {
+            return TopMatches.empty();
+        }
+        float[] q = Arrays.copyOf(query, dimension);
+        if (EmbeddingMatrix.normalize(q, 0, dimension) == 0f) {
+            return TopMatches.empty();
+        }
+
+        Ranking ranking = new Ranking(k, minSimilarity);
+        Set<String> scored = new HashSet<>();
+        int fetch = Math.min(k, version.centroids.size());
+        while (true) {
+            // Centroids at or below the cutoff cannot have an exemplar that beats the floor
+            float cutoff = centroidCutoff(ranking.floor(), version.minSpread);
+            List<EmbeddingMatrix.Match> centroids = cutoff == Float.NEGATIVE_INFINITY
+                    ? version.centroids.findTopK(q, fetch)
+                    : version.centroids.findTopK(q, fetch, cutoff);
+            for (EmbeddingMatrix.Match centroid : centroids) {
+                if (scored.add(centroid.getName())) {
+                    ranking.offer(centroid.getName(), centroid.getRow(),
+                            personScore(version, q, centroid, ranking.floor()));
+                }
+            }
+            // Centroids come best first, so everything not fetched is at most the last one
+            if (centroids.size() < fetch || fetch == version.centroids.size() || upperBound(
+                    centroids.get(centroids.size() - 1).getSimilarity(), version.minSpread) <= ranking.floor()) {
+                return ranking.toMatches();
+            }
+            fetch = Math.min(fetch * 2, version.centroids.size());
+        }
+    }
+
+    /**
+     * @return Pruning counters of the exact centroid index, or null while another index type is in use
+     */
+    public EmbeddingMatrix.PruningStats getPruningStats() {
+        GalleryIndex current = registeredFaces.get().centroids;
+        return current instanceof EmbeddingMatrix ? ((EmbeddingMatrix) current).getPruningStats() : null;
+    }
+
+    /**
+     * Current immutable index of centroids, one row per person; later changes publish a
+     * new one and never modify it
+     */
+    public GalleryIndex snapshot() {
+        return registeredFaces.get().centroids;
+    }
+
+    /**
+     * Enrolled samples of {@code name} at full precision, read from disk
+     * @return Profile, or null if not registered
+     */
+    public synchronized IdentityProfile getProfile(String name) throws IOException {
+        openIfPending();
+        Slots slots = registeredFaces.get().people.get(name);
+        return slots != null ? readProfile(name, slots.exemplars) : null;
+    }
+
+    public String[] getNames() {
+        return registeredFaces.get().people.keySet().toArray(new String[0]);
+    }
+
+    public int size() {
+        return registeredFaces.get().people.size();
+    }
+
+    public boolean isEmpty() {
+        return registeredFaces.get().people.isEmpty();
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public synchronized void close() {
+        opened = false;
+        closed = true;
+        forgetCachedProfile();
+        galleryJournal.close();
+    }
+
+    // Fold the journal into a fresh snapshot once it grows past its threshold
+    private void compactIfNeeded() throws IOException {
+        if (galleryJournal.shouldCompact()) {
+            galleryJournal.compact(persistenceExecutor);
+            LOG.fine("Compacting gallery journal");
+
+            GalleryIndex current = registeredFaces.get().centroids;
+            if (current instanceof HnswIndex) {
+                saveHnswIndex((HnswIndex) current);
+            }
+        }
+    }
+
+    // Journal, then publish, the profile that replaces whatever is stored for name
+    private void write(String name, IdentityProfile profile) throws IOException {
+        Version next = registeredFaces.get().copy();
+        int old = exemplarCount(next, name);
+        List<GalleryJournal.Entry> entries = new ArrayList<>();
+        profileEntries(name, old, profile, entries);
+        galleryJournal.appendBatch(entries);
+        indexReplace(next, name, old, profile);
+        next.people.put(name, Slots.of(profile));
+        publish(next);
+        cachedName = name;
+        cachedProfile = profile;
+        queueRebuildIfOutgrown();
+        compactIfNeeded();
+    }
+
+    private void queueRebuildIfOutgrown() {
+        if (!rebuildQueued && outgrown(registeredFaces.get().centroids)) {
+            rebuildQueued = true;
+            persistenceExecutor.execute(this::rebuildIndex);
+        }
+    }
+
+    // Whether the index type open() would pick for this many people differs from the one in use
+    private boolean outgrown(GalleryIndex centroids) {
+        int people = centroids.size();
+        switch (compressionMode) {
+            case NONE:
+                return people >= HNSW_MIN_FACES && !(centroids instanceof HnswIndex);
+            case PRODUCT_QUANTIZATION:
+                if (centroids instanceof PqGalleryIndex) {
+                    return people >= 2 * ((PqGalleryIndex) centroids).getQuantizer().getTrainedOn();
+                }
+                return people >= PQ_MIN_FACES;
+            default:
+                return false;
+        }
+    }
+
+    // Rebuild the centroid index from the full-precision rows on disk. Holds the gallery lock,
+    // so writers wait, but searches carry on against the current snapshot.
+    private synchronized void rebuildIndex() {
+        rebuildQueued = false;
+        Version current = registeredFaces.get();
+        if (!outgrown(current.centroids)) {
+            return;
+        }
+        try {
+            // Journaled before published, so the disk holds exactly the current people
+            Map<String, float[]> centroids = galleryJournal.read(current.people.keySet());
+            GalleryIndex rebuilt = createIndex(centroids);
+            publish(new Version(rebuilt, current.exemplars, current.people));
+            LOG.fine("Rebuilt gallery index as " + rebuilt.getClass().getSimpleName()
+                    + " for " + centroids.size() + " people");
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to rebuild gallery index", e);
+        }
+    }
+
+    private void publish(Version next) {
+        float minSpread = 1f;
+        for (Slots slots : next.people.values()) {
+            minSpread = Math.min(minSpread, slots.spread);
+        }
+        next.minSpread = minSpread;
+        registeredFaces.set(next);
+    }
+
+    private void forgetCachedProfile() {
+        cachedName = null;
+        cachedProfile = null;
+    }
+
+    // Full-precision samples of a registered person; the index may only hold quantized copies
+    private IdentityProfile readProfile(String name, int exemplars) throws IOException {
+        if (name.equals(cachedName)) {
+            return cachedProfile;
+        }
+        Set<String> keys = new HashSet<>();
+        keys.add(name);
+        for (int slot = 0; slot < exemplars; slot++) {
+            keys.add(exemplarKey(name, slot));
+        }
+        Map<String, float[]> stored = galleryJournal.read(keys);
+
+        List<float[]> samples = new ArrayList<>(exemplars);
+        // Galleries written before multi-sample enrollment have no exemplar slots
+        for (int slot = 0; slot < exemplars && stored.containsKey(exemplarKey(name, slot)); slot++) {
+            samples.add(stored.get(exemplarKey(name, slot)));
+        }
+        float[] centroidSum = stored.get(name);
+        IdentityProfile profile = centroidSum != null ? IdentityProfile.restore(centroidSum, samples) : null;
+        if (profile == null) {
+            throw new IOException("Stored samples of " + name + " are missing or corrupt");
+        }
+        return profile;
+    }
+
+    private static int exemplarCount(Version version, String name) {
+        Slots slots = version.people.get(name);
+        return slots != null ? slots.exemplars : 0;
+    }
+
+    // Centroid similarity, raised by the person's exemplars unless their bound cannot beat the floor
+    private static float personScore(Version version, float[] q, EmbeddingMatrix.Match centroid, float floor) {
+        String name = centroid.getName();
+        float best = centroid.getSimilarity();
+        Slots slots = version.people.get(name);
+        if (slots == null || upperBound(best, slots.spread) <= Math.max(best, floor)) {
+            return best;
+        }
+        for (int slot = 0; slot < indexedExemplars(slots.exemplars); slot++) {
+            float similarity = version.exemplars.similarity(q, exemplarKey(name, slot));
+            if (similarity > best) {
+                best = similarity;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Highest similarity any exemplar can have to a query, given the query's similarity
+     * to the centroid and the person's spread: cos(max(0, a - s)) for the angles a and s
+     */
+    static float upperBound(float centroidSimilarity, float spread) {
+        float c = Math.max(-1f, Math.min(1f, centroidSimilarity));
+        if (c >= spread) {
+            return 1f;
+        }
+        return c * spread + (float) Math.sqrt((1 - c * c) * (1 - spread * spread));
+    }
+
+    /**
+     * Centroid similarity at or below which no exemplar can score above {@code floor}:
+     * cos(f + s) for the angles f and s, or negative infinity if every centroid qualifies
+     */
+    static float centroidCutoff(float floor, float spread) {
+        if (floor == Float.NEGATIVE_INFINITY || floor <= -spread) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        float f = Math.min(1f, floor);
+        float cutoff = f * spread - (float) Math.sqrt((1 - f * f) * (1 - spread * spread));
+        return cutoff - BOUND_SLACK;
+    }
+
+    private static void profileEntries(String name, int oldExemplars, IdentityProfile profile,
+                                       List<GalleryJournal.Entry> out) {
+        out.add(GalleryJournal.Entry.put(name, profile.getCentroidSum()));
+        for (int slot = 0; slot < profile.getExemplarCount(); slot++) {
+            out.add(GalleryJournal.Entry.put(exemplarKey(name, slot), profile.getExemplar(slot)));
+        }
+        for (int slot = profile.getExemplarCount(); slot < oldExemplars; slot++) {
+            out.add(GalleryJournal.Entry.delete(exemplarKey(name, slot)));
+        }
+    }
+
+    private static void deleteEntries(String name, int exemplars, List<GalleryJournal.Entry> out) {
+        out.add(GalleryJournal.Entry.delete(name));
+        for (int slot = 0; slot < exemplars; slot++) {
+            out.add(GalleryJournal.Entry.delete(exemplarKey(name, slot)));
+        }
+    }
+
+    private static String exemplarKey(String name, int slot) {
+        return name + EXEMPLAR_SEPARATOR + slot;
+    }
+
+    // A single sample is its own centroid, so only larger sets add exemplar rows
+    private static int indexedExemplars(int exemplars) {
+        return exemplars > 1 ? exemplars : 0;
+    }
+
+    private static void indexPut(Map<String, float[]> centroidRows, Map<String, float[]> exemplarRows,
+                                 String name, IdentityProfile profile) {
+        centroidRows.put(name, profile.getCentroidSum());
+        for (int slot = 0; slot < indexedExemplars(profile.getExemplarCount()); slot++) {
+            exemplarRows.put(exemplarKey(name, slot), profile.getExemplar(slot));
+        }
+    }
+
+    private static void indexReplace(Version version, String name, int oldExemplars, IdentityProfile profile) {
+        version.centroids.put(name, profile.getCentroidSum());
+        int slots = indexedExemplars(profile.getExemplarCount());
+        for (int slot = 0; slot < slots; slot++) {
+            version.exemplars.put(exemplarKey(name, slot), profile.getExemplar(slot));
+        }
+        for (int slot = slots; slot < indexedExemplars(oldExemplars); slot++) {
+            version.exemplars.remove(exemplarKey(name, slot));
+        }
+    }
+
+    private static void indexRemove(Version version, String name, int exemplars) {
+        version.centroids.remove(name);
+        for (int slot = 0; slot < indexedExemplars(exemplars); slot++) {
+            version.exemplars.remove(exemplarKey(name, slot));
+        }
+    }
+
+    // Split stored rows into centroids and exemplars, one profile per person
+    private static Map<String, IdentityProfile> loadProfiles(Map<String, float[]> stored) {
+        Map<String, float[]> centroids = new HashMap<>();
+        Map<String, float[][]> exemplars = new HashMap<>();
+        for (Map.Entry<String, float[]> entry : stored.entrySet()) {
+            String key = entry.getKey();
+            int separator = key.lastIndexOf(EXEMPLAR_SEPARATOR);
+            if (separator < 0) {
+                centroids.put(key, entry.getValue());
+                continue;
+            }
+            int slot;
+            try {
+                slot = Integer.parseInt(key.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (slot >= 0 && slot < IdentityProfile.MAX_EXEMPLARS) {
+                String name = key.substring(0, separator);
+                float[][] slots = exemplars.get(name);
+                if (slots == null) {
+                    slots = new float[IdentityProfile.MAX_EXEMPLARS][];
+                    exemplars.put(name, slots);
+                }
+                slots[slot] = entry.getValue();
+            }
+        }
+
+        Map<String, IdentityProfile> profiles = new HashMap<>();
+        for (Map.Entry<String, float[]> entry : centroids.entrySet()) {
+            List<float[]> samples = new ArrayList<>();
+            float[][] slots = exemplars.get(entry.getKey());
+            // Galleries written before multi-sample enrollment have no exemplars
+            for (int slot = 0; slots != null && slot < slots.length && slots[slot] != null; slot++) {
+                samples.add(slots[slot]);
+            }
+            IdentityProfile profile = IdentityProfile.restore(entry.getValue(), samples);
+            if (profile != null) {
+                profiles.put(entry.getKey(), profile);
+            }
+        }
+        return profiles;
+    }
+
+    private void saveHnswIndex(HnswIndex index) {
+        ByteBuffer graph = index.serialize();
+        persistenceExecutor.execute(() -> {
+            try {
+                HnswIndex.write(graph, hnswFile);
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to save HNSW index", e);
+            }
+        });
+    }
+
+    // Exemplars are only looked up by key: full floats, or int8 codes in the compressed modes
+    private GalleryIndex createExemplarIndex(Map<String, float[]> rows) {
+        return compressionMode == CompressionMode.NONE
+                ? EmbeddingMatrix.fromMap(dimension, rows)
+                : Int8GalleryIndex.fromMap(dimension, rows);
+    }
+
+    private Version emptyVersion() {
+        return new Version(new EmbeddingMatrix(dimension), createExemplarIndex(Collections.emptyMap()),
+                new HashMap<>());
+    }
+
+    // Compressed codes if requested, else exact scan for small galleries and HNSW for large ones
+    private GalleryIndex createIndex(Map<String, float[]> faces) {
+        if (compressionMode == CompressionMode.PRODUCT_QUANTIZATION && faces.size() >= PQ_MIN_FACES) {
+            return PqGalleryIndex.fromMap(loadOrTrainQuantizer(faces), faces);
+        }
+        if (compressionMode != CompressionMode.NONE) {
+            return Int8GalleryIndex.fromMap(dimension, faces);
+        }
+
+        if (faces.size() < HNSW_MIN_FACES) {
+            return EmbeddingMatrix.fromMap(dimension, faces);
+        }
+
+        HnswIndex index = null;
+        if (hnswFile.exists()) {
+            try {
+                index = HnswIndex.load(hnswFile);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Discarding unreadable HNSW index", e);
+            }
+        }
+        boolean fresh = index == null;
+        if (fresh) {
+            index = new HnswIndex();
+        }
+        index.setEfSearch(HNSW_EF_SEARCH);
+        // The saved graph may predate the newest journal records
+        index.syncWith(faces);
+        if (fresh) {
+            saveHnswIndex(index);
+        }
+        return index;
+    }
+
+    // Reuse saved codebooks unless the gallery has doubled since they were trained
+    private ProductQuantizer loadOrTrainQuantizer(Map<String, float[]> faces) {
+        if (pqFile.exists()) {
+            try {
+                ProductQuantizer quantizer = ProductQuantizer.load(pqFile);
+                if (quantizer.getDimension() == dimension
+                        && faces.size() < 2 * quantizer.getTrainedOn()) {
+                    return quantizer;
+                }
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Discarding unreadable product quantizer", e);
+            }
+        }
+
+        List<float[]> vectors = new ArrayList<>(faces.size());
+        for (float[] embedding : faces.values()) {
+            float[] normalized = embedding.clone();
+            EmbeddingMatrix.normalize(normalized, 0, normalized.length);
+            vectors.add(normalized);
+        }
+        ProductQuantizer quantizer = ProductQuantizer.train(vectors, dimension,
+                ProductQuantizer.DEFAULT_SUBSPACES, faces.size());
+        LOG.fine("Trained product quantizer on " + faces.size() + " faces");
+
+        persistenceExecutor.execute(() -> {
+            try {
+                quantizer.save(pqFile);
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to save product quantizer", e);
+            }
+        });
+        return quantizer;
+    }
+
+    // Exemplar count and spread of one person
+    private static final class Slots {
+        final int exemplars;
+        final float spread;
+
+        Slots(int exemplars, float spread) {
+            this.exemplars = exemplars;
+            this.spread = spread;
+        }
+
+        static Slots of(IdentityProfile profile) {
+            int exemplars = profile.getExemplarCount();
+            // Without exemplar rows the centroid is all there is to score
+            return new Slots(exemplars, indexedExemplars(exemplars) > 0 ? Math.min(1f, profile.getSpread()) : 1f);
+        }
+    }
+
+    // The k best people so far, best first
+    private static final class Ranking {
+        private final String[] names;
+        private final int[] rows;
+        private final float[] scores;
+        private final float minSimilarity;
+        private int size;
+
+        Ranking(int k, float minSimilarity) {
+            this.names = new String[k];
+            this.rows = new int[k];
+            this.scores = new float[k];
+            this.minSimilarity = minSimilarity;
+        }
+
+        // Score a newcomer must beat to enter the ranking
+        float floor() {
+            return size == names.length ? Math.max(minSimilarity, scores[size - 1]) : minSimilarity;
+        }
+
+        void offer(String name, int row, float score) {
+            if (score <= floor()) {
+                return;
+            }
+            int i = size < names.length ? size++ : size - 1;
+            while (i > 0 && scores[i - 1] < score) {
+                names[i] = names[i - 1];
+                rows[i] = rows[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            names[i] = name;
+            rows[i] = row;
+            scores[i] = score;
+        }
+
+        TopMatches toMatches() {
+            return size == 0 ? TopMatches.empty() : new TopMatches(Arrays.copyOf(names, size),
+                    Arrays.copyOf(rows, size), Arrays.copyOf(scores, size));
+        }
+    }
+
+    // Centroid and exemplar indexes with the metadata to search them, always published together
+    private static final class Version {
+        final GalleryIndex centroids;
+        final GalleryIndex exemplars;
+        final Map<String, Slots> people;
+        // Lowest spread of anyone; set when published
+        float minSpread = 1f;
+
+        Version(GalleryIndex centroids, GalleryIndex exemplars, Map<String, Slots> people) {
+            this.centroids = centroids;
+            this.exemplars = exemplars;
+            this.people = people;
+        }
+
+        Version copy() {
+            return new Version(centroids.copy(), exemplars.copy(), new HashMap<>(people));
+        }
+    }
+}
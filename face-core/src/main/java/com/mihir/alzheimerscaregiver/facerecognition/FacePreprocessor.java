@@ -0,0 +1,123 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Turns ARGB face pixels into FaceNet input: bilinear resize to {@code size x size}
+ * and RGB normalization to [-1, 1].
+ *
+ * Pure Java over {@code int[]} pixels so it runs on a plain JVM. Normalization is a
+ * 256-entry lookup (interpolating normalized values is the same as normalizing the
+ * interpolated value), all scratch arrays are reused, and each face is written to the
+ * tensor with a single bulk {@link FloatBuffer#put(float[])}. Not thread-safe.
+ */
+public class FacePreprocessor {
+    // [0, 255] -> [-1, 1]
+    private static final float[] NORMALIZE = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            NORMALIZE[i] = i / 127.5f - 1.0f;
+        }
+    }
+
+    private final int size;
+    private final float[] floats;
+    // Per output column/row: first source index and weight of the second one
+    private final int[] sourceX;
+    private final float[] weightX;
+    private final int[] sourceY;
+    private final float[] weightY;
+    private int[] pixels = new int[0];
+
+    public FacePreprocessor(int size) {
+        this.size = size;
+        this.floats = new float[size * size * 3];
+        this.sourceX = new int[size];
+        this.weightX = new float[size];
+        this.sourceY = new int[size];
+        this.weightY = new float[size];
+    }
+
+    /**
+     * Scratch array for the caller to read source pixels into, e.g. with
+     * {@code Bitmap.getPixels}. Reused across calls and only reallocated to grow.
+     * @param count Number of pixels needed
+     */
+    public int[] pixelBuffer(int count) {
+        if (pixels.length < count) {
+            pixels = new int[count];
+        }
+        return pixels;
+    }
+
+    /**
+     * Resize and normalize one face and write {@code size * size * 3} floats (RGB order)
+     * to {@code out} at its position.
+     * @param argb Source pixels, row-major with a stride of {@code width}
+     * @param width Source width
+     * @param height Source height
+     */
+    public void preprocess(int[] argb, int width, int height, FloatBuffer out) {
+        if (width == size && height == size) {
+            normalize(argb);
+        } else {
+            resample(argb, width, height);
+        }
+        out.put(floats);
+    }
+
+    // Same-size input: a straight table lookup per channel
+    private void normalize(int[] argb) {
+        for (int pixel = 0, f = 0; pixel < size * size; pixel++, f += 3) {
+            int value = argb[pixel];
+            floats[f] = NORMALIZE[(value >> 16) & 0xFF];
+            floats[f + 1] = NORMALIZE[(value >> 8) & 0xFF];
+            floats[f + 2] = NORMALIZE[value & 0xFF];
+        }
+    }
+
+    private void resample(int[] argb, int width, int height) {
+        prepareAxis(width, sourceX, weightX);
+        prepareAxis(height, sourceY, weightY);
+
+        int f = 0;
+        for (int oy = 0; oy < size; oy++) {
+            int row0 = sourceY[oy] * width;
+            int row1 = Math.min(sourceY[oy] + 1, height - 1) * width;
+            float fy = weightY[oy];
+
+            for (int ox = 0; ox < size; ox++) {
+                int x0 = sourceX[ox];
+                int x1 = Math.min(x0 + 1, width - 1);
+                float fx = weightX[ox];
+
+                int p00 = argb[row0 + x0];
+                int p01 = argb[row0 + x1];
+                int p10 = argb[row1 + x0];
+                int p11 = argb[row1 + x1];
+
+                floats[f++] = lerp(p00 >> 16, p01 >> 16, p10 >> 16, p11 >> 16, fx, fy);
+                floats[f++] = lerp(p00 >> 8, p01 >> 8, p10 >> 8, p11 >> 8, fx, fy);
+                floats[f++] = lerp(p00, p01, p10, p11, fx, fy);
+            }
+        }
+    }
+
+    // Pixel-center aligned mapping, as Bitmap.createScaledBitmap with filtering
+    private void prepareAxis(int sourceLength, int[] index, float[] weight) {
+        float scale = sourceLength / (float) size;
+        for (int i = 0; i < size; i++) {
+            float position = Math.max(0f, (i + 0.5f) * scale - 0.5f);
+            int first = Math.min((int) position, sourceLength - 1);
+            index[i] = first;
+            weight[i] = position - first;
+        }
+    }
+
+    private static float lerp(int c00, int c01, int c10, int c11, float fx, float fy) {
+        float top = NORMALIZE[c00 & 0xFF] + (NORMALIZE[c01 & 0xFF] - NORMALIZE[c00 & 0xFF]) * fx;
+        float bottom = NORMALIZE[c10 & 0xFF] + (NORMALIZE[c11 & 0xFF] - NORMALIZE[c10 & 0xFF]) * fx;
+        return top + (bottom - top) * fy;
+    }
+}
@@ -0,0 +1,132 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap pre-inference check of a detected face, so crops that cannot give a usable
+ * embedding never reach the model.
+ *
+ * Three factors are each scored from 0 (unusable) to 1 (good) and the face gets the
+ * lowest of them: the shorter side of its box, sharpness as the variance of the
+ * Laplacian over the luma crop, and head pose from the detector's Euler angles when it
+ * reports them. Size and pose cost nothing, so the Laplacian is only computed for faces
+ * that pass both. It samples a grid of at most {@value #GRID} x {@value #GRID} points
+ * straight from the Y plane; the 4-neighbour Laplacian is symmetric under quarter
+ * turns, so the crop is measured in sensor orientation without rotating it.
+ */
+public class FaceQualityScorer {
+    public static final float DEFAULT_MIN_SCORE = 0.5f;
+    // Shorter box side in pixels: below MIN the crop is upscaled mush, from GOOD on it is fine
+    public static final float MIN_FACE_SIZE = 40f;
+    public static final float GOOD_FACE_SIZE = 112f;
+    // Laplacian variance of 0-255 luma: motion blur and defocus sit well below MIN_SHARPNESS
+    public static final float MIN_SHARPNESS = 15f;
+    public static final float GOOD_SHARPNESS = 100f;
+    // Head angles in degrees: frontal up to GOOD_ANGLE, profile beyond MAX_ANGLE
+    public static final float GOOD_ANGLE = 15f;
+    public static final float MAX_ANGLE = 45f;
+    private static final int GRID = 64;
+
+    private final float minScore;
+
+    public FaceQualityScorer() {
+        this(DEFAULT_MIN_SCORE);
+    }
+
+    /**
+     * @param minScore Score a face needs for {@link #isUsable}, in [0, 1]
+     */
+    public FaceQualityScorer(float minScore) {
+        this.minScore = minScore;
+    }
+
+    public float getMinScore() {
+        return minScore;
+    }
+
+    public boolean isUsable(float score) {
+        return score >= minScore;
+    }
+
+    /**
+     * Score one face box of a camera frame
+     * @param yPlane Luma plane
+     * @param yRowStride Luma row stride in bytes
+     * @param width Sensor frame width
+     * @param height Sensor frame height
+     * @param rotationDegrees Rotation that makes the frame upright (0, 90, 180, 270)
+     * @param left Face box in upright frame coordinates, as reported by the detector
+     * @param pitch Head Euler angle X in degrees, or NaN if the detector does not report it
+     * @param yaw Head Euler angle Y in degrees, or NaN
+     * @param roll Head Euler angle Z in degrees, or NaN
+     * @return Quality in [0, 1]; the sharpness is skipped once size or pose fall below the minimum
+     */
+    public float score(ByteBuffer yPlane, int yRowStride, int width, int height, int rotationDegrees,
+                       int left, int top, int right, int bottom, float pitch, float yaw, float roll) {
+        float score = Math.min(sizeScore(right - left, bottom - top), poseScore(pitch, yaw, roll));
+        if (score < minScore) {
+            return score;
+        }
+        float sharpness = laplacianVariance(yPlane, yRowStride, width, height, rotationDegrees,
+                left, top, right, bottom);
+        return Math.min(score, ramp(sharpness, MIN_SHARPNESS, GOOD_SHARPNESS));
+    }
+
+    public static float sizeScore(int boxWidth, int boxHeight) {
+        return ramp(Math.min(boxWidth, boxHeight), MIN_FACE_SIZE, GOOD_FACE_SIZE);
+    }
+
+    /**
+     * @return Score of the worst reported angle, or 1 if none is reported
+     */
+    public static float poseScore(float pitch, float yaw, float roll) {
+        float worst = Math.max(magnitude(pitch), Math.max(magnitude(yaw), magnitude(roll)));
+        return 1f - ramp(worst, GOOD_ANGLE, MAX_ANGLE);
+    }
+
+    /**
+     * Variance of the 4-neighbour Laplacian of the luma inside a face box
+     * @return Variance, or 0 if the box does not overlap the frame
+     */
+    public static float laplacianVariance(ByteBuffer yPlane, int yRowStride, int width, int height,
+                                          int rotationDegrees, int left, int top, int right, int bottom) {
+        int[] sensor = YuvFaceConverter.toSensorRect(rotationDegrees, width, height, left, top, right, bottom);
+        // Keep every sample's neighbours inside the frame
+        int x0 = Math.max(1, sensor[0]);
+        int y0 = Math.max(1, sensor[1]);
+        int x1 = Math.min(width - 1, sensor[2]);
+        int y1 = Math.min(height - 1, sensor[3]);
+        if (x1 <= x0 || y1 <= y0) {
+            return 0f;
+        }
+
+        int stepX = (x1 - x0 + GRID - 1) / GRID;
+        int stepY = (y1 - y0 + GRID - 1) / GRID;
+        double sum = 0;
+        double sumSquares = 0;
+        int count = 0;
+        for (int y = y0; y < y1; y += stepY) {
+            int row = y * yRowStride;
+            for (int x = x0; x < x1; x += stepX) {
+                int center = row + x;
+                int laplacian = 4 * (yPlane.get(center) & 0xFF)
+                        - (yPlane.get(center - 1) & 0xFF) - (yPlane.get(center + 1) & 0xFF)
+                        - (yPlane.get(center - yRowStride) & 0xFF) - (yPlane.get(center + yRowStride) & 0xFF);
+                sum += laplacian;
+                sumSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+        double mean = sum / count;
+        return (float) (sumSquares / count - mean * mean);
+    }
+
+    private static float magnitude(float angle) {
+        return Float.isNaN(angle) ? 0f : Math.abs(angle);
+    }
+
+    // 0 at or below low, 1 at or above high, linear in between
+    private static float ramp(float value, float low, float high) {
+        return Math.min(1f, Math.max(0f, (value - low) / (high - low)));
+    }
+}
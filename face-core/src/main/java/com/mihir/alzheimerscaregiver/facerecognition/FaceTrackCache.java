@@ -0,0 +1,143 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remembers the last embedding and recognition decision per detector tracking ID,
+ * so a person who stays in view is embedded once instead of on every frame.
+ *
+ * A cached decision is reused until the face box moves or resizes noticeably
+ * (new pose, different lighting on the crop) or its TTL expires; tracks that the
+ * detector stops reporting are evicted. Timestamps are passed in by the caller.
+ * Lookups happen on the detection stage and inserts on the match stage, so all
+ * access is synchronized.
+ *
+ * @param <T> Recognition decision type
+ */
+public class FaceTrackCache<T> {
+    public static final long DEFAULT_TTL_MS = 2000;
+    // Center shift, relative to the cached box size, that forces a re-embed
+    public static final float DEFAULT_MAX_SHIFT = 0.2f;
+    // Relative width/height change that forces a re-embed
+    public static final float DEFAULT_MAX_RESIZE = 0.25f;
+
+    private final long ttlMs;
+    private final float maxShift;
+    private final float maxResize;
+    private final Map<Integer, Track<T>> tracks = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+
+    public FaceTrackCache() {
+        this(DEFAULT_TTL_MS, DEFAULT_MAX_SHIFT, DEFAULT_MAX_RESIZE);
+    }
+
+    public FaceTrackCache(long ttlMs, float maxShift, float maxResize) {
+        this.ttlMs = ttlMs;
+        this.maxShift = maxShift;
+        this.maxResize = maxResize;
+    }
+
+    /**
+     * Get the cached decision for a track if it is still valid for this box
+     * @param nowMs Current time in milliseconds, on the same clock as {@link #put}
+     * @return Cached decision, or null if the face needs a fresh embedding
+     */
+    public synchronized T get(int trackId, int left, int top, int right, int bottom, long nowMs) {
+        Track<T> track = tracks.get(trackId);
+        if (track == null || nowMs - track.timestampMs > ttlMs
+                || track.hasMoved(left, top, right, bottom, maxShift, maxResize)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return track.result;
+    }
+
+    /**
+     * Store a fresh embedding and decision for a track
+     */
+    public synchronized void put(int trackId, int left, int top, int right, int bottom,
+                                 float[] embedding, T result, long nowMs) {
+        tracks.put(trackId, new Track<>(left, top, right, bottom, embedding, result, nowMs));
+    }
+
+    /**
+     * Last embedding computed for a track, or null if it is not cached
+     */
+    public synchronized float[] getEmbedding(int trackId) {
+        Track<T> track = tracks.get(trackId);
+        return track != null ? track.embedding : null;
+    }
+
+    /**
+     * Evict every track the detector no longer reports
+     * @param visibleTrackIds Tracking IDs present in the current frame
+     * @return Number of evicted tracks
+     */
+    public synchronized int retainAll(Collection<Integer> visibleTrackIds) {
+        int evicted = 0;
+        Iterator<Integer> iterator = tracks.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!visibleTrackIds.contains(iterator.next())) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Drop all cached decisions, e.g. after the gallery changed
+     */
+    public synchronized void clear() {
+        tracks.clear();
+    }
+
+    public synchronized int size() {
+        return tracks.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private static class Track<T> {
+        private final int left, top, right, bottom;
+        private final float[] embedding;
+        private final T result;
+        private final long timestampMs;
+
+        Track(int left, int top, int right, int bottom, float[] embedding, T result, long timestampMs) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.embedding = embedding;
+            this.result = result;
+            this.timestampMs = timestampMs;
+        }
+
+        boolean hasMoved(int newLeft, int newTop, int newRight, int newBottom, float maxShift, float maxResize) {
+            float width = Math.max(1, right - left);
+            float height = Math.max(1, bottom - top);
+
+            float shiftX = Math.abs((newLeft + newRight) - (left + right)) / 2f;
+            float shiftY = Math.abs((newTop + newBottom) - (top + bottom)) / 2f;
+            if (shiftX > maxShift * width || shiftY > maxShift * height) {
+                return true;
+            }
+
+            float resizeX = Math.abs((newRight - newLeft) - width) / width;
+            float resizeY = Math.abs((newBottom - newTop) - height) / height;
+            return resizeX > maxResize || resizeY > maxResize;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Deterministic {@link EmbeddingBackend} for tests and load runs without TFLite.
+ *
+ * Each embedding dimension is the mean of one contiguous chunk of the input, so the
+ * same crop always gives the same embedding and similar crops give similar ones.
+ * An optional per-face delay stands in for inference time.
+ */
+public class FakeEmbeddingBackend implements EmbeddingBackend {
+    private final int inputSize;
+    private final int embeddingSize;
+    private final long delayNanosPerFace;
+    private volatile boolean closed = false;
+
+    public FakeEmbeddingBackend(int inputSize, int embeddingSize) {
+        this(inputSize, embeddingSize, 0);
+    }
+
+    /**
+     * @param delayMicrosPerFace Simulated inference time per face
+     */
+    public FakeEmbeddingBackend(int inputSize, int embeddingSize, long delayMicrosPerFace) {
+        this.inputSize = inputSize;
+        this.embeddingSize = embeddingSize;
+        this.delayNanosPerFace = TimeUnit.MICROSECONDS.toNanos(delayMicrosPerFace);
+    }
+
+    @Override
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int getEmbeddingSize() {
+        return embeddingSize;
+    }
+
+    @Override
+    public List<float[]> embed(List<float[]> inputs) {
+        if (closed) {
+            return null;
+        }
+        if (delayNanosPerFace > 0) {
+            LockSupport.parkNanos(delayNanosPerFace * inputs.size());
+        }
+
+        int inputLength = inputSize * inputSize * 3;
+        List<float[]> embeddings = new ArrayList<>(inputs.size());
+        for (float[] input : inputs) {
+            if (input.length < inputLength) {
+                throw new IllegalArgumentException("Expected " + inputLength + " floats, got " + input.length);
+            }
+            float[] embedding = new float[embeddingSize];
+            for (int d = 0; d < embeddingSize; d++) {
+                int from = (int) ((long) d * inputLength / embeddingSize);
+                int to = (int) ((long) (d + 1) * inputLength / embeddingSize);
+                float sum = 0f;
+                for (int i = from; i < to; i++) {
+                    sum += input[i];
+                }
+                embedding[d] = to > from ? sum / (to - from) : 0f;
+            }
+            EmbeddingMatrix.normalize(embedding, 0, embeddingSize);
+            embeddings.add(embedding);
+        }
+        return embeddings;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,129 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+/**
+ * Decides per camera frame whether to skip it, run only face detection, or run
+ * the full detect + embed path, from rolling averages of measured stage latency.
+ *
+ * Processed frames are spaced so that detection stays within {@code cpuBudget}
+ * of wall time at no more than {@code targetFps}; whatever budget is left per
+ * frame decides how often the (much slower) embedding may run. Detection-only
+ * frames keep the tracker alive so cached decisions stay usable in between.
+ * On slow devices this trades recognition rate for a steady, cool pipeline
+ * instead of a backlog.
+ */
+public class FrameScheduler {
+    public static final float DEFAULT_TARGET_FPS = 10f;
+    public static final float DEFAULT_CPU_BUDGET = 0.5f;
+    // Never go longer than this many processed frames without an embedding run
+    private static final int MAX_EMBED_INTERVAL = 8;
+    // Weight of the newest sample in the rolling averages
+    private static final float SMOOTHING = 0.2f;
+
+    public enum Action {
+        SKIP,
+        DETECT_ONLY,
+        FULL
+    }
+
+    private final float targetPeriodMs;
+    private final float cpuBudget;
+
+    private float frameIntervalMs = 0f;
+    private float detectMs = 0f;
+    private float embedMs = 0f;
+    private long lastFrameNanos = -1;
+
+    private int skipInterval = 0;
+    private int embedInterval = 1;
+    private int skipRemaining = 0;
+    private long processedFrames = 0;
+
+    public FrameScheduler() {
+        this(DEFAULT_TARGET_FPS, DEFAULT_CPU_BUDGET);
+    }
+
+    /**
+     * @param targetFps Highest rate at which frames are processed
+     * @param cpuBudget Fraction of wall time the detect and embed stages may use, in (0, 1]
+     */
+    public FrameScheduler(float targetFps, float cpuBudget) {
+        this.targetPeriodMs = 1000f / targetFps;
+        this.cpuBudget = cpuBudget;
+    }
+
+    /**
+     * Decide what to do with the next camera frame
+     * @param timestampNanos Frame timestamp, used to measure the camera frame rate
+     */
+    public synchronized Action onFrame(long timestampNanos) {
+        if (lastFrameNanos >= 0 && timestampNanos > lastFrameNanos) {
+            frameIntervalMs = smooth(frameIntervalMs, (timestampNanos - lastFrameNanos) / 1e6f);
+        }
+        lastFrameNanos = timestampNanos;
+
+        if (skipRemaining > 0) {
+            skipRemaining--;
+            return Action.SKIP;
+        }
+        reschedule();
+        skipRemaining = skipInterval;
+        return processedFrames++ % embedInterval == 0 ? Action.FULL : Action.DETECT_ONLY;
+    }
+
+    /**
+     * Report the latency of one detection run, including cropping
+     */
+    public synchronized void recordDetection(long nanos) {
+        detectMs = smooth(detectMs, nanos / 1e6f);
+    }
+
+    /**
+     * Report the latency of embedding all faces of one frame
+     */
+    public synchronized void recordEmbedding(long nanos) {
+        embedMs = smooth(embedMs, nanos / 1e6f);
+    }
+
+    /**
+     * Frames skipped after each processed frame
+     */
+    public synchronized int getSkipInterval() {
+        return skipInterval;
+    }
+
+    /**
+     * Processed frames per embedding run (1 = every processed frame)
+     */
+    public synchronized int getEmbedInterval() {
+        return embedInterval;
+    }
+
+    public synchronized float getDetectLatencyMs() {
+        return detectMs;
+    }
+
+    public synchronized float getEmbedLatencyMs() {
+        return embedMs;
+    }
+
+    private void reschedule() {
+        // Space processed frames so detection alone fits the budget
+        float periodMs = Math.max(targetPeriodMs, detectMs / cpuBudget);
+        skipInterval = frameIntervalMs > 0f ? Math.max(0, Math.round(periodMs / frameIntervalMs) - 1) : 0;
+        if (frameIntervalMs > 0f) {
+            periodMs = Math.max(periodMs, (skipInterval + 1) * frameIntervalMs);
+        }
+
+        // Spread embedding over as many processed frames as the leftover budget needs
+        float spareMs = cpuBudget * periodMs - detectMs;
+        if (embedMs <= spareMs) {
+            embedInterval = 1;
+        } else {
+            embedInterval = Math.min(MAX_EMBED_INTERVAL, (int) Math.ceil(embedMs / Math.max(spareMs, 1f)));
+        }
+    }
+
+    private static float smooth(float average, float sample) {
+        return average == 0f ? sample : average + SMOOTHING * (sample - average);
+    }
+}
@@ -0,0 +1,93 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Searchable set of registered face embeddings.
+ * Implementations: {@link EmbeddingMatrix} (exact linear scan) and
+ * {@link HnswIndex} (approximate, for very large galleries).
+ *
+ * Searching never changes an index, so one that is no longer written to can be
+ * searched from any number of threads at once. Writers mutate a {@link #copy()}.
+ */
+public interface GalleryIndex {
+
+    /**
+     * Add or replace the embedding registered under {@code name}
+     * @param name Person name
+     * @param embedding Raw embedding; implementations keep their own copy
+     */
+    void put(String name, float[] embedding);
+
+    /**
+     * @return true if {@code name} was registered
+     */
+    boolean remove(String name);
+
+    void clear();
+
+    /**
+     * Deep copy that can be written to without affecting this index
+     */
+    GalleryIndex copy();
+
+    int size();
+
+    boolean isEmpty();
+
+    boolean contains(String name);
+
+    String[] getNames();
+
+    /**
+     * Copy of every registered embedding, normalized.
+     * Quantized indexes return their decoded approximations.
+     */
+    Map<String, float[]> toMap();
+
+    /**
+     * Score one registered face, e.g. to rescore candidates found in another index
+     * @param normalizedQuery Unit-length query of the index's dimension
+     * @return Cosine similarity, or NaN if {@code name} is not registered
+     */
+    float similarity(float[] normalizedQuery, String name);
+
+    /**
+     * Find the registered face most similar (cosine) to {@code query}
+     * @param query Raw embedding; it is not modified
+     * @return Best match, or null if the gallery is empty
+     */
+    EmbeddingMatrix.Match findNearest(float[] query);
+
+    /**
+     * The {@code k} registered faces most similar (cosine) to {@code query}
+     * @param query Raw embedding; it is not modified
+     * @return Matches, best first; fewer than {@code k} if the gallery is smaller
+     */
+    List<EmbeddingMatrix.Match> findTopK(float[] query, int k);
+
+    /**
+     * Top-k restricted to matches scoring strictly above {@code minSimilarity}
+     * @return Matches, best first; empty if none clears the threshold
+     */
+    default List<EmbeddingMatrix.Match> findTopK(float[] query, int k, float minSimilarity) {
+        List<EmbeddingMatrix.Match> matches = new ArrayList<>(findTopK(query, k));
+        while (!matches.isEmpty() && matches.get(matches.size() - 1).getSimilarity() <= minSimilarity) {
+            matches.remove(matches.size() - 1);
+        }
+        return matches;
+    }
+
+    /**
+     * Best match only if it scores strictly above {@code minSimilarity}. Indexes that can
+     * discard candidates against the threshold during the search override this.
+     * @param query Raw embedding; it is not modified
+     * @return Best match above the threshold, or null
+     */
+    default EmbeddingMatrix.Match findNearest(float[] query, float minSimilarity) {
+        EmbeddingMatrix.Match match = findNearest(query);
+        return match != null && match.getSimilarity() > minSimilarity ? match : null;
+    }
+}
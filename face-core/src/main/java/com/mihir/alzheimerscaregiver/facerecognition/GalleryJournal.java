@@ -0,0 +1,448 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of gallery mutations, kept next to the
+ * {@link EmbeddingStore} snapshot.
+ *
+ * Each register/delete appends one small checksummed record, so a mutation costs
+ * O(1) I/O regardless of gallery size. On load the snapshot is read and the log is
+ * replayed on top of it. A torn record at the end of the log (process killed
+ * mid-write) fails its checksum and is dropped.
+ *
+ * Record layout (little endian):
+ *   int payloadLength | payload | int crc32
+ * where the payload is either one entry or a batch written by a transaction commit:
+ *   entry  = byte op | u16 nameLength | name | [int dim | dim * float32]
+ *   batch  = byte OP_BATCH | int count | count * entry
+ * A batch shares one checksum, so a commit is replayed entirely or not at all.
+ *
+ * Compaction rolls the live log to "&lt;journal&gt;.old", merges it into a fresh snapshot
+ * in the background and then deletes the rolled log. If the process dies in between, the
+ * rolled log is simply replayed again on the next load.
+ */
+public class GalleryJournal {
+    private static final Logger LOG = Logger.getLogger("GalleryJournal");
+
+    static final byte OP_PUT = 1;
+    static final byte OP_DELETE = 2;
+    static final byte OP_CLEAR = 3;
+    static final byte OP_BATCH = 4;
+
+    public static final long DEFAULT_COMPACT_THRESHOLD = 512 * 1024;
+
+    private final File file;
+    private final File rolledFile;
+    private final EmbeddingStore snapshot;
+    private final long compactThreshold;
+
+    private FileChannel channel;
+    private boolean compacting = false;
+
+    public GalleryJournal(File file, EmbeddingStore snapshot) {
+        this(file, snapshot, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    public GalleryJournal(File file, EmbeddingStore snapshot, long compactThreshold) {
+        this.file = file;
+        this.rolledFile = new File(file.getPath() + ".old");
+        this.snapshot = snapshot;
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Load the snapshot, replay the log(s) on top of it and open the log for appending
+     * @return Current gallery contents
+     * @throws IOException if the snapshot or log cannot be read
+     */
+    public synchronized Map<String, float[]> open() throws IOException {
+        Map<String, float[]> faces = new HashMap<>(snapshot.load());
+
+        if (rolledFile.exists()) {
+            replay(rolledFile, faces);
+        }
+        long validLength = file.exists() ? replay(file, faces) : 0;
+
+        closeChannel();
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        if (channel.size() > validLength) {
+            // Drop a torn tail so new records are not appended after garbage
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+
+        return faces;
+    }
+
+    /**
+     * Current values of a few keys, read from the files on disk without loading the rest
+     * of the gallery. Works while a compaction runs, as {@link #open()} would.
+     * @param names Keys to read
+     * @return Values of the keys that are present
+     * @throws IOException if the snapshot or log cannot be read
+     */
+    public synchronized Map<String, float[]> read(Set<String> names) throws IOException {
+        Map<String, float[]> faces = new HashMap<>(snapshot.load(names));
+        if (rolledFile.exists()) {
+            replay(rolledFile, faces, names);
+        }
+        if (file.exists()) {
+            replay(file, faces, names);
+        }
+        return faces;
+    }
+
+    public synchronized void appendPut(String name, float[] embedding) throws IOException {
+        append(encode(Entry.put(name, embedding)));
+    }
+
+    public synchronized void appendDelete(String name) throws IOException {
+        append(encode(Entry.delete(name)));
+    }
+
+    /**
+     * Append several entries as one atomic record with a single write and sync
+     * @param entries Entries in the order they should be replayed
+     */
+    public synchronized void appendBatch(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        append(entries.size() == 1 ? encode(entries.get(0)) : encodeBatch(entries));
+    }
+
+    /**
+     * Size of the live log in bytes
+     */
+    public synchronized long size() throws IOException {
+        return channel != null ? channel.size() : 0;
+    }
+
+    /**
+     * @return true if the live log has grown past the threshold and no compaction is running
+     */
+    public synchronized boolean shouldCompact() throws IOException {
+        return !compacting && size() >= compactThreshold;
+    }
+
+    /**
+     * Roll the live log and, on {@code executor}, merge it into a new snapshot.
+     * The merge reads only the files on disk, so the in-memory gallery may hold
+     * lossy (quantized) copies of the embeddings.
+     * @param executor Background executor for the snapshot write
+     */
+    public synchronized void compact(Executor executor) throws IOException {
+        if (compacting) {
+            return;
+        }
+        roll();
+        compacting = true;
+
+        executor.execute(() -> {
+            boolean written = false;
+            try {
+                Map<String, float[]> faces = new HashMap<>(snapshot.load());
+                replay(rolledFile, faces);
+                snapshot.save(faces);
+                written = true;
+            } catch (IOException e) {
+                // Rolled log is kept and replayed on next load; try again at the next threshold
+                LOG.log(Level.WARNING, "Failed to compact journal " + rolledFile, e);
+            } finally {
+                synchronized (GalleryJournal.this) {
+                    if (written) {
+                        rolledFile.delete();
+                    }
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    public synchronized void close() {
+        closeChannel();
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        if (channel == null) {
+            throw new IOException("Journal not open");
+        }
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        channel.force(false);
+    }
+
+    private void roll() throws IOException {
+        closeChannel();
+        if (rolledFile.exists()) {
+            // A previous compaction failed: keep its records by appending ours to them
+            try (FileChannel in = new RandomAccessFile(file, "r").getChannel();
+                 FileChannel out = new RandomAccessFile(rolledFile, "rw").getChannel()) {
+                out.position(out.size());
+                long position = 0;
+                while (position < in.size()) {
+                    position += in.transferTo(position, in.size() - position, out);
+                }
+                out.force(true);
+            }
+            if (!file.delete()) {
+                throw new IOException("Failed to reset journal " + file);
+            }
+        } else if (!file.renameTo(rolledFile)) {
+            throw new IOException("Failed to roll journal " + file);
+        }
+        channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    static ByteBuffer encode(Entry entry) throws IOException {
+        ByteBuffer record = newRecord(entry.encodedSize());
+        entry.writeTo(record);
+        return finishRecord(record);
+    }
+
+    static ByteBuffer encodeBatch(List<Entry> entries) throws IOException {
+        int payloadLength = 1 + 4;
+        for (Entry entry : entries) {
+            payloadLength += entry.encodedSize();
+        }
+        ByteBuffer record = newRecord(payloadLength);
+        record.put(OP_BATCH);
+        record.putInt(entries.size());
+        for (Entry entry : entries) {
+            entry.writeTo(record);
+        }
+        return finishRecord(record);
+    }
+
+    private static ByteBuffer newRecord(int payloadLength) {
+        ByteBuffer record = ByteBuffer.allocate(4 + payloadLength + 4).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(payloadLength);
+        return record;
+    }
+
+    private static ByteBuffer finishRecord(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, record.position() - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Apply every intact record in {@code log} to {@code faces}
+     * @return Byte offset just past the last intact record
+     */
+    static long replay(File log, Map<String, float[]> faces) throws IOException {
+        return replay(log, faces, null);
+    }
+
+    /**
+     * @param names Only entries for these names (and clears) are applied, or null for all
+     */
+    static long replay(File log, Map<String, float[]> faces, Set<String> names) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel in = new RandomAccessFile(log, "r").getChannel()) {
+            buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        CRC32 crc = new CRC32();
+        byte[] payload = new byte[0];
+        List<Entry> entries = new ArrayList<>();
+        long valid = 0;
+
+        while (buffer.remaining() >= 4) {
+            int payloadLength = buffer.getInt();
+            if (payloadLength < 1 || payloadLength > buffer.remaining() - 4) {
+                break;
+            }
+            if (payload.length < payloadLength) {
+                payload = new byte[payloadLength];
+            }
+            buffer.get(payload, 0, payloadLength);
+            int storedCrc = buffer.getInt();
+
+            crc.reset();
+            crc.update(payload, 0, payloadLength);
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(payload, 0, payloadLength).order(ByteOrder.LITTLE_ENDIAN);
+            entries.clear();
+            if (!decode(record, entries)) {
+                break;
+            }
+            for (Entry entry : entries) {
+                if (names == null || entry.op == OP_CLEAR || names.contains(entry.name)) {
+                    entry.applyTo(faces);
+                }
+            }
+            valid = buffer.position();
+        }
+
+        return valid;
+    }
+
+    private static boolean decode(ByteBuffer record, List<Entry> out) {
+        try {
+            if (record.get(record.position()) == OP_BATCH) {
+                record.get();
+                int count = record.getInt();
+                for (int i = 0; i < count; i++) {
+                    Entry entry = Entry.readFrom(record);
+                    if (entry == null) {
+                        return false;
+                    }
+                    out.add(entry);
+                }
+            } else {
+                Entry entry = Entry.readFrom(record);
+                if (entry == null) {
+                    return false;
+                }
+                out.add(entry);
+            }
+            return !record.hasRemaining();
+        } catch (java.nio.BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A single gallery mutation as stored in the journal
+     */
+    public static class Entry {
+        final byte op;
+        final String name;
+        final float[] embedding;
+        private byte[] nameBytes;
+
+        private Entry(byte op, String name, float[] embedding) {
+            this.op = op;
+            this.name = name;
+            this.embedding = embedding;
+        }
+
+        public static Entry put(String name, float[] embedding) {
+            return new Entry(OP_PUT, name, embedding);
+        }
+
+        public static Entry delete(String name) {
+            return new Entry(OP_DELETE, name, null);
+        }
+
+        public static Entry clear() {
+            return new Entry(OP_CLEAR, "", null);
+        }
+
+        public void applyTo(Map<String, float[]> faces) {
+            switch (op) {
+                case OP_PUT:
+                    faces.put(name, embedding);
+                    break;
+                case OP_DELETE:
+                    faces.remove(name);
+                    break;
+                case OP_CLEAR:
+                    faces.clear();
+                    break;
+            }
+        }
+
+        public void applyTo(GalleryIndex gallery) {
+            switch (op) {
+                case OP_PUT:
+                    gallery.put(name, embedding);
+                    break;
+                case OP_DELETE:
+                    gallery.remove(name);
+                    break;
+                case OP_CLEAR:
+                    gallery.clear();
+                    break;
+            }
+        }
+
+        int encodedSize() throws IOException {
+            if (nameBytes == null) {
+                nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                if (nameBytes.length > 0xFFFF) {
+                    throw new IOException("Name too long: " + name);
+                }
+            }
+            return 1 + 2 + nameBytes.length + (op == OP_PUT ? 4 + 4 * embedding.length : 0);
+        }
+
+        void writeTo(ByteBuffer out) throws IOException {
+            encodedSize();
+            out.put(op);
+            out.putShort((short) nameBytes.length);
+            out.put(nameBytes);
+            if (op == OP_PUT) {
+                out.putInt(embedding.length);
+                for (float value : embedding) {
+                    out.putFloat(value);
+                }
+            }
+        }
+
+        // Returns null if the bytes do not form a valid entry
+        static Entry readFrom(ByteBuffer in) {
+            byte op = in.get();
+            int nameLength = in.getShort() & 0xFFFF;
+            if (nameLength > in.remaining()) {
+                return null;
+            }
+            byte[] bytes = new byte[nameLength];
+            in.get(bytes);
+            String name = new String(bytes, StandardCharsets.UTF_8);
+
+            switch (op) {
+                case OP_PUT:
+                    int dimension = in.getInt();
+                    if (dimension < 0 || (long) dimension * 4 > in.remaining()) {
+                        return null;
+                    }
+                    float[] embedding = new float[dimension];
+                    for (int i = 0; i < dimension; i++) {
+                        embedding[i] = in.getFloat();
+                    }
+                    return put(name, embedding);
+                case OP_DELETE:
+                    return delete(name);
+                case OP_CLEAR:
+                    return clear();
+                default:
+                    return null;
+            }
+        }
+    }
+}
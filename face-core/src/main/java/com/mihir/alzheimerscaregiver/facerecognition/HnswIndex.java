@@ -0,0 +1,795 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov &amp; Yashunin) over L2-normalized
+ * face embeddings, giving approximate nearest-neighbour search in roughly logarithmic
+ * time for galleries with thousands of identities.
+ *
+ * Removing a face only marks its node: removed nodes still route searches but are
+ * never returned. Once removed nodes outnumber live ones the graph is rebuilt.
+ *
+ * Search scratch buffers are per thread, so any number of threads may search an
+ * instance that is no longer being written, such as a published {@link #copy()}.
+ * Writes must not run concurrently with each other or with searches, including writes
+ * to different copies of one graph, since copies share storage until they write.
+ */
+public class HnswIndex implements GalleryIndex {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int DEFAULT_EF_SEARCH = 50;
+
+    static final int MAGIC = 0x57534E48; // "HNSW"
+    static final int VERSION = 1;
+    private static final int MIN_NODES_FOR_REBUILD = 64;
+    private static final long SEED = 42L;
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private int efSearch;
+    private Random random = new Random(SEED);
+
+    private int dimension;
+    private int nodeCount;
+    private int liveCount;
+    private float[] vectors = new float[0];
+    private String[] names = new String[0];
+    private boolean[] removed = new boolean[0];
+    // links[node][level] = {count, neighbour, neighbour, ...}
+    private int[][][] links = new int[0][][];
+    // Whether links[node] belongs to this instance rather than being shared with a copy
+    private boolean[] ownedLinks = new boolean[0];
+    // How many rows of vectors/names are in use by any instance sharing them
+    private Tail tail = new Tail();
+    private final HashMap<String, Integer> nodeByName = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Search scratch is per thread, so an index that is no longer written can be searched concurrently
+    private static final ThreadLocal<SearchScratch> SCRATCH = new ThreadLocal<SearchScratch>() {
+        @Override
+        protected SearchScratch initialValue() {
+            return new SearchScratch();
+        }
+    };
+
+    public HnswIndex() {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * @param m Links per node on the upper layers (layer 0 gets twice as many)
+     * @param efConstruction Candidate list size while inserting
+     * @param efSearch Candidate list size while searching; higher is slower but more accurate
+     */
+    public HnswIndex(int m, int efConstruction, int efSearch) {
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+    }
+
+    /**
+     * Copy-on-write copy of the graph. Vectors, names and every node's link lists are
+     * shared; a node's lists are cloned by whichever instance first changes them, and new
+     * nodes are appended past the rows either instance uses. The copy gets its own level
+     * generator, seeded from this one's, so nodes inserted into successive copies still
+     * get independent random levels and no two versions ever draw from the same generator.
+     */
+    @Override
+    public HnswIndex copy() {
+        HnswIndex copy = new HnswIndex(m, efConstruction, efSearch);
+        copy.random = new Random(random.nextLong());
+        copy.dimension = dimension;
+        copy.nodeCount = nodeCount;
+        copy.liveCount = liveCount;
+        copy.vectors = vectors;
+        copy.names = names;
+        copy.tail = tail;
+        copy.removed = removed.clone();
+        copy.links = links.clone();
+        copy.ownedLinks = new boolean[ownedLinks.length];
+        Arrays.fill(ownedLinks, false);
+        copy.nodeByName.putAll(nodeByName);
+        copy.entryPoint = entryPoint;
+        copy.maxLevel = maxLevel;
+        return copy;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    @Override
+    public void put(String name, float[] embedding) {
+        if (dimension == 0) {
+            dimension = embedding.length;
+        } else if (embedding.length != dimension) {
+            throw new IllegalArgumentException("Expected embedding of size " + dimension
+                    + " but got " + embedding.length);
+        }
+
+        remove(name);
+        float[] normalized = Arrays.copyOf(embedding, dimension);
+        EmbeddingMatrix.normalize(normalized, 0, dimension);
+        insert(name, normalized);
+    }
+
+    @Override
+    public boolean remove(String name) {
+        Integer node = nodeByName.remove(name);
+        if (node == null) {
+            return false;
+        }
+        removed[node] = true;
+        liveCount--;
+
+        if (liveCount == 0) {
+            clear();
+        } else if (nodeCount >= MIN_NODES_FOR_REBUILD && nodeCount - liveCount > liveCount) {
+            rebuild();
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        nodeCount = 0;
+        liveCount = 0;
+        vectors = new float[0];
+        names = new String[0];
+        removed = new boolean[0];
+        links = new int[0][][];
+        ownedLinks = new boolean[0];
+        tail = new Tail();
+        nodeByName.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+        random = new Random(SEED);
+    }
+
+    @Override
+    public int size() {
+        return liveCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return liveCount == 0;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return nodeByName.containsKey(name);
+    }
+
+    @Override
+    public String[] getNames() {
+        return nodeByName.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public Map<String, float[]> toMap() {
+        Map<String, float[]> faces = new LinkedHashMap<>();
+        for (int node = 0; node < nodeCount; node++) {
+            if (!removed[node]) {
+                faces.put(names[node], Arrays.copyOfRange(vectors, node * dimension, (node + 1) * dimension));
+            }
+        }
+        return faces;
+    }
+
+    @Override
+    public float similarity(float[] normalizedQuery, String name) {
+        Integer node = nodeByName.get(name);
+        return node != null ? SimilarityKernels.dot(normalizedQuery, 0, vectors, node * dimension, dimension) : Float.NaN;
+    }
+
+    @Override
+    public EmbeddingMatrix.Match findNearest(float[] query) {
+        if (liveCount == 0 || query.length != dimension) {
+            return null;
+        }
+        float[] q = Arrays.copyOf(query, dimension);
+        if (EmbeddingMatrix.normalize(q, 0, dimension) == 0f) {
+            return null;
+        }
+
+        int current = greedyDescend(q, 0);
+        SearchScratch scratch = SCRATCH.get();
+        searchLayer(q, current, efSearch, 0, scratch);
+        NodeHeap results = scratch.results;
+
+        int bestNode = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        while (results.size > 0) {
+            int node = results.peekNode();
+            float score = results.peekScore();
+            results.pop();
+            if (!removed[node] && score > bestScore) {
+                bestNode = node;
+                bestScore = score;
+            }
+        }
+        if (bestNode < 0) {
+            return null;
+        }
+        return new EmbeddingMatrix.Match(names[bestNode], bestNode, bestScore);
+    }
+
+    /**
+     * Approximate top-k: the layer-0 beam is widened to at least {@code k}
+     */
+    @Override
+    public List<EmbeddingMatrix.Match> findTopK(float[] query, int k) {
+        TopK top = new TopK(Math.min(k, liveCount));
+        if (liveCount == 0 || query.length != dimension) {
+            return top.toMatches(Arrays.asList(names));
+        }
+        float[] q = Arrays.copyOf(query, dimension);
+        if (EmbeddingMatrix.normalize(q, 0, dimension) == 0f) {
+            return top.toMatches(Arrays.asList(names));
+        }
+
+        int current = greedyDescend(q, 0);
+        SearchScratch scratch = SCRATCH.get();
+        searchLayer(q, current, Math.max(efSearch, k), 0, scratch);
+        NodeHeap results = scratch.results;
+        while (results.size > 0) {
+            int node = results.peekNode();
+            if (!removed[node]) {
+                top.offer(node, results.peekScore());
+            }
+            results.pop();
+        }
+        return top.toMatches(Arrays.asList(names));
+    }
+
+    /**
+     * Bring the index in line with {@code faces}, inserting or replacing only what differs.
+     * Used after loading a saved graph that may predate the latest journal records.
+     */
+    public void syncWith(Map<String, float[]> faces) {
+        for (String name : getNames()) {
+            if (!faces.containsKey(name)) {
+                remove(name);
+            }
+        }
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            Integer node = nodeByName.get(entry.getKey());
+            if (node == null || !sameDirection(node, entry.getValue())) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void insert(String name, float[] vector) {
+        int level = randomLevel();
+        int node = nodeCount;
+        ensureCapacity(node + 1);
+        if (tail.length != node) {
+            // Another instance sharing the rows has appended past ours
+            vectors = vectors.clone();
+            names = names.clone();
+            tail = new Tail();
+        }
+        tail.length = ++nodeCount;
+
+        System.arraycopy(vector, 0, vectors, node * dimension, dimension);
+        names[node] = name;
+        removed[node] = false;
+        ownedLinks[node] = true;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        nodeByName.put(name, node);
+        liveCount++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = greedyDescend(vector, level + 1);
+        SearchScratch scratch = SCRATCH.get();
+        NodeHeap results = scratch.results;
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            searchLayer(vector, current, efConstruction, l, scratch);
+
+            int count = results.size;
+            int[] found = new int[count];
+            float[] scores = new float[count];
+            // Min-heap pops worst first; fill from the back to get best-first order
+            for (int i = count - 1; i >= 0; i--) {
+                found[i] = results.peekNode();
+                scores[i] = results.peekScore();
+                results.pop();
+            }
+            current = found[0];
+
+            int maxLinks = l == 0 ? maxM0 : m;
+            int selected = selectNeighbors(found, scores, count, m);
+            int[] own = links[node][l];
+            own[0] = selected;
+            System.arraycopy(found, 0, own, 1, selected);
+
+            for (int i = 0; i < selected; i++) {
+                connect(found[i], node, l, maxLinks);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    // Add a back link from neighbour to node, pruning the neighbour's list if it overflows
+    private void connect(int neighbour, int node, int level, int maxLinks) {
+        if (!ownedLinks[neighbour]) {
+            int[][] shared = links[neighbour];
+            int[][] own = new int[shared.length][];
+            for (int l = 0; l < shared.length; l++) {
+                own[l] = shared[l].clone();
+            }
+            links[neighbour] = own;
+            ownedLinks[neighbour] = true;
+        }
+        int[] list = links[neighbour][level];
+        int count = list[0];
+        if (count < maxLinks) {
+            list[count + 1] = node;
+            list[0] = count + 1;
+            return;
+        }
+
+        int total = count + 1;
+        int[] ids = new int[total];
+        float[] scores = new float[total];
+        System.arraycopy(list, 1, ids, 0, count);
+        ids[count] = node;
+        int base = neighbour * dimension;
+        for (int i = 0; i < total; i++) {
+            scores[i] = SimilarityKernels.dot(vectors, base, vectors, ids[i] * dimension, dimension);
+        }
+        sortDescending(ids, scores, total);
+
+        int kept = selectNeighbors(ids, scores, total, maxLinks);
+        list[0] = kept;
+        System.arraycopy(ids, 0, list, 1, kept);
+    }
+
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to the base
+     * than to any neighbour already kept, then top up with the nearest leftovers.
+     * Reorders {@code ids}/{@code scores} so the chosen ones come first.
+     * @return Number of neighbours selected
+     */
+    private int selectNeighbors(int[] ids, float[] scores, int count, int max) {
+        if (count <= max) {
+            return count;
+        }
+        int[] picked = new int[max];
+        float[] pickedScores = new float[max];
+        boolean[] used = new boolean[count];
+        int selected = 0;
+
+        for (int i = 0; i < count && selected < max; i++) {
+            int candidate = ids[i];
+            boolean keep = true;
+            for (int j = 0; j < selected; j++) {
+                if (SimilarityKernels.dot(vectors, candidate * dimension,
+                        vectors, picked[j] * dimension, dimension) > scores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                used[i] = true;
+                picked[selected] = candidate;
+                pickedScores[selected++] = scores[i];
+            }
+        }
+        for (int i = 0; i < count && selected < max; i++) {
+            if (!used[i]) {
+                picked[selected] = ids[i];
+                pickedScores[selected++] = scores[i];
+            }
+        }
+
+        System.arraycopy(picked, 0, ids, 0, selected);
+        System.arraycopy(pickedScores, 0, scores, 0, selected);
+        return selected;
+    }
+
+    // Greedy walk from the entry point down to (and including) layer `stopLevel`
+    private int greedyDescend(float[] q, int stopLevel) {
+        int current = entryPoint;
+        float currentScore = SimilarityKernels.dot(q, 0, vectors, current * dimension, dimension);
+
+        for (int l = maxLevel; l >= stopLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] list = links[current][l];
+                for (int i = 1; i <= list[0]; i++) {
+                    int neighbour = list[i];
+                    float score = SimilarityKernels.dot(q, 0, vectors, neighbour * dimension, dimension);
+                    if (score > currentScore) {
+                        currentScore = score;
+                        current = neighbour;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    // Beam search on one layer; leaves up to `ef` best nodes in `scratch.results`
+    private void searchLayer(float[] q, int entry, int ef, int level, SearchScratch scratch) {
+        int generation = scratch.nextVisitGeneration(nodeCount);
+        int[] visited = scratch.visited;
+        NodeHeap candidates = scratch.candidates;
+        NodeHeap results = scratch.results;
+        candidates.clear();
+        results.clear();
+
+        float entryScore = SimilarityKernels.dot(q, 0, vectors, entry * dimension, dimension);
+        visited[entry] = generation;
+        candidates.push(entry, entryScore);
+        results.push(entry, entryScore);
+
+        while (candidates.size > 0) {
+            int node = candidates.peekNode();
+            float score = candidates.peekScore();
+            candidates.pop();
+            if (score < results.peekScore() && results.size >= ef) {
+                break;
+            }
+
+            int[][] nodeLinks = links[node];
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] list = nodeLinks[level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbour = list[i];
+                if (visited[neighbour] == generation) {
+                    continue;
+                }
+                visited[neighbour] = generation;
+
+                float neighbourScore = SimilarityKernels.dot(q, 0, vectors, neighbour * dimension, dimension);
+                if (results.size < ef || neighbourScore > results.peekScore()) {
+                    candidates.push(neighbour, neighbourScore);
+                    results.push(neighbour, neighbourScore);
+                    if (results.size > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble();
+        return (int) (-Math.log(u) * levelMultiplier);
+    }
+
+    private void rebuild() {
+        List<String> liveNames = new ArrayList<>(liveCount);
+        List<float[]> liveVectors = new ArrayList<>(liveCount);
+        for (int node = 0; node < nodeCount; node++) {
+            if (!removed[node]) {
+                liveNames.add(names[node]);
+                liveVectors.add(Arrays.copyOfRange(vectors, node * dimension, (node + 1) * dimension));
+            }
+        }
+        clear();
+        for (int i = 0; i < liveNames.size(); i++) {
+            insert(liveNames.get(i), liveVectors.get(i));
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= names.length) {
+            return;
+        }
+        int capacity = Math.max(count, Math.max(16, names.length * 2));
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        names = Arrays.copyOf(names, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        links = Arrays.copyOf(links, capacity);
+        ownedLinks = Arrays.copyOf(ownedLinks, capacity);
+        // The new rows are ours alone
+        tail = new Tail();
+        tail.length = nodeCount;
+    }
+
+    private boolean sameDirection(int node, float[] embedding) {
+        if (embedding.length != dimension) {
+            return false;
+        }
+        float[] normalized = Arrays.copyOf(embedding, dimension);
+        EmbeddingMatrix.normalize(normalized, 0, dimension);
+        int offset = node * dimension;
+        for (int i = 0; i < dimension; i++) {
+            if (Math.abs(normalized[i] - vectors[offset + i]) > 1e-6f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void sortDescending(int[] ids, float[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int id = ids[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Serialize the graph, vectors and names. Cheap enough to call under the gallery
+     * lock; the returned buffer can then be written out on a background thread.
+     */
+    public ByteBuffer serialize() {
+        byte[][] nameBytes = new byte[nodeCount][];
+        long size = 4 * 10;
+        for (int node = 0; node < nodeCount; node++) {
+            nameBytes[node] = names[node].getBytes(StandardCharsets.UTF_8);
+            size += 1 + 4 + 2 + nameBytes[node].length + 4L * dimension;
+            for (int[] list : links[node]) {
+                size += 4 + 4L * list[0];
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(dimension)
+                .putInt(m)
+                .putInt(efConstruction)
+                .putInt(efSearch)
+                .putInt(nodeCount)
+                .putInt(entryPoint)
+                .putInt(maxLevel)
+                .putInt(0);
+
+        for (int node = 0; node < nodeCount; node++) {
+            buffer.put((byte) (removed[node] ? 1 : 0));
+            buffer.putInt(links[node].length);
+            buffer.putShort((short) nameBytes[node].length);
+            buffer.put(nameBytes[node]);
+            for (int i = 0; i < dimension; i++) {
+                buffer.putFloat(vectors[node * dimension + i]);
+            }
+            for (int[] list : links[node]) {
+                buffer.putInt(list[0]);
+                for (int i = 1; i <= list[0]; i++) {
+                    buffer.putInt(list[i]);
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Write serialized index data to {@code file} via a temporary file and rename
+     */
+    public static void write(ByteBuffer data, File file) throws IOException {
+        EmbeddingStore.writeAtomically(data, file);
+    }
+
+    /**
+     * Load an index previously written with {@link #write}
+     * @throws IOException if the file is missing, corrupt or from another version
+     */
+    public static HnswIndex load(File file) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a supported HNSW index file: " + file);
+            }
+            int dimension = buffer.getInt();
+            int m = buffer.getInt();
+            int efConstruction = buffer.getInt();
+            int efSearch = buffer.getInt();
+            int nodeCount = buffer.getInt();
+            int entryPoint = buffer.getInt();
+            int maxLevel = buffer.getInt();
+            buffer.getInt(); // reserved
+
+            HnswIndex index = new HnswIndex(m, efConstruction, efSearch);
+            index.dimension = dimension;
+            index.ensureCapacity(nodeCount);
+
+            for (int node = 0; node < nodeCount; node++) {
+                boolean isRemoved = buffer.get() != 0;
+                int levelCount = buffer.getInt();
+                byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(nameBytes);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                for (int i = 0; i < dimension; i++) {
+                    index.vectors[node * dimension + i] = buffer.getFloat();
+                }
+
+                int[][] nodeLinks = new int[levelCount][];
+                for (int l = 0; l < levelCount; l++) {
+                    int count = buffer.getInt();
+                    int capacity = l == 0 ? index.maxM0 : index.m;
+                    if (count < 0 || count > capacity) {
+                        throw new IOException("Corrupt link list in " + file);
+                    }
+                    nodeLinks[l] = new int[capacity + 1];
+                    nodeLinks[l][0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        int neighbour = buffer.getInt();
+                        if (neighbour < 0 || neighbour >= nodeCount) {
+                            throw new IOException("Corrupt link list in " + file);
+                        }
+                        nodeLinks[l][i] = neighbour;
+                    }
+                }
+
+                index.names[node] = name;
+                index.removed[node] = isRemoved;
+                index.links[node] = nodeLinks;
+                index.ownedLinks[node] = true;
+                if (!isRemoved) {
+                    index.nodeByName.put(name, node);
+                    index.liveCount++;
+                }
+            }
+            index.nodeCount = nodeCount;
+            index.tail.length = nodeCount;
+            index.entryPoint = nodeCount > 0 ? entryPoint : -1;
+            index.maxLevel = nodeCount > 0 ? maxLevel : -1;
+            if (nodeCount > 0 && (entryPoint < 0 || entryPoint >= nodeCount
+                    || index.links[entryPoint].length != maxLevel + 1)) {
+                throw new IOException("Corrupt entry point in " + file);
+            }
+            return index;
+        } catch (java.nio.BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated HNSW index file " + file, e);
+        }
+    }
+
+    // Row count of vectors/names storage shared by copies; only the instance whose
+    // nodeCount matches may append in place
+    private static final class Tail {
+        int length;
+    }
+
+    // Visited marks and heaps of one thread's searches, shared by every index it searches
+    private static final class SearchScratch {
+        int[] visited = new int[0];
+        int visitGeneration = 0;
+        final NodeHeap candidates = new NodeHeap(true);
+        final NodeHeap results = new NodeHeap(false);
+
+        int nextVisitGeneration(int nodeCount) {
+            if (visited.length < nodeCount) {
+                visited = new int[Math.max(nodeCount, visited.length * 2)];
+                visitGeneration = 0;
+            }
+            if (++visitGeneration == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                visitGeneration = 1;
+            }
+            return visitGeneration;
+        }
+    }
+
+    // Binary heap over (node, score) pairs without boxing
+    private static final class NodeHeap {
+        private final boolean maxOnTop;
+        private int[] nodes = new int[64];
+        private float[] scores = new float[64];
+        int size;
+
+        NodeHeap(boolean maxOnTop) {
+            this.maxOnTop = maxOnTop;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int peekNode() {
+            return nodes[0];
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        void pop() {
+            if (--size == 0) {
+                return;
+            }
+            int node = nodes[size];
+            float score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!above(scores[child], score)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        private boolean above(float a, float b) {
+            return maxOnTop ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Everything enrolled for one person: a bounded set of exemplar embeddings plus the
+ * running centroid of every accepted sample.
+ *
+ * The centroid is kept as the sum of the normalized samples, so adding one is a vector
+ * add and old samples keep their weight after their exemplar is evicted. The gallery
+ * searches centroids and rescores exemplars only for people whose {@link #getSpread()}
+ * lets one beat the centroid; exemplars keep the poses and lighting the centroid averages
+ * away. Once the set is full, a new sample replaces the exemplar closest to another one,
+ * which keeps the set spread out. A sample far from an established centroid is taken to
+ * be a bad frame and rejected, so it can no longer ruin an enrollment.
+ *
+ * Immutable. The gallery keeps profiles on disk and only builds one to enroll into or
+ * when asked for it.
+ */
+public final class IdentityProfile {
+    public static final int MAX_EXEMPLARS = 5;
+    // Samples below this similarity to the centroid are rejected once it is established
+    public static final float OUTLIER_SIMILARITY = 0.5f;
+    private static final int MIN_EXEMPLARS_FOR_OUTLIERS = 3;
+
+    private final float[] centroidSum;
+    private final float[] centroid;
+    private final float[][] exemplars;
+
+    private IdentityProfile(float[] centroidSum, float[][] exemplars) {
+        this.centroidSum = centroidSum;
+        this.centroid = centroidSum.clone();
+        EmbeddingMatrix.normalize(centroid, 0, centroid.length);
+        this.exemplars = exemplars;
+    }
+
+    /**
+     * @return Profile of a single sample, or null for a zero embedding
+     */
+    public static IdentityProfile of(float[] embedding) {
+        float[] normalized = normalized(embedding);
+        return normalized != null ? new IdentityProfile(normalized.clone(), new float[][]{normalized}) : null;
+    }
+
+    /**
+     * Rebuild a stored profile
+     * @param centroidSum As returned by {@link #getCentroidSum()}, or a single legacy embedding
+     * @param exemplars Stored exemplars; if empty the centroid is the only exemplar
+     */
+    public static IdentityProfile restore(float[] centroidSum, List<float[]> exemplars) {
+        if (exemplars.isEmpty()) {
+            float[] normalized = normalized(centroidSum);
+            return normalized != null ? new IdentityProfile(normalized.clone(), new float[][]{normalized}) : null;
+        }
+        int count = Math.min(exemplars.size(), MAX_EXEMPLARS);
+        float[][] restored = new float[count][];
+        for (int i = 0; i < count; i++) {
+            restored[i] = normalized(exemplars.get(i));
+            if (restored[i] == null) {
+                return null;
+            }
+        }
+        return new IdentityProfile(centroidSum.clone(), restored);
+    }
+
+    /**
+     * @param embedding Raw embedding of the same length
+     * @return Profile including the sample, or null if it is rejected as an outlier
+     */
+    public IdentityProfile withSample(float[] embedding) {
+        float[] sample = embedding.length == centroid.length ? normalized(embedding) : null;
+        if (sample == null) {
+            return null;
+        }
+        if (exemplars.length >= MIN_EXEMPLARS_FOR_OUTLIERS
+                && SimilarityKernels.dot(sample, centroid) < OUTLIER_SIMILARITY) {
+            return null;
+        }
+
+        float[] sum = centroidSum.clone();
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += sample[i];
+        }
+
+        float[][] next;
+        if (exemplars.length < MAX_EXEMPLARS) {
+            next = Arrays.copyOf(exemplars, exemplars.length + 1);
+            next[exemplars.length] = sample;
+        } else {
+            next = exemplars.clone();
+            next[mostRedundant(sample)] = sample;
+        }
+        return new IdentityProfile(sum, next);
+    }
+
+    /**
+     * Lowest similarity of an exemplar to the centroid. No exemplar is further from the
+     * centroid than this, which bounds how much better than the centroid one can match.
+     */
+    public float getSpread() {
+        float spread = 1f;
+        for (float[] exemplar : exemplars) {
+            spread = Math.min(spread, SimilarityKernels.dot(exemplar, centroid));
+        }
+        return spread;
+    }
+
+    /**
+     * Unnormalized running sum; what the gallery stores and indexes for this person
+     */
+    public float[] getCentroidSum() {
+        return centroidSum.clone();
+    }
+
+    public float[] getCentroid() {
+        return centroid.clone();
+    }
+
+    public int getExemplarCount() {
+        return exemplars.length;
+    }
+
+    /**
+     * @return Copy of normalized exemplar {@code i}
+     */
+    public float[] getExemplar(int i) {
+        return exemplars[i].clone();
+    }
+
+    // Existing exemplar with the highest similarity to any other exemplar or the new sample
+    private int mostRedundant(float[] sample) {
+        int worst = 0;
+        float worstSimilarity = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < exemplars.length; i++) {
+            float closest = SimilarityKernels.dot(exemplars[i], sample);
+            for (int j = 0; j < exemplars.length; j++) {
+                if (j != i) {
+                    closest = Math.max(closest, SimilarityKernels.dot(exemplars[i], exemplars[j]));
+                }
+            }
+            if (closest > worstSimilarity) {
+                worstSimilarity = closest;
+                worst = i;
+            }
+        }
+        return worst;
+    }
+
+    private static float[] normalized(float[] embedding) {
+        float[] copy = embedding.clone();
+        return EmbeddingMatrix.normalize(copy, 0, copy.length) > 0f ? copy : null;
+    }
+}
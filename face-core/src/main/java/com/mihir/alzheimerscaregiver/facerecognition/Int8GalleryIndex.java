@@ -0,0 +1,134 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gallery index storing each normalized embedding as signed 8-bit codes with one
+ * float scale per vector (about 4x smaller than float32 rows).
+ *
+ * Scoring is asymmetric: the query stays float and is multiplied directly with
+ * the stored codes, so only the gallery side carries quantization error.
+ */
+public class Int8GalleryIndex extends QuantizedGalleryIndex {
+    private byte[] codes = new byte[0];
+    private float[] scales = new float[0];
+
+    public Int8GalleryIndex(int dimension) {
+        super(dimension);
+    }
+
+    private Int8GalleryIndex(Int8GalleryIndex source) {
+        super(source);
+        int count = source.size();
+        this.codes = Arrays.copyOf(source.codes, (count + 1) * dimension);
+        this.scales = Arrays.copyOf(source.scales, count + 1);
+    }
+
+    public static Int8GalleryIndex fromMap(int dimension, Map<String, float[]> faces) {
+        Int8GalleryIndex index = new Int8GalleryIndex(dimension);
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            index.put(entry.getKey(), entry.getValue());
+        }
+        return index;
+    }
+
+    @Override
+    public Int8GalleryIndex copy() {
+        return new Int8GalleryIndex(this);
+    }
+
+    @Override
+    protected void encodeRow(int row, float[] normalized) {
+        ensureCapacity(row + 1);
+
+        float maxAbs = 0f;
+        for (float value : normalized) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float scale = maxAbs > 0f ? maxAbs / 127f : 1f;
+        float inv = 1f / scale;
+
+        int offset = row * dimension;
+        for (int i = 0; i < dimension; i++) {
+            codes[offset + i] = (byte) Math.round(normalized[i] * inv);
+        }
+        scales[row] = scale;
+    }
+
+    @Override
+    protected void decodeRow(int row, float[] out) {
+        int offset = row * dimension;
+        float scale = scales[row];
+        for (int i = 0; i < dimension; i++) {
+            out[i] = codes[offset + i] * scale;
+        }
+    }
+
+    @Override
+    protected void moveRow(int from, int to) {
+        System.arraycopy(codes, from * dimension, codes, to * dimension, dimension);
+        scales[to] = scales[from];
+    }
+
+    @Override
+    protected void clearRows() {
+        codes = new byte[0];
+        scales = new float[0];
+    }
+
+    @Override
+    public int bytesPerFace() {
+        return dimension + 4;
+    }
+
+    @Override
+    protected float scoreRow(float[] normalizedQuery, int row) {
+        return SimilarityKernels.dot(normalizedQuery, codes, row * dimension, dimension) * scales[row];
+    }
+
+    @Override
+    public EmbeddingMatrix.Match findNearest(float[] query) {
+        float[] q = prepareQuery(query);
+        if (q == null) {
+            return null;
+        }
+
+        final byte[] data = codes;
+        final int dim = dimension;
+        final int count = names.size();
+        int bestRow = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+
+        for (int row = 0, offset = 0; row < count; row++, offset += dim) {
+            float score = SimilarityKernels.dot(q, data, offset, dim) * scales[row];
+            if (score > bestScore) {
+                bestScore = score;
+                bestRow = row;
+            }
+        }
+
+        return new EmbeddingMatrix.Match(names.get(bestRow), bestRow, bestScore);
+    }
+
+    @Override
+    public List<EmbeddingMatrix.Match> findTopK(float[] query, int k) {
+        TopK top = new TopK(Math.min(k, names.size()));
+        float[] q = prepareQuery(query);
+        if (q != null) {
+            for (int row = 0, offset = 0; row < names.size(); row++, offset += dimension) {
+                top.offer(row, SimilarityKernels.dot(q, codes, offset, dimension) * scales[row]);
+            }
+        }
+        return top.toMatches(names);
+    }
+
+    private void ensureCapacity(int rowCount) {
+        if (rowCount > scales.length) {
+            int capacity = Math.max(rowCount, Math.max(16, scales.length * 2));
+            codes = Arrays.copyOf(codes, capacity * dimension);
+            scales = Arrays.copyOf(scales, capacity);
+        }
+    }
+}
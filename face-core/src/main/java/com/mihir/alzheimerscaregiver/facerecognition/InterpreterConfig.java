@@ -0,0 +1,107 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+/**
+ * Immutable TFLite interpreter settings. Models are shared per model file and
+ * configuration, so two helpers asking for the same settings get one interpreter.
+ */
+public final class InterpreterConfig {
+    // Let the interpreter pick its thread count
+    public static final int DEFAULT_THREADS = -1;
+    public static final InterpreterConfig DEFAULT = new InterpreterConfig(DEFAULT_THREADS, true, false);
+
+    private final int numThreads;
+    private final boolean useXnnpack;
+    private final boolean useNnapi;
+
+    public InterpreterConfig(int numThreads, boolean useXnnpack, boolean useNnapi) {
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+        this.useNnapi = useNnapi;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public boolean useXnnpack() {
+        return useXnnpack;
+    }
+
+    public boolean useNnapi() {
+        return useNnapi;
+    }
+
+    public InterpreterConfig withNumThreads(int numThreads) {
+        return new InterpreterConfig(numThreads, useXnnpack, useNnapi);
+    }
+
+    public InterpreterConfig withXnnpack(boolean useXnnpack) {
+        return new InterpreterConfig(numThreads, useXnnpack, useNnapi);
+    }
+
+    public InterpreterConfig withNnapi(boolean useNnapi) {
+        return new InterpreterConfig(numThreads, useXnnpack, useNnapi);
+    }
+
+    /**
+     * Compact form used as registry key and for persisting, e.g. "threads=4,xnnpack=1,nnapi=0"
+     */
+    public String toKey() {
+        return "threads=" + numThreads + ",xnnpack=" + (useXnnpack ? 1 : 0) + ",nnapi=" + (useNnapi ? 1 : 0);
+    }
+
+    /**
+     * Parse the output of {@link #toKey()}
+     * @return Parsed config, or null if the string is malformed
+     */
+    public static InterpreterConfig fromKey(String key) {
+        if (key == null) {
+            return null;
+        }
+        int threads = DEFAULT_THREADS;
+        boolean xnnpack = true;
+        boolean nnapi = false;
+        try {
+            for (String part : key.split(",")) {
+                String[] pair = part.split("=", 2);
+                if (pair.length != 2) {
+                    return null;
+                }
+                switch (pair[0]) {
+                    case "threads":
+                        threads = Integer.parseInt(pair[1]);
+                        break;
+                    case "xnnpack":
+                        xnnpack = "1".equals(pair[1]);
+                        break;
+                    case "nnapi":
+                        nnapi = "1".equals(pair[1]);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new InterpreterConfig(threads, xnnpack, nnapi);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InterpreterConfig)) return false;
+        InterpreterConfig other = (InterpreterConfig) o;
+        return numThreads == other.numThreads && useXnnpack == other.useXnnpack && useNnapi == other.useNnapi;
+    }
+
+    @Override
+    public int hashCode() {
+        return (numThreads * 31 + (useXnnpack ? 1 : 0)) * 31 + (useNnapi ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return toKey();
+    }
+}
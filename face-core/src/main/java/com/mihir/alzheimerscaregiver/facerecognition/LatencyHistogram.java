@@ -0,0 +1,108 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-scaled buckets (four per power of two,
+ * so percentiles are within about 19% of the true value) from 1 µs to about 1 hour.
+ * Recording is a single atomic increment, so it can sit on the hot path of any thread.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS_PER_OCTAVE = 4;
+    private static final int OCTAVES = 32;
+    private static final int BUCKET_COUNT = BUCKETS_PER_OCTAVE * OCTAVES;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketFor(nanos / 1000));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Approximate percentile; concurrent records may or may not be included
+     * @param percentile In (0, 100]
+     * @return Upper bound of the bucket holding the percentile, in milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperMicros(i) / 1000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * e.g. "p50=4.1ms p95=7.9ms p99=12.3ms (n=240)"
+     */
+    public String summary() {
+        return String.format(Locale.US, "p50=%.1fms p95=%.1fms p99=%.1fms (n=%d)",
+                getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99), getCount());
+    }
+
+    static int bucketFor(long micros) {
+        if (micros < 1) {
+            return 0;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(micros);
+        // Next two bits below the leading one pick the quarter within the octave
+        int fraction = octave >= 2 ? (int) ((micros >>> (octave - 2)) & 3) : (int) ((micros << (2 - octave)) & 3);
+        return Math.min(BUCKET_COUNT - 1, octave * BUCKETS_PER_OCTAVE + fraction);
+    }
+
+    static double bucketUpperMicros(int bucket) {
+        int octave = bucket / BUCKETS_PER_OCTAVE;
+        int fraction = bucket % BUCKETS_PER_OCTAVE;
+        return Math.pow(2, octave) * (1 + (fraction + 1) / (double) BUCKETS_PER_OCTAVE);
+    }
+}
@@ -0,0 +1,142 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gallery index storing product-quantized codes ({@link ProductQuantizer}), e.g. 48 bytes
+ * plus one float per face instead of 768 bytes. Queries build one asymmetric distance
+ * table and then score every face with table lookups only.
+ *
+ * Reconstructed vectors are shorter than the unit-length originals, which would bias
+ * every score low; each row therefore keeps the inverse norm of its reconstruction
+ * so scores stay comparable with the exact cosine threshold.
+ * The distance table is per-thread scratch, so searches may run concurrently.
+ */
+public class PqGalleryIndex extends QuantizedGalleryIndex {
+    private static final ThreadLocal<float[]> TABLE = new ThreadLocal<>();
+
+    private final ProductQuantizer quantizer;
+    private final int codeSize;
+    private byte[] codes = new byte[0];
+    private float[] inverseNorms = new float[0];
+
+    public PqGalleryIndex(ProductQuantizer quantizer) {
+        super(quantizer.getDimension());
+        this.quantizer = quantizer;
+        this.codeSize = quantizer.getSubspaces();
+    }
+
+    // Codebooks are never changed after training, so copies share the quantizer
+    private PqGalleryIndex(PqGalleryIndex source) {
+        super(source);
+        int count = source.size();
+        this.quantizer = source.quantizer;
+        this.codeSize = source.codeSize;
+        this.codes = Arrays.copyOf(source.codes, (count + 1) * codeSize);
+        this.inverseNorms = Arrays.copyOf(source.inverseNorms, count + 1);
+    }
+
+    public static PqGalleryIndex fromMap(ProductQuantizer quantizer, Map<String, float[]> faces) {
+        PqGalleryIndex index = new PqGalleryIndex(quantizer);
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            index.put(entry.getKey(), entry.getValue());
+        }
+        return index;
+    }
+
+    public ProductQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    @Override
+    public PqGalleryIndex copy() {
+        return new PqGalleryIndex(this);
+    }
+
+    @Override
+    protected void encodeRow(int row, float[] normalized) {
+        if (row >= inverseNorms.length) {
+            int capacity = Math.max(row + 1, Math.max(16, inverseNorms.length * 2));
+            codes = Arrays.copyOf(codes, capacity * codeSize);
+            inverseNorms = Arrays.copyOf(inverseNorms, capacity);
+        }
+        quantizer.encode(normalized, codes, row * codeSize);
+
+        float[] decoded = new float[dimension];
+        quantizer.decode(codes, row * codeSize, decoded);
+        float norm = EmbeddingMatrix.normalize(decoded, 0, dimension);
+        inverseNorms[row] = norm > 0f ? 1f / norm : 0f;
+    }
+
+    @Override
+    protected void decodeRow(int row, float[] out) {
+        quantizer.decode(codes, row * codeSize, out);
+        EmbeddingMatrix.normalize(out, 0, dimension);
+    }
+
+    @Override
+    protected void moveRow(int from, int to) {
+        System.arraycopy(codes, from * codeSize, codes, to * codeSize, codeSize);
+        inverseNorms[to] = inverseNorms[from];
+    }
+
+    @Override
+    protected void clearRows() {
+        codes = new byte[0];
+        inverseNorms = new float[0];
+    }
+
+    @Override
+    public int bytesPerFace() {
+        return codeSize + 4;
+    }
+
+    @Override
+    public EmbeddingMatrix.Match findNearest(float[] query) {
+        float[] q = prepareQuery(query);
+        if (q == null) {
+            return null;
+        }
+
+        float[] table = buildTable(q);
+
+        final int count = names.size();
+        int bestRow = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int row = 0, offset = 0; row < count; row++, offset += codeSize) {
+            float score = quantizer.score(table, codes, offset) * inverseNorms[row];
+            if (score > bestScore) {
+                bestScore = score;
+                bestRow = row;
+            }
+        }
+
+        return new EmbeddingMatrix.Match(names.get(bestRow), bestRow, bestScore);
+    }
+
+    @Override
+    public List<EmbeddingMatrix.Match> findTopK(float[] query, int k) {
+        TopK top = new TopK(Math.min(k, names.size()));
+        float[] q = prepareQuery(query);
+        if (q != null) {
+            float[] table = buildTable(q);
+            for (int row = 0, offset = 0; row < names.size(); row++, offset += codeSize) {
+                top.offer(row, quantizer.score(table, codes, offset) * inverseNorms[row]);
+            }
+        }
+        return top.toMatches(names);
+    }
+
+    // Distance table of a normalized query, in this thread's scratch
+    private float[] buildTable(float[] q) {
+        float[] table = TABLE.get();
+        if (table == null || table.length < codeSize * ProductQuantizer.MAX_CENTROIDS) {
+            table = new float[codeSize * ProductQuantizer.MAX_CENTROIDS];
+            TABLE.set(table);
+        }
+        quantizer.buildTable(q, table);
+        return table;
+    }
+}
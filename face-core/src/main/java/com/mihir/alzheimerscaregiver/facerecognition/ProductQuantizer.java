@@ -0,0 +1,241 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Product quantization codec. A vector is split into {@code subspaces} equal chunks and
+ * each chunk is replaced by the index of its nearest centroid in that chunk's codebook,
+ * so a 192-d float32 embedding (768 bytes) becomes {@code subspaces} bytes.
+ *
+ * Queries are scored with asymmetric distance computation: {@link #buildTable} turns a
+ * float query into a table of chunk-vs-centroid dot products once, after which scoring
+ * any stored code is {@code subspaces} table lookups.
+ */
+public class ProductQuantizer {
+    public static final int DEFAULT_SUBSPACES = 48;
+    public static final int MAX_CENTROIDS = 256;
+    private static final int TRAINING_ITERATIONS = 8;
+    private static final int MAX_TRAINING_SAMPLES = 1024;
+    static final int MAGIC = 0x31515150; // "PQQ1"
+
+    private final int dimension;
+    private final int subspaces;
+    private final int subDimension;
+    private final int centroids;
+    // codebooks[(s * centroids + c) * subDimension + i]
+    private final float[] codebooks;
+    private final int trainedOn;
+
+    private ProductQuantizer(int dimension, int subspaces, int centroids, float[] codebooks, int trainedOn) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.subDimension = dimension / subspaces;
+        this.centroids = centroids;
+        this.codebooks = codebooks;
+        this.trainedOn = trainedOn;
+    }
+
+    /**
+     * Train codebooks with k-means on (a sample of) the given normalized vectors
+     * @param vectors Training vectors, all of length {@code dimension}
+     * @param subspaces Number of chunks; must divide {@code dimension}
+     * @param seed Random seed, so the same gallery always yields the same codebooks
+     */
+    public static ProductQuantizer train(List<float[]> vectors, int dimension, int subspaces, long seed) {
+        if (dimension % subspaces != 0) {
+            throw new IllegalArgumentException(subspaces + " subspaces do not divide dimension " + dimension);
+        }
+        if (vectors.isEmpty()) {
+            throw new IllegalArgumentException("Cannot train on an empty gallery");
+        }
+
+        Random random = new Random(seed);
+        int sampleCount = Math.min(vectors.size(), MAX_TRAINING_SAMPLES);
+        int[] sample = new int[vectors.size()];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = i;
+        }
+        for (int i = 0; i < sampleCount; i++) {
+            int j = i + random.nextInt(sample.length - i);
+            int tmp = sample[i];
+            sample[i] = sample[j];
+            sample[j] = tmp;
+        }
+
+        int centroids = Math.min(MAX_CENTROIDS, sampleCount);
+        int subDimension = dimension / subspaces;
+        float[] codebooks = new float[subspaces * centroids * subDimension];
+
+        float[] points = new float[sampleCount * subDimension];
+        int[] assignment = new int[sampleCount];
+        float[] sums = new float[centroids * subDimension];
+        int[] counts = new int[centroids];
+
+        for (int s = 0; s < subspaces; s++) {
+            int chunk = s * subDimension;
+            for (int p = 0; p < sampleCount; p++) {
+                System.arraycopy(vectors.get(sample[p]), chunk, points, p * subDimension, subDimension);
+            }
+
+            // Samples are already shuffled, so the first k make a random initialization
+            int book = s * centroids * subDimension;
+            System.arraycopy(points, 0, codebooks, book, centroids * subDimension);
+
+            for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+                for (int p = 0; p < sampleCount; p++) {
+                    assignment[p] = nearestCentroid(codebooks, book, centroids, subDimension, points, p * subDimension);
+                }
+
+                Arrays.fill(sums, 0f);
+                Arrays.fill(counts, 0);
+                for (int p = 0; p < sampleCount; p++) {
+                    int c = assignment[p];
+                    counts[c]++;
+                    for (int i = 0; i < subDimension; i++) {
+                        sums[c * subDimension + i] += points[p * subDimension + i];
+                    }
+                }
+                for (int c = 0; c < centroids; c++) {
+                    if (counts[c] == 0) {
+                        // Re-seed empty clusters from a random point
+                        int p = random.nextInt(sampleCount);
+                        System.arraycopy(points, p * subDimension, codebooks, book + c * subDimension, subDimension);
+                        continue;
+                    }
+                    float inv = 1f / counts[c];
+                    for (int i = 0; i < subDimension; i++) {
+                        codebooks[book + c * subDimension + i] = sums[c * subDimension + i] * inv;
+                    }
+                }
+            }
+        }
+
+        return new ProductQuantizer(dimension, subspaces, centroids, codebooks, vectors.size());
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getSubspaces() {
+        return subspaces;
+    }
+
+    /**
+     * Gallery size the codebooks were trained on
+     */
+    public int getTrainedOn() {
+        return trainedOn;
+    }
+
+    /**
+     * Write the code of {@code vector} to {@code codes[offset .. offset + subspaces)}
+     */
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            int c = nearestCentroid(codebooks, s * centroids * subDimension, centroids, subDimension,
+                    vector, s * subDimension);
+            codes[offset + s] = (byte) c;
+        }
+    }
+
+    public void decode(byte[] codes, int offset, float[] out) {
+        for (int s = 0; s < subspaces; s++) {
+            int c = codes[offset + s] & 0xFF;
+            System.arraycopy(codebooks, (s * centroids + c) * subDimension, out, s * subDimension, subDimension);
+        }
+    }
+
+    /**
+     * Fill {@code table[s * 256 + c]} with the dot product of query chunk s and centroid c
+     * @param table Scratch table of at least {@code subspaces * 256} floats
+     */
+    public void buildTable(float[] query, float[] table) {
+        for (int s = 0; s < subspaces; s++) {
+            int chunk = s * subDimension;
+            int book = s * centroids * subDimension;
+            for (int c = 0; c < centroids; c++) {
+                float dot = 0f;
+                int offset = book + c * subDimension;
+                for (int i = 0; i < subDimension; i++) {
+                    dot += query[chunk + i] * codebooks[offset + i];
+                }
+                table[s * MAX_CENTROIDS + c] = dot;
+            }
+        }
+    }
+
+    /**
+     * Asymmetric score of a stored code against the query the table was built from
+     */
+    public float score(float[] table, byte[] codes, int offset) {
+        float sum = 0f;
+        for (int s = 0, t = 0; s < subspaces; s++, t += MAX_CENTROIDS) {
+            sum += table[t + (codes[offset + s] & 0xFF)];
+        }
+        return sum;
+    }
+
+    public void save(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * 5 + 4 * codebooks.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(dimension).putInt(subspaces).putInt(centroids).putInt(trainedOn);
+        buffer.asFloatBuffer().put(codebooks);
+        buffer.position(buffer.capacity());
+        buffer.flip();
+        EmbeddingStore.writeAtomically(buffer, file);
+    }
+
+    public static ProductQuantizer load(File file) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < 20 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a product quantizer file: " + file);
+        }
+        int dimension = buffer.getInt();
+        int subspaces = buffer.getInt();
+        int centroids = buffer.getInt();
+        int trainedOn = buffer.getInt();
+        if (subspaces <= 0 || dimension % subspaces != 0 || centroids <= 0 || centroids > MAX_CENTROIDS
+                || (long) subspaces * centroids * (dimension / subspaces) * 4 != buffer.remaining()) {
+            throw new IOException("Corrupt product quantizer file: " + file);
+        }
+
+        float[] codebooks = new float[subspaces * centroids * (dimension / subspaces)];
+        FloatBuffer floats = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        floats.get(codebooks);
+        return new ProductQuantizer(dimension, subspaces, centroids, codebooks, trainedOn);
+    }
+
+    private static int nearestCentroid(float[] codebooks, int book, int centroids, int subDimension,
+                                       float[] vector, int offset) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < centroids; c++) {
+            int centroid = book + c * subDimension;
+            float distance = 0f;
+            for (int i = 0; i < subDimension; i++) {
+                float diff = vector[offset + i] - codebooks[centroid + i];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
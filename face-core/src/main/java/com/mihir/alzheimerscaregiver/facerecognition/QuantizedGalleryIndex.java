@@ -0,0 +1,155 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base for gallery indexes that keep compressed codes instead of float rows.
+ * Handles the name table and dense row bookkeeping; subclasses own the code
+ * storage and the (asymmetric) scoring of a float query against stored codes.
+ */
+public abstract class QuantizedGalleryIndex implements GalleryIndex {
+    protected final int dimension;
+    protected final ArrayList<String> names = new ArrayList<>();
+    private final HashMap<String, Integer> rowIndex = new HashMap<>();
+
+    protected QuantizedGalleryIndex(int dimension) {
+        this.dimension = dimension;
+    }
+
+    /**
+     * Copy the name table of {@code source}; subclasses copy their codes
+     */
+    protected QuantizedGalleryIndex(QuantizedGalleryIndex source) {
+        this.dimension = source.dimension;
+        this.names.addAll(source.names);
+        this.rowIndex.putAll(source.rowIndex);
+    }
+
+    /**
+     * Encode a normalized embedding into {@code row}, growing storage as needed
+     */
+    protected abstract void encodeRow(int row, float[] normalized);
+
+    /**
+     * Decode {@code row} into {@code out} (length {@code dimension})
+     */
+    protected abstract void decodeRow(int row, float[] out);
+
+    /**
+     * Copy the codes of row {@code from} over row {@code to}
+     */
+    protected abstract void moveRow(int from, int to);
+
+    protected abstract void clearRows();
+
+    /**
+     * Bytes of code storage per registered face, for reporting
+     */
+    public abstract int bytesPerFace();
+
+    @Override
+    public void put(String name, float[] embedding) {
+        if (embedding.length != dimension) {
+            throw new IllegalArgumentException("Expected embedding of size " + dimension
+                    + " but got " + embedding.length);
+        }
+        float[] normalized = Arrays.copyOf(embedding, dimension);
+        EmbeddingMatrix.normalize(normalized, 0, dimension);
+
+        Integer existing = rowIndex.get(name);
+        int row;
+        if (existing != null) {
+            row = existing;
+        } else {
+            row = names.size();
+            names.add(name);
+            rowIndex.put(name, row);
+        }
+        encodeRow(row, normalized);
+    }
+
+    @Override
+    public boolean remove(String name) {
+        Integer removed = rowIndex.remove(name);
+        if (removed == null) {
+            return false;
+        }
+
+        int row = removed;
+        int last = names.size() - 1;
+        if (row != last) {
+            moveRow(last, row);
+            String moved = names.get(last);
+            names.set(row, moved);
+            rowIndex.put(moved, row);
+        }
+        names.remove(last);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        names.clear();
+        rowIndex.clear();
+        clearRows();
+    }
+
+    @Override
+    public int size() {
+        return names.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return rowIndex.containsKey(name);
+    }
+
+    @Override
+    public String[] getNames() {
+        return names.toArray(new String[0]);
+    }
+
+    @Override
+    public Map<String, float[]> toMap() {
+        Map<String, float[]> faces = new LinkedHashMap<>();
+        for (int row = 0; row < names.size(); row++) {
+            float[] decoded = new float[dimension];
+            decodeRow(row, decoded);
+            faces.put(names.get(row), decoded);
+        }
+        return faces;
+    }
+
+    @Override
+    public float similarity(float[] normalizedQuery, String name) {
+        Integer row = rowIndex.get(name);
+        return row != null ? scoreRow(normalizedQuery, row) : Float.NaN;
+    }
+
+    /**
+     * Similarity of a normalized query to one stored row; decodes it unless overridden
+     */
+    protected float scoreRow(float[] normalizedQuery, int row) {
+        float[] decoded = new float[dimension];
+        decodeRow(row, decoded);
+        return SimilarityKernels.dot(normalizedQuery, decoded);
+    }
+
+    // Normalized copy of the query, or null if it cannot be scored
+    protected float[] prepareQuery(float[] query) {
+        if (names.isEmpty() || query.length != dimension) {
+            return null;
+        }
+        float[] q = Arrays.copyOf(query, dimension);
+        return EmbeddingMatrix.normalize(q, 0, dimension) == 0f ? null : q;
+    }
+}
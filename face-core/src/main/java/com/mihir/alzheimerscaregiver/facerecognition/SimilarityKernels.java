@@ -0,0 +1,211 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+/**
+ * Similarity kernels shared by {@code SimilarityClassifier.Utils}, {@code FaceNetModel}
+ * and the gallery indexes, kept here so they can be tested and benchmarked without Android.
+ *
+ * Loops are unrolled by four into independent accumulators. A single running float sum
+ * is one long chain of dependent adds that the JIT may not reorder or vectorize; four
+ * chains keep the FP units busy. Results therefore differ from a naive left-to-right sum
+ * by float rounding only (a few ulps for 192-d embeddings).
+ *
+ * Where one side is reused (the query, or stored rows of known length), pass its norm
+ * to the precomputed-norm variants instead of recomputing it per comparison.
+ */
+public final class SimilarityKernels {
+
+    private SimilarityKernels() {
+    }
+
+    /**
+     * Dot product of {@code length} values of {@code a} and {@code b} from the given offsets
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int end = length - 3; i < end; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, Math.min(a.length, b.length));
+    }
+
+    /**
+     * Dot product of a float query with {@code length} int8 codes from {@code offset}
+     */
+    public static float dot(float[] q, byte[] codes, int offset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int end = length - 3; i < end; i += 4) {
+            s0 += q[i] * codes[offset + i];
+            s1 += q[i + 1] * codes[offset + i + 1];
+            s2 += q[i + 2] * codes[offset + i + 2];
+            s3 += q[i + 3] * codes[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += q[i] * codes[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Squared L2 norm of {@code length} values from {@code offset}
+     */
+    public static float squaredNorm(float[] a, int offset, int length) {
+        return dot(a, offset, a, offset, length);
+    }
+
+    public static float norm(float[] a) {
+        return (float) Math.sqrt(squaredNorm(a, 0, a.length));
+    }
+
+    /**
+     * Squared Euclidean distance of {@code length} values of {@code a} and {@code b}
+     */
+    public static float squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int end = length - 3; i < end; i += 4) {
+            float d0 = a[aOffset + i] - b[bOffset + i];
+            float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Cosine similarity of two raw embeddings; dot product and both norms in one pass
+     * @return Similarity in [-1, 1], or 0 if the lengths differ or either vector is zero
+     */
+    public static float cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0f;
+        }
+
+        int length = a.length;
+        float dot0 = 0f;
+        float dot1 = 0f;
+        float aa0 = 0f;
+        float aa1 = 0f;
+        float bb0 = 0f;
+        float bb1 = 0f;
+        int i = 0;
+        for (int end = length - 1; i < end; i += 2) {
+            float a0 = a[i];
+            float a1 = a[i + 1];
+            float b0 = b[i];
+            float b1 = b[i + 1];
+            dot0 += a0 * b0;
+            dot1 += a1 * b1;
+            aa0 += a0 * a0;
+            aa1 += a1 * a1;
+            bb0 += b0 * b0;
+            bb1 += b1 * b1;
+        }
+        if (i < length) {
+            dot0 += a[i] * b[i];
+            aa0 += a[i] * a[i];
+            bb0 += b[i] * b[i];
+        }
+
+        float norm1 = (float) Math.sqrt(aa0 + aa1);
+        float norm2 = (float) Math.sqrt(bb0 + bb1);
+        if (norm1 == 0f || norm2 == 0f) {
+            return 0f;
+        }
+
+        return (dot0 + dot1) / (norm1 * norm2);
+    }
+
+    /**
+     * Cosine similarity with both L2 norms already known, e.g. from {@link #norm}
+     * @return Similarity, or 0 if the lengths differ or either norm is zero
+     */
+    public static float cosine(float[] a, float normA, float[] b, float normB) {
+        if (a.length != b.length || normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return dot(a, 0, b, 0, a.length) / (normA * normB);
+    }
+
+    /**
+     * Euclidean distance of two raw embeddings
+     * @return Distance, or {@link Float#MAX_VALUE} if the lengths differ
+     */
+    public static float euclidean(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return Float.MAX_VALUE;
+        }
+        return (float) Math.sqrt(squaredEuclidean(a, 0, b, 0, a.length));
+    }
+
+    /**
+     * Euclidean distance from the dot product and known L2 norms,
+     * |a - b|^2 = |a|^2 + |b|^2 - 2 a.b. Cheaper than {@link #euclidean(float[], float[])}
+     * but loses precision for nearly identical vectors.
+     * @return Distance, or {@link Float#MAX_VALUE} if the lengths differ
+     */
+    public static float euclidean(float[] a, float normA, float[] b, float normB) {
+        if (a.length != b.length) {
+            return Float.MAX_VALUE;
+        }
+        float squared = normA * normA + normB * normB - 2f * dot(a, 0, b, 0, a.length);
+        return (float) Math.sqrt(Math.max(0f, squared));
+    }
+
+    /**
+     * Dot product of one query against {@code rowCount} contiguous rows
+     * @param rows Row-major, {@code dimension} floats per row
+     * @param out Receives one score per row; at least {@code rowCount} long
+     */
+    public static void dotRows(float[] query, float[] rows, int rowCount, int dimension, float[] out) {
+        for (int row = 0, offset = 0; row < rowCount; row++, offset += dimension) {
+            out[row] = dot(query, 0, rows, offset, dimension);
+        }
+    }
+
+    /**
+     * Row with the highest dot product against {@code query}, without materializing scores
+     * @param rows Row-major, {@code dimension} floats per row
+     * @return Best row, or -1 if {@code rowCount} is 0
+     */
+    public static int maxDotRow(float[] query, float[] rows, int rowCount, int dimension) {
+        int bestRow = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int row = 0, offset = 0; row < rowCount; row++, offset += dimension) {
+            float score = dot(query, 0, rows, offset, dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                bestRow = row;
+            }
+        }
+        return bestRow;
+    }
+}
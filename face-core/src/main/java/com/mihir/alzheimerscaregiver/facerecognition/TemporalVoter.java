@@ -0,0 +1,233 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accumulates recognition evidence for one tracked face over consecutive frames and
+ * stops as soon as it is confident, instead of deciding from a single frame or always
+ * waiting for a fixed number of them.
+ *
+ * This is Wald's sequential probability ratio test with forgetting. Each frame's
+ * similarity to a person is scored as the log-likelihood ratio of two Gaussians of
+ * width {@link #SIGMA}, centered {@link #SEPARATION}/2 above (same person) and below
+ * (someone else) the recognition threshold, so the score is linear in the similarity.
+ * People missing from a frame's candidates are scored at the search floor, an upper
+ * bound on their real similarity. Evidence decays by {@code decay} per frame so a few
+ * early frames cannot outweigh what the camera sees now.
+ *
+ * A person is recognized once their evidence clears ln((1 - e) / e) both on its own
+ * and ahead of every other person; the face is unknown once nobody has evidence
+ * above ln(e / (1 - e)). A clear face in good light is decided in a frame or two,
+ * a poor frame only slows the decision down, and lookalikes run until the frame cap.
+ * Frames too poor to embed are counted through {@link #abstain}, so a face that never
+ * gets usable also reaches the cap instead of staying pending.
+ *
+ * Not thread-safe; use one voter per track on one thread.
+ */
+public class TemporalVoter {
+    public static final float DEFAULT_DECAY = 0.8f;
+    public static final float DEFAULT_ERROR_RATE = 0.01f;
+    public static final int DEFAULT_MAX_FRAMES = 15;
+    // Distance between the same-person and other-person similarity means
+    public static final float SEPARATION = 0.3f;
+    // Frame-to-frame spread of a similarity under either hypothesis
+    public static final float SIGMA = 0.08f;
+    private static final float SLOPE = SEPARATION / (SIGMA * SIGMA);
+
+    public enum Outcome {
+        PENDING,
+        RECOGNIZED,
+        UNKNOWN,
+        // Frame cap reached without a decision, e.g. two lookalikes
+        INCONCLUSIVE
+    }
+
+    private final float threshold;
+    private final float floor;
+    private final float decay;
+    private final float acceptBound;
+    private final float rejectBound;
+    private final int maxFrames;
+
+    private final Map<String, Evidence> evidence = new HashMap<>();
+    // Evidence of everyone never seen above the floor
+    private float floorEvidence = 0f;
+    private int frames = 0;
+    private Outcome outcome = Outcome.PENDING;
+    private String name;
+    private float similarity;
+
+    /**
+     * @param threshold Similarity that separates the same person from someone else
+     * @param floor Lowest similarity the candidates passed to {@link #offer} can have
+     */
+    public TemporalVoter(float threshold, float floor) {
+        this(threshold, floor, DEFAULT_DECAY, DEFAULT_ERROR_RATE, DEFAULT_MAX_FRAMES);
+    }
+
+    /**
+     * @param decay Weight of the accumulated evidence when the next frame arrives, in (0, 1]
+     * @param errorRate Tolerated rate of both wrong accepts and wrong rejects, in (0, 0.5)
+     * @param maxFrames Frames after which the vote gives up as inconclusive
+     */
+    public TemporalVoter(float threshold, float floor, float decay, float errorRate, int maxFrames) {
+        if (floor > threshold) {
+            throw new IllegalArgumentException("Floor " + floor + " above threshold " + threshold);
+        }
+        this.threshold = threshold;
+        this.floor = floor;
+        this.decay = decay;
+        this.acceptBound = (float) Math.log((1 - errorRate) / errorRate);
+        this.rejectBound = -acceptBound;
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Add one frame's candidates; once the vote is decided further frames are ignored
+     * @param candidates Best matches above the floor, or null if nobody came close
+     * @return Outcome after this frame
+     */
+    public Outcome offer(TopMatches candidates) {
+        if (outcome != Outcome.PENDING) {
+            return outcome;
+        }
+        frames++;
+        float floorScore = score(floor);
+        float previousFloor = floorEvidence;
+        floorEvidence = decay * floorEvidence + floorScore;
+        for (Evidence person : evidence.values()) {
+            person.value = decay * person.value + floorScore;
+        }
+
+        int count = candidates != null ? candidates.size() : 0;
+        for (int i = 0; i < count; i++) {
+            float candidateSimilarity = candidates.getSimilarity(i);
+            Evidence person = evidence.get(candidates.getName(i));
+            if (person == null) {
+                person = new Evidence(decay * previousFloor + floorScore);
+                evidence.put(candidates.getName(i), person);
+            }
+            // Swap this frame's floor score for the real one
+            person.value += score(candidateSimilarity) - floorScore;
+            person.similaritySum += candidateSimilarity;
+            person.seen++;
+        }
+
+        decide();
+        return outcome;
+    }
+
+    /**
+     * Count a frame whose face was too poor to embed. It adds no evidence, but what was
+     * gathered so far decays and the frame counts toward the cap.
+     * @return Outcome after this frame
+     */
+    public Outcome abstain() {
+        if (outcome != Outcome.PENDING) {
+            return outcome;
+        }
+        frames++;
+        floorEvidence *= decay;
+        for (Evidence person : evidence.values()) {
+            person.value *= decay;
+        }
+
+        decide();
+        return outcome;
+    }
+
+    /**
+     * Forget all evidence and start a new vote
+     */
+    public void reset() {
+        evidence.clear();
+        floorEvidence = 0f;
+        frames = 0;
+        outcome = Outcome.PENDING;
+        name = null;
+        similarity = 0f;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return The recognized person, or the current leader while pending; null if nobody leads
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Mean similarity of {@link #getName()} over the frames it was a candidate in
+     */
+    public float getSimilarity() {
+        return similarity;
+    }
+
+    /**
+     * Frames offered or abstained so far, or that the decision took
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Current evidence for a person; positive means more likely them than not
+     */
+    public float getEvidence(String person) {
+        Evidence entry = evidence.get(person);
+        return entry != null ? entry.value : floorEvidence;
+    }
+
+    private void decide() {
+        String leader = null;
+        float best = floorEvidence;
+        float runnerUp = Float.NEGATIVE_INFINITY;
+        for (Map.Entry<String, Evidence> entry : evidence.entrySet()) {
+            float value = entry.getValue().value;
+            if (value > best) {
+                runnerUp = best;
+                best = value;
+                leader = entry.getKey();
+            } else if (value > runnerUp) {
+                runnerUp = value;
+            }
+        }
+        // Everyone unseen counts as one more competitor at the floor
+        if (leader != null) {
+            runnerUp = Math.max(runnerUp, floorEvidence);
+        }
+
+        name = leader;
+        similarity = leader != null ? evidence.get(leader).meanSimilarity() : 0f;
+        if (leader != null && best >= acceptBound && best - runnerUp >= acceptBound) {
+            outcome = Outcome.RECOGNIZED;
+        } else if (best <= rejectBound) {
+            outcome = Outcome.UNKNOWN;
+        } else if (frames >= maxFrames) {
+            outcome = Outcome.INCONCLUSIVE;
+        }
+    }
+
+    // Log-likelihood ratio of "same person" for one similarity
+    private float score(float frameSimilarity) {
+        return SLOPE * (frameSimilarity - threshold);
+    }
+
+    private static class Evidence {
+        private float value;
+        private float similaritySum;
+        private int seen;
+
+        Evidence(float value) {
+            this.value = value;
+        }
+
+        float meanSimilarity() {
+            return seen > 0 ? similaritySum / seen : 0f;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code k} highest-scoring rows offered so far, as a fixed-size min-heap over
+ * primitive arrays: the weakest kept row is at the root, so rejecting a row is one
+ * comparison and accepting one is O(log k). Nothing is boxed or allocated per offer.
+ */
+final class TopK {
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    TopK(int k) {
+        this.rows = new int[k];
+        this.scores = new float[k];
+    }
+
+    /**
+     * Score a row must beat to be kept, or negative infinity while fewer than k are held
+     */
+    float floor() {
+        if (size < rows.length) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        return size == 0 ? Float.POSITIVE_INFINITY : scores[0];
+    }
+
+    void offer(int row, float score) {
+        if (size < rows.length) {
+            siftUp(size++, row, score);
+        } else if (size > 0 && score > scores[0]) {
+            siftDown(0, size, row, score);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sort the held rows best first, in place; the heap is emptied.
+     * @return Number of rows now in {@link #row}/{@link #score} order
+     */
+    int sort() {
+        int count = size;
+        // Heap sort on a min-heap leaves the array in descending order
+        for (int end = count - 1; end > 0; end--) {
+            int row = rows[end];
+            float score = scores[end];
+            rows[end] = rows[0];
+            scores[end] = scores[0];
+            siftDown(0, end, row, score);
+        }
+        size = 0;
+        return count;
+    }
+
+    int row(int i) {
+        return rows[i];
+    }
+
+    float score(int i) {
+        return scores[i];
+    }
+
+    /**
+     * Drain the held rows as matches, best first
+     * @param names Name of each row
+     */
+    List<EmbeddingMatrix.Match> toMatches(List<String> names) {
+        int count = sort();
+        List<EmbeddingMatrix.Match> matches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            matches.add(new EmbeddingMatrix.Match(names.get(rows[i]), rows[i], scores[i]));
+        }
+        return matches;
+    }
+
+    private void siftUp(int i, int row, float score) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            rows[i] = rows[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        rows[i] = row;
+        scores[i] = score;
+    }
+
+    // Place (row, score) at i and restore the heap over [0, end)
+    private void siftDown(int i, int end, int row, float score) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= end) {
+                break;
+            }
+            if (child + 1 < end && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (scores[child] >= score) {
+                break;
+            }
+            rows[i] = rows[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        rows[i] = row;
+        scores[i] = score;
+    }
+}
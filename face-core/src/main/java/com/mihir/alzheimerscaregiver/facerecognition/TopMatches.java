@@ -0,0 +1,70 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+/**
+ * The best few identities for one query, best first, with their similarities in a
+ * primitive array. {@link #getMargin()} tells a clear match from a close call between
+ * two people without another search.
+ */
+public final class TopMatches {
+    private static final TopMatches EMPTY = new TopMatches(new String[0], new int[0], new float[0]);
+
+    private final String[] names;
+    private final int[] rows;
+    private final float[] scores;
+
+    TopMatches(String[] names, int[] rows, float[] scores) {
+        this.names = names;
+        this.rows = rows;
+        this.scores = scores;
+    }
+
+    static TopMatches empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    public String getName(int i) {
+        return names[i];
+    }
+
+    public float getSimilarity(int i) {
+        return scores[i];
+    }
+
+    /**
+     * @return Best match, or null if there are none
+     */
+    public EmbeddingMatrix.Match getBest() {
+        return names.length > 0 ? new EmbeddingMatrix.Match(names[0], rows[0], scores[0]) : null;
+    }
+
+    /**
+     * Similarity of the best match minus the runner-up's
+     * @return The margin; infinite with a single match and 0 with none
+     */
+    public float getMargin() {
+        if (names.length < 2) {
+            return names.length == 1 ? Float.POSITIVE_INFINITY : 0f;
+        }
+        return scores[0] - scores[1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(names[i]).append(String.format(" %.3f", scores[i]));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts a face region of a YUV_420_888 camera frame straight into model input:
+ * crops the detector's bounding box, applies the frame rotation, resamples to
+ * {@code size x size} and writes normalized RGB floats into the tensor buffer.
+ *
+ * The planes are read in place through absolute gets, so no Bitmap, JPEG decode
+ * or per-frame array is created. Luma is sampled bilinearly, chroma with nearest
+ * neighbour (it is subsampled 2x anyway). Not thread-safe: sampling tables are reused.
+ */
+public class YuvFaceConverter {
+    private final int size;
+    // Per output column/row source coordinates in the upright frame
+    private final float[] uprightX;
+    private final float[] uprightY;
+
+    public YuvFaceConverter(int size) {
+        this.size = size;
+        this.uprightX = new float[size];
+        this.uprightY = new float[size];
+    }
+
+    /**
+     * Write {@code size * size * 3} floats in [-1, 1] (RGB order) to {@code out} at its position.
+     *
+     * @param yPlane Luma plane
+     * @param yRowStride Luma row stride in bytes
+     * @param uPlane Cb plane
+     * @param vPlane Cr plane
+     * @param uvRowStride Chroma row stride in bytes
+     * @param uvPixelStride Chroma pixel stride in bytes (1 for I420, 2 for NV21/NV12)
+     * @param width Sensor frame width
+     * @param height Sensor frame height
+     * @param rotationDegrees Rotation that makes the frame upright (0, 90, 180, 270)
+     * @param left Face box in upright frame coordinates, as reported by the detector
+     * @return false if the box does not overlap the frame; nothing is written then
+     */
+    public boolean convert(ByteBuffer yPlane, int yRowStride,
+                           ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                           int width, int height, int rotationDegrees,
+                           int left, int top, int right, int bottom,
+                           FloatBuffer out) {
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightWidth = swapped ? height : width;
+        int uprightHeight = swapped ? width : height;
+
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(uprightWidth, right);
+        bottom = Math.min(uprightHeight, bottom);
+        if (right <= left || bottom <= top) {
+            return false;
+        }
+
+        float stepX = (right - left) / (float) size;
+        float stepY = (bottom - top) / (float) size;
+        for (int i = 0; i < size; i++) {
+            uprightX[i] = left + (i + 0.5f) * stepX - 0.5f;
+            uprightY[i] = top + (i + 0.5f) * stepY - 0.5f;
+        }
+
+        for (int oy = 0; oy < size; oy++) {
+            float uy = uprightY[oy];
+            for (int ox = 0; ox < size; ox++) {
+                float ux = uprightX[ox];
+
+                // Map the upright coordinate back onto the sensor frame
+                float sx;
+                float sy;
+                switch (rotationDegrees) {
+                    case 90:
+                        sx = uy;
+                        sy = height - 1 - ux;
+                        break;
+                    case 180:
+                        sx = width - 1 - ux;
+                        sy = height - 1 - uy;
+                        break;
+                    case 270:
+                        sx = width - 1 - uy;
+                        sy = ux;
+                        break;
+                    default:
+                        sx = ux;
+                        sy = uy;
+                        break;
+                }
+                sx = Math.min(Math.max(sx, 0f), width - 1);
+                sy = Math.min(Math.max(sy, 0f), height - 1);
+
+                float luma = sampleLuma(yPlane, yRowStride, width, height, sx, sy);
+                int chromaIndex = ((int) sy >> 1) * uvRowStride + ((int) sx >> 1) * uvPixelStride;
+                float cb = (uPlane.get(chromaIndex) & 0xFF) - 128f;
+                float cr = (vPlane.get(chromaIndex) & 0xFF) - 128f;
+
+                // BT.601 full range, as produced by the camera HAL
+                out.put(normalize(luma + 1.402f * cr));
+                out.put(normalize(luma - 0.344136f * cb - 0.714136f * cr));
+                out.put(normalize(luma + 1.772f * cb));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map a box in upright frame coordinates onto the sensor frame
+     * @param width Sensor frame width
+     * @param height Sensor frame height
+     * @return {left, top, right, bottom} in sensor coordinates, not clamped
+     */
+    public static int[] toSensorRect(int rotationDegrees, int width, int height,
+                                     int left, int top, int right, int bottom) {
+        switch (rotationDegrees) {
+            case 90:
+                return new int[]{top, height - right, bottom, height - left};
+            case 180:
+                return new int[]{width - right, height - bottom, width - left, height - top};
+            case 270:
+                return new int[]{width - bottom, left, width - top, right};
+            default:
+                return new int[]{left, top, right, bottom};
+        }
+    }
+
+    /**
+     * Copy a sensor-frame region into an NV21 array (luma rows, then interleaved V/U), so a
+     * detector can run on part of the frame.
+     * @param x Region left in sensor coordinates; must be even, as must {@code y}, width and height
+     * @param out Array of at least {@code cropWidth * cropHeight * 3 / 2} bytes
+     */
+    public static void cropNv21(ByteBuffer yPlane, int yRowStride,
+                                ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                                int x, int y, int cropWidth, int cropHeight, byte[] out) {
+        ByteBuffer luma = yPlane.duplicate();
+        for (int row = 0; row < cropHeight; row++) {
+            luma.position((y + row) * yRowStride + x);
+            luma.get(out, row * cropWidth, cropWidth);
+        }
+
+        int offset = cropWidth * cropHeight;
+        for (int row = 0; row < cropHeight / 2; row++) {
+            int chromaRow = (y / 2 + row) * uvRowStride + (x / 2) * uvPixelStride;
+            for (int col = 0; col < cropWidth / 2; col++) {
+                int chromaIndex = chromaRow + col * uvPixelStride;
+                out[offset++] = vPlane.get(chromaIndex);
+                out[offset++] = uPlane.get(chromaIndex);
+            }
+        }
+    }
+
+    private static float sampleLuma(ByteBuffer plane, int rowStride, int width, int height, float x, float y) {
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+
+        int row0 = y0 * rowStride;
+        int row1 = y1 * rowStride;
+        float top = (plane.get(row0 + x0) & 0xFF) * (1f - fx) + (plane.get(row0 + x1) & 0xFF) * fx;
+        float bottom = (plane.get(row1 + x0) & 0xFF) * (1f - fx) + (plane.get(row1 + x1) & 0xFF) * fx;
+        return top * (1f - fy) + bottom * fy;
+    }
+
+    // [0, 255] -> [-1, 1], matching FaceNetModel's bitmap preprocessing
+    private static float normalize(float value) {
+        if (value < 0f) {
+            value = 0f;
+        } else if (value > 255f) {
+            value = 255f;
+        }
+        return value / 127.5f - 1.0f;
+    }
+}
@@ -0,0 +1,109 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DetectionRegionPlannerTest {
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 640;
+
+    @Test
+    public void trackedFace_isDetectedInAGrownRegionWithPeriodicFullScans() {
+        DetectionRegionPlanner planner = new DetectionRegionPlanner(5, 0.5f);
+        assertNull("Nothing tracked yet", planner.nextRegion(WIDTH, HEIGHT));
+        int[] ids = planner.update(boxes(new int[]{200, 300, 280, 400}));
+
+        int fullScans = 0;
+        for (int frame = 1; frame <= 10; frame++) {
+            int[] region = planner.nextRegion(WIDTH, HEIGHT);
+            // The face drifts right a few pixels per frame
+            int[] box = {200 + 4 * frame, 300, 280 + 4 * frame, 400};
+            if (region == null) {
+                fullScans++;
+            } else {
+                assertTrue("Region " + Arrays.toString(region) + " misses " + Arrays.toString(box),
+                        region[0] <= box[0] && region[1] <= box[1] && region[2] >= box[2] && region[3] >= box[3]);
+                assertEquals(0, region[0] % 32);
+                assertEquals(0, region[1] % 32);
+            }
+            assertArrayEquals("Track survives region scans", ids, planner.update(boxes(box)));
+        }
+        assertEquals(2, fullScans);
+        assertEquals(3, planner.getFullScanCount());
+        assertEquals(8, planner.getRegionScanCount());
+        assertTrue(planner.getMeanScannedFraction() < 0.5);
+    }
+
+    @Test
+    public void lostTrack_forcesFullScanAndNewFacesGetNewIds() {
+        DetectionRegionPlanner planner = new DetectionRegionPlanner();
+        planner.nextRegion(WIDTH, HEIGHT);
+        int[] first = planner.update(boxes(new int[]{200, 300, 280, 400}, new int[]{300, 320, 380, 420}));
+        assertNotEquals(first[0], first[1]);
+
+        assertNotNull(planner.nextRegion(WIDTH, HEIGHT));
+        // Only one of the two faces is found again
+        int[] second = planner.update(boxes(new int[]{302, 324, 382, 424}));
+        assertEquals(first[1], second[0]);
+        assertNull(planner.nextRegion(WIDTH, HEIGHT));
+
+        int[] third = planner.update(boxes(new int[]{304, 324, 384, 424}, new int[]{60, 500, 140, 600}));
+        assertEquals(first[1], third[0]);
+        assertNotEquals(first[0], third[1]);
+        assertNotEquals(first[1], third[1]);
+
+        // A face filling most of the frame is cheaper to scan in full than to crop
+        planner.reset();
+        planner.nextRegion(WIDTH, HEIGHT);
+        planner.update(boxes(new int[]{40, 60, 440, 580}));
+        assertNull(planner.nextRegion(WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void cropNv21_copiesTheSensorRegionForEveryRotation() {
+        int width = 64;
+        int height = 48;
+        int rowStride = 72;
+        int uvRowStride = 72;
+        byte[] y = new byte[rowStride * height];
+        byte[] uv = new byte[uvRowStride * height / 2];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = (byte) i;
+        }
+        for (int i = 0; i < uv.length; i++) {
+            uv[i] = (byte) (i * 7);
+        }
+        // Semi-planar chroma: U and V interleaved with a pixel stride of 2
+        ByteBuffer u = ByteBuffer.wrap(uv);
+        ByteBuffer v = ByteBuffer.wrap(uv, 1, uv.length - 1).slice();
+
+        int[] sensor = YuvFaceConverter.toSensorRect(90, width, height, 8, 16, 24, 40);
+        assertArrayEquals(new int[]{16, 24, 40, 40}, sensor);
+        int cropWidth = sensor[2] - sensor[0];
+        int cropHeight = sensor[3] - sensor[1];
+        byte[] out = new byte[cropWidth * cropHeight * 3 / 2];
+        YuvFaceConverter.cropNv21(ByteBuffer.wrap(y), rowStride, u, v, uvRowStride, 2,
+                sensor[0], sensor[1], cropWidth, cropHeight, out);
+
+        assertEquals(y[24 * rowStride + 16], out[0]);
+        assertEquals(y[39 * rowStride + 39], out[cropWidth * cropHeight - 1]);
+        int chroma = 12 * uvRowStride + 8 * 2;
+        assertEquals(uv[chroma + 1], out[cropWidth * cropHeight]);
+        assertEquals(uv[chroma], out[cropWidth * cropHeight + 1]);
+
+        for (int rotation : new int[]{0, 180, 270}) {
+            int[] rect = YuvFaceConverter.toSensorRect(rotation, width, height, 8, 16, 24, 40);
+            assertTrue(rect[0] >= 0 && rect[1] >= 0 && rect[2] <= width && rect[3] <= height);
+            assertEquals(16 * 24, (rect[2] - rect[0]) * (rect[3] - rect[1]));
+        }
+    }
+
+    private static List<int[]> boxes(int[]... boxes) {
+        return Arrays.asList(boxes);
+    }
+}
@@ -0,0 +1,123 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.randomVector;
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.withNoise;
+import static org.junit.Assert.*;
+
+/**
+ * Threshold search of {@link EmbeddingMatrix} must give exactly the full-scan answer
+ * while abandoning most rows for faces that are not registered.
+ */
+public class EmbeddingMatrixTest {
+    private static final int DIMENSION = 192;
+    private static final float THRESHOLD = 0.75f;
+
+    @Test
+    public void thresholdSearch_matchesFullScan() {
+        Random random = new Random(21);
+        EmbeddingMatrix matrix = new EmbeddingMatrix();
+        float[][] identities = new float[2000][];
+        for (int i = 0; i < identities.length; i++) {
+            identities[i] = randomVector(random, DIMENSION);
+            matrix.put("person" + i, identities[i]);
+        }
+        // Exercise the row move on removal
+        for (int i = 0; i < identities.length; i += 7) {
+            matrix.remove("person" + i);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            float[] query = i % 2 == 0
+                    ? withNoise(random, identities[random.nextInt(identities.length)], 0.5f)
+                    : randomVector(random, DIMENSION);
+            for (float threshold : new float[]{-1f, 0f, THRESHOLD}) {
+                EmbeddingMatrix.Match full = matrix.findNearest(query);
+                EmbeddingMatrix.Match pruned = matrix.findNearest(query, threshold);
+                if (full.getSimilarity() > threshold + 1e-5f) {
+                    assertNotNull(pruned);
+                    assertEquals(full.getName(), pruned.getName());
+                    assertEquals(full.getSimilarity(), pruned.getSimilarity(), 1e-5f);
+                } else if (full.getSimilarity() <= threshold - 1e-5f) {
+                    assertNull(pruned);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unknownFaces_arePrunedEarly() {
+        Random random = new Random(23);
+        EmbeddingMatrix matrix = new EmbeddingMatrix();
+        for (int i = 0; i < 1000; i++) {
+            matrix.put("person" + i, randomVector(random, DIMENSION));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertNull(matrix.findNearest(randomVector(random, DIMENSION), THRESHOLD));
+        }
+
+        EmbeddingMatrix.PruningStats stats = matrix.getPruningStats();
+        assertEquals(100 * 1000, stats.getRowsVisited());
+        assertTrue("Pruned " + stats.getPruningRate(), stats.getPruningRate() > 0.9f);
+        assertTrue("Skipped " + stats.getSkippedWorkRate(), stats.getSkippedWorkRate() > 0.5f);
+
+        stats.reset();
+        assertEquals(0, stats.getRowsVisited());
+    }
+
+    @Test
+    public void topK_matchesSortedFullScan() {
+        Random random = new Random(29);
+        EmbeddingMatrix matrix = new EmbeddingMatrix();
+        float[][] identities = new float[500][];
+        for (int i = 0; i < identities.length; i++) {
+            identities[i] = randomVector(random, DIMENSION);
+            matrix.put("person" + i, identities[i]);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            float[] query = withNoise(random, identities[random.nextInt(identities.length)], 2f);
+            float[] scores = new float[identities.length];
+            float[] q = query.clone();
+            EmbeddingMatrix.normalize(q, 0, DIMENSION);
+            for (int row = 0; row < identities.length; row++) {
+                scores[row] = SimilarityKernels.dot(q, 0, matrix.getRows(), row * DIMENSION, DIMENSION);
+            }
+            float[] sorted = scores.clone();
+            Arrays.sort(sorted);
+
+            List<EmbeddingMatrix.Match> top = matrix.findTopK(query, 5);
+            assertEquals(5, top.size());
+            for (int j = 0; j < top.size(); j++) {
+                assertEquals(sorted[sorted.length - 1 - j], top.get(j).getSimilarity(), 1e-5f);
+                assertEquals(scores[top.get(j).getRow()], top.get(j).getSimilarity(), 1e-5f);
+            }
+
+            // The threshold only trims the tail of the same ranking
+            float threshold = (sorted[sorted.length - 3] + sorted[sorted.length - 4]) / 2;
+            List<EmbeddingMatrix.Match> above = matrix.findTopK(query, 5, threshold);
+            assertEquals(3, above.size());
+            for (int j = 0; j < above.size(); j++) {
+                assertEquals(top.get(j).getName(), above.get(j).getName());
+            }
+        }
+        assertEquals(0, matrix.findTopK(randomVector(random, DIMENSION), 0).size());
+        assertEquals(500, matrix.findTopK(randomVector(random, DIMENSION), 1000).size());
+    }
+
+    @Test
+    public void thresholdSearch_emptyOrMismatchedQuery() {
+        EmbeddingMatrix matrix = new EmbeddingMatrix();
+        assertNull(matrix.findNearest(new float[DIMENSION], THRESHOLD));
+
+        matrix.put("alice", randomVector(new Random(1), DIMENSION));
+        assertNull(matrix.findNearest(new float[DIMENSION - 1], THRESHOLD));
+        assertNull(matrix.findNearest(new float[DIMENSION], THRESHOLD));
+    }
+}
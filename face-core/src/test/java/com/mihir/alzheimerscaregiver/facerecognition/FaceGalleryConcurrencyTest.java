@@ -0,0 +1,175 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.randomVector;
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.withNoise;
+import static org.junit.Assert.*;
+
+/**
+ * Recognizers keep matching resident faces at a steady rate while another thread
+ * enrolls and deletes visitors on the same {@link FaceGallery}.
+ */
+public class FaceGalleryConcurrencyTest {
+    private static final int DIMENSION = 192;
+    private static final int READERS = 3;
+    private static final long PHASE_MILLIS = 600;
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void matrixGallery_readsDuringWrites() throws Exception {
+        stress(300);
+    }
+
+    @Test
+    public void hnswGallery_readsDuringWrites() throws Exception {
+        stress(1200);
+    }
+
+    @Test
+    public void snapshot_isUnaffectedByLaterWrites() throws Exception {
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), DIMENSION, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        Random random = new Random(5);
+        gallery.put("alice", randomVector(random, DIMENSION));
+
+        GalleryIndex before = gallery.snapshot();
+        gallery.put("bob", randomVector(random, DIMENSION));
+        gallery.remove("alice");
+
+        assertEquals(1, before.size());
+        assertTrue(before.contains("alice"));
+        assertFalse(before.contains("bob"));
+        assertEquals(1, gallery.size());
+        assertTrue(gallery.snapshot().contains("bob"));
+        gallery.close();
+    }
+
+    private void stress(int residents) throws Exception {
+        Random random = new Random(residents);
+        Map<String, float[]> faces = new HashMap<>();
+        List<float[]> identities = new ArrayList<>();
+        for (int i = 0; i < residents; i++) {
+            float[] identity = randomVector(random, DIMENSION);
+            identities.add(identity);
+            faces.put("resident" + i, identity);
+        }
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), DIMENSION, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.importSnapshot(faces);
+        gallery.open();
+
+        double baseline = readThroughput(gallery, identities, null);
+        AtomicReference<Throwable> writerFailure = new AtomicReference<>();
+        double underWrites = readThroughput(gallery, identities, writerFailure);
+        if (writerFailure.get() != null) {
+            throw new AssertionError("Writer failed", writerFailure.get());
+        }
+
+        double ratio = underWrites / baseline;
+        assertTrue(String.format("%s, %d faces: %.1f queries/ms alone, %.1f during writes",
+                gallery.snapshot().getClass().getSimpleName(), residents, baseline, underWrites), ratio > 0.3);
+        for (String name : faces.keySet()) {
+            assertTrue(gallery.snapshot().contains(name));
+        }
+        gallery.close();
+    }
+
+    /**
+     * Runs the readers for one phase, with a writer alongside if {@code writerFailure} is set
+     * @return Resident queries per millisecond across all readers
+     */
+    private double readThroughput(FaceGallery gallery, List<float[]> identities,
+                                  AtomicReference<Throwable> writerFailure) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong queries = new AtomicLong();
+        AtomicLong misses = new AtomicLong();
+        AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int r = 0; r < READERS; r++) {
+            long seed = r;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                    while (running.get()) {
+                        int i = random.nextInt(identities.size());
+                        EmbeddingMatrix.Match match = gallery.findNearest(withNoise(random, identities.get(i), 0.3f), 0.75f);
+                        if (match == null || !match.getName().equals("resident" + i)) {
+                            misses.incrementAndGet();
+                        }
+                        // Name listing and size must also see a consistent version
+                        if ((queries.incrementAndGet() & 63) == 0) {
+                            assertTrue(gallery.getNames().length >= identities.size());
+                            assertTrue(gallery.size() >= identities.size());
+                        }
+                    }
+                } catch (Throwable t) {
+                    readerFailure.compareAndSet(null, t);
+                }
+            }));
+        }
+        if (writerFailure != null) {
+            threads.add(new Thread(() -> {
+                Random random = new Random(99);
+                try {
+                    start.await();
+                    for (int k = 0; running.get(); k++) {
+                        if (k % 10 == 9) {
+                            List<GalleryJournal.Entry> batch = new ArrayList<>();
+                            for (int j = 0; j < 5; j++) {
+                                batch.add(GalleryJournal.Entry.put("batch" + k + "_" + j, randomVector(random, DIMENSION)));
+                            }
+                            gallery.apply(batch);
+                        } else {
+                            gallery.put("visitor" + k, randomVector(random, DIMENSION));
+                        }
+                        if (k >= 4) {
+                            gallery.remove("visitor" + (k - 4));
+                        }
+                        // Enrollment arrives at camera pace, not in a tight loop
+                        Thread.sleep(1);
+                    }
+                } catch (Throwable t) {
+                    writerFailure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        Thread.sleep(PHASE_MILLIS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedMillis = (System.nanoTime() - startNanos) / 1e6;
+
+        if (readerFailure.get() != null) {
+            throw new AssertionError("Reader failed", readerFailure.get());
+        }
+        assertTrue(queries.get() > 0);
+        assertTrue("Missed " + misses.get() + " of " + queries.get(), misses.get() <= queries.get() / 100);
+        return queries.get() / elapsedMillis;
+    }
+}
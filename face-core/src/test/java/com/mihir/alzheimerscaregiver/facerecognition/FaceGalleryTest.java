@@ -0,0 +1,572 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.blend;
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.randomVector;
+import static org.junit.Assert.*;
+
+/**
+ * Enroll, recognize and reload through {@link FacePreprocessor}, {@link FakeEmbeddingBackend}
+ * and {@link FaceGallery}, with no Android or TFLite involved.
+ */
+public class FaceGalleryTest {
+    private static final int INPUT_SIZE = 112;
+    private static final int EMBEDDING_SIZE = 192;
+    private static final int PEOPLE = 50;
+    private static final float THRESHOLD = 0.75f;
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FacePreprocessor preprocessor = new FacePreprocessor(INPUT_SIZE);
+    private final EmbeddingBackend backend = new FakeEmbeddingBackend(INPUT_SIZE, EMBEDDING_SIZE);
+
+    @Test
+    public void enrollAndRecognize_survivesReopen() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(3);
+        int[][] faces = new int[PEOPLE][];
+
+        FaceGallery gallery = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        for (int i = 0; i < PEOPLE; i++) {
+            faces[i] = randomFace(random);
+            gallery.put("person" + i, embed(faces[i]));
+        }
+        gallery.close();
+
+        FaceGallery reopened = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        reopened.open();
+        assertEquals(PEOPLE, reopened.size());
+
+        for (int i = 0; i < PEOPLE; i++) {
+            EmbeddingMatrix.Match match = reopened.findNearest(embed(withNoise(random, faces[i])));
+            assertEquals("person" + i, match.getName());
+            assertTrue(match.getSimilarity() > THRESHOLD);
+        }
+
+        // A face nobody enrolled should not clear the threshold
+        EmbeddingMatrix.Match stranger = reopened.findNearest(embed(randomFace(random)));
+        assertTrue(stranger.getSimilarity() < THRESHOLD);
+        reopened.close();
+    }
+
+    @Test
+    public void batchRemoveAndClear_arePersisted() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(5);
+
+        FaceGallery gallery = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        gallery.apply(Arrays.asList(
+                GalleryJournal.Entry.put("alice", embed(randomFace(random))),
+                GalleryJournal.Entry.put("bob", embed(randomFace(random)))));
+        assertTrue(gallery.remove("alice"));
+        assertFalse(gallery.remove("alice"));
+        gallery.close();
+
+        FaceGallery reopened = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        reopened.open();
+        assertArrayEquals(new String[]{"bob"}, reopened.getNames());
+
+        reopened.apply(Arrays.asList(GalleryJournal.Entry.clear()));
+        assertTrue(reopened.isEmpty());
+        assertNull(reopened.findNearest(embed(randomFace(random))));
+        reopened.close();
+    }
+
+    @Test
+    public void writeBeforeOpen_loadsTheGalleryFirst() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(4);
+        float[] alice = embed(randomFace(random));
+        float[] bob = embed(randomFace(random));
+
+        FaceGallery gallery = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        gallery.put("alice", alice);
+        gallery.close();
+
+        // The registry opens in the background; a write that gets there first must not
+        // journal against the empty gallery, and the late open must not reload on top of it
+        FaceGallery loading = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        assertTrue(loading.isEmpty());
+        loading.put("bob", bob);
+        loading.open();
+        assertArrayEquals(new String[]{"alice", "bob"}, sorted(loading.getNames()));
+        loading.close();
+
+        FaceGallery reopened = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        reopened.open();
+        assertArrayEquals(new String[]{"alice", "bob"}, sorted(reopened.getNames()));
+        assertEquals("alice", reopened.findNearest(alice).getName());
+        reopened.close();
+    }
+
+    @Test
+    public void wrongSizedEmbedding_isRejectedBeforeJournaling() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(8);
+        float[] alice = embed(randomFace(random));
+        float[] shortEmbedding = Arrays.copyOf(alice, EMBEDDING_SIZE - 1);
+
+        FaceGallery gallery = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        try {
+            gallery.put("bob", shortEmbedding);
+            fail("Short embedding was registered");
+        } catch (IllegalArgumentException expected) {
+            // Rejected
+        }
+        try {
+            gallery.enroll("bob", Arrays.asList(alice, shortEmbedding));
+            fail("Short embedding was enrolled");
+        } catch (IllegalArgumentException expected) {
+            // The whole burst is rejected
+        }
+        try {
+            gallery.apply(Arrays.asList(GalleryJournal.Entry.put("alice", alice),
+                    GalleryJournal.Entry.put("bob", shortEmbedding)));
+            fail("Short embedding was applied");
+        } catch (IllegalArgumentException expected) {
+            // The whole batch is rejected
+        }
+        assertTrue(gallery.isEmpty());
+
+        // The first person enrolled into an empty gallery must not set a new dimension
+        gallery.put("alice", alice);
+        try {
+            gallery.enroll("alice", shortEmbedding);
+            fail("Short embedding was enrolled");
+        } catch (IllegalArgumentException expected) {
+            // Rejected
+        }
+        gallery.close();
+
+        FaceGallery reopened = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        reopened.open();
+        assertArrayEquals(new String[]{"alice"}, reopened.getNames());
+        assertEquals(1, reopened.getProfile("alice").getExemplarCount());
+        reopened.close();
+    }
+
+    @Test
+    public void failedRemove_leavesThePersonRegistered() throws Exception {
+        Random random = new Random(6);
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE,
+                FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        float[] alice = embed(randomFace(random));
+        gallery.put("alice", alice);
+
+        // A closed journal cannot record the deletion
+        gallery.close();
+        try {
+            gallery.remove("alice");
+            fail("Deletion was not journaled");
+        } catch (IOException expected) {
+            // Reported to the caller
+        }
+        assertTrue(gallery.snapshot().contains("alice"));
+        assertEquals("alice", gallery.findNearest(alice).getName());
+    }
+
+    @Test
+    public void multiSampleEnrollment_rejectsBadFrameAndSurvivesReopen() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(7);
+        float[] alice = randomVector(random, EMBEDDING_SIZE);
+
+        FaceGallery gallery = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        List<float[]> burst = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            burst.add(blend(random, alice, 0.5f));
+        }
+        // Somebody else walked into the frame
+        burst.add(randomVector(random, EMBEDDING_SIZE));
+        burst.add(blend(random, alice, 0.5f));
+        assertEquals(4, gallery.enroll("alice", burst));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(gallery.enroll("alice", blend(random, alice, 0.5f)));
+        }
+        assertEquals(1, gallery.size());
+        IdentityProfile enrolled = gallery.getProfile("alice");
+        assertEquals(IdentityProfile.MAX_EXEMPLARS, enrolled.getExemplarCount());
+        gallery.put("bob", randomVector(random, EMBEDDING_SIZE));
+        gallery.close();
+
+        FaceGallery reopened = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        reopened.open();
+        assertEquals(2, reopened.size());
+        IdentityProfile restored = reopened.getProfile("alice");
+        assertEquals(IdentityProfile.MAX_EXEMPLARS, restored.getExemplarCount());
+        assertArrayEquals(enrolled.getCentroid(), restored.getCentroid(), 1e-6f);
+        assertEquals("alice", reopened.findNearest(blend(random, alice, 0.5f), THRESHOLD - 0.2f).getName());
+
+        // A plain put starts the person over with a single sample
+        reopened.put("alice", alice);
+        reopened.close();
+        FaceGallery reset = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        reset.open();
+        assertEquals(1, reset.getProfile("alice").getExemplarCount());
+        assertArrayEquals(new String[]{"alice", "bob"}, sorted(reset.getNames()));
+        reset.close();
+    }
+
+    @Test
+    public void compressedGallery_keepsFullPrecisionSamplesOnDisk() throws Exception {
+        Random random = new Random(12);
+        File dir = folder.newFolder();
+        float[] alice = randomVector(random, EMBEDDING_SIZE);
+        List<float[]> frames = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            frames.add(blend(random, alice, 0.3f));
+        }
+        FaceGallery gallery = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.INT8, DIRECT);
+        gallery.open();
+        assertEquals(3, gallery.enroll("alice", frames));
+        assertNull(gallery.getProfile("bob"));
+        gallery.close();
+
+        FaceGallery reopened = new FaceGallery(dir, EMBEDDING_SIZE, FaceGallery.CompressionMode.INT8, DIRECT);
+        reopened.open();
+        assertTrue(reopened.snapshot() instanceof Int8GalleryIndex);
+        IdentityProfile restored = reopened.getProfile("alice");
+        assertEquals(3, restored.getExemplarCount());
+        for (int slot = 0; slot < 3; slot++) {
+            assertArrayEquals(normalized(frames.get(slot)), restored.getExemplar(slot), 1e-6f);
+        }
+
+        // Enrolling again builds on the exact samples, not their int8 copies
+        float[] more = blend(random, alice, 0.3f);
+        assertTrue(reopened.enroll("alice", more));
+        IdentityProfile grown = reopened.getProfile("alice");
+        assertEquals(4, grown.getExemplarCount());
+        assertArrayEquals(normalized(frames.get(0)), grown.getExemplar(0), 1e-6f);
+        assertArrayEquals(normalized(more), grown.getExemplar(3), 1e-6f);
+        reopened.close();
+    }
+
+    @Test
+    public void removedOrReplacedPerson_startsOverOnTheNextEnrollment() throws Exception {
+        Random random = new Random(13);
+        float[] alice = randomVector(random, EMBEDDING_SIZE);
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE,
+                FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        List<float[]> frames = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            frames.add(blend(random, alice, 0.3f));
+        }
+        assertEquals(3, gallery.enroll("alice", frames));
+        assertTrue(gallery.remove("alice"));
+        assertTrue(gallery.enroll("alice", alice));
+        assertEquals(1, gallery.getProfile("alice").getExemplarCount());
+
+        assertEquals(3, gallery.enroll("alice", frames));
+        List<GalleryJournal.Entry> batch = new ArrayList<>();
+        batch.add(GalleryJournal.Entry.put("alice", alice));
+        gallery.apply(batch);
+        assertTrue(gallery.enroll("alice", blend(random, alice, 0.3f)));
+        assertEquals(2, gallery.getProfile("alice").getExemplarCount());
+        gallery.close();
+    }
+
+    @Test
+    public void exemplars_recognizePosesTheCentroidAveragesAway() throws Exception {
+        Random random = new Random(13);
+        int people = 40;
+        int poses = 4;
+        float[][][] poseVectors = new float[people][poses][];
+        for (int p = 0; p < people; p++) {
+            float[] identity = randomVector(random, EMBEDDING_SIZE);
+            for (int pose = 0; pose < poses; pose++) {
+                poseVectors[p][pose] = blend(random, identity, 1.0f);
+            }
+        }
+
+        FaceGallery single = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        FaceGallery multi = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        single.open();
+        multi.open();
+        for (int p = 0; p < people; p++) {
+            single.put("person" + p, poseVectors[p][0]);
+            assertEquals(poses, multi.enroll("person" + p, Arrays.asList(poseVectors[p])));
+        }
+
+        int singleHits = 0;
+        int multiHits = 0;
+        int queries = 400;
+        for (int i = 0; i < queries; i++) {
+            int p = random.nextInt(people);
+            float[] query = blend(random, poseVectors[p][random.nextInt(poses)], 0.3f);
+            EmbeddingMatrix.Match singleMatch = single.findNearest(query, THRESHOLD);
+            EmbeddingMatrix.Match multiMatch = multi.findNearest(query, THRESHOLD);
+            singleHits += singleMatch != null && singleMatch.getName().equals("person" + p) ? 1 : 0;
+            multiHits += multiMatch != null && multiMatch.getName().equals("person" + p) ? 1 : 0;
+        }
+        assertTrue(multiHits + " hits with " + poses + " samples, " + singleHits + " with one",
+                multiHits > singleHits);
+        assertTrue("Recall " + multiHits / (float) queries, multiHits > queries * 0.9);
+        single.close();
+        multi.close();
+    }
+
+    @Test
+    public void topK_ranksPeopleAndFlagsCloseCalls() throws Exception {
+        Random random = new Random(17);
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        float[] twin = randomVector(random, EMBEDDING_SIZE);
+        gallery.put("twinA", blend(random, twin, 0.05f));
+        gallery.put("twinB", blend(random, twin, 0.05f));
+        float[] carol = randomVector(random, EMBEDDING_SIZE);
+        gallery.put("carol", carol);
+        for (int i = 0; i < 100; i++) {
+            gallery.put("person" + i, randomVector(random, EMBEDDING_SIZE));
+        }
+
+        TopMatches twins = gallery.findTopK(twin, 5);
+        assertEquals(5, twins.size());
+        assertTrue(twins.getName(0).startsWith("twin") && twins.getName(1).startsWith("twin"));
+        for (int i = 1; i < twins.size(); i++) {
+            assertTrue(twins.getSimilarity(i - 1) >= twins.getSimilarity(i));
+        }
+        assertTrue(twins.getMargin() < 0.05f);
+
+        TopMatches clear = gallery.findTopK(blend(random, carol, 0.2f), 3, THRESHOLD - 0.05f);
+        assertEquals(1, clear.size());
+        assertEquals("carol", clear.getBest().getName());
+        assertEquals(Float.POSITIVE_INFINITY, clear.getMargin(), 0f);
+
+        assertTrue(gallery.findTopK(randomVector(random, EMBEDDING_SIZE), 3, THRESHOLD).isEmpty());
+        assertEquals(0f, gallery.findTopK(randomVector(random, EMBEDDING_SIZE), 3, THRESHOLD).getMargin(), 0f);
+        gallery.close();
+    }
+
+    @Test
+    public void outlyingExemplar_isFoundEvenWhenItsCentroidIsFar() throws Exception {
+        Random random = new Random(19);
+        float threshold = 0.85f;
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        for (int i = 0; i < 30; i++) {
+            gallery.put("person" + i, randomVector(random, EMBEDDING_SIZE));
+        }
+
+        // Many frames of one pose, then a single frame of a very different one
+        float[] frontal = randomVector(random, EMBEDDING_SIZE);
+        List<float[]> frontalFrames = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            frontalFrames.add(blend(random, frontal, 0.1f));
+        }
+        assertEquals(20, gallery.enroll("alice", frontalFrames));
+        float[] profile = mix(frontal, randomVector(random, EMBEDDING_SIZE), 0.6f);
+        assertTrue(gallery.enroll("alice", profile));
+
+        float[] query = blend(random, profile, 0.1f);
+        float centroidSimilarity = SimilarityKernels.dot(query, gallery.getProfile("alice").getCentroid());
+        assertTrue("Centroid alone scores " + centroidSimilarity, centroidSimilarity < threshold - 0.15f);
+
+        TopMatches matches = gallery.findTopK(query, 3, threshold);
+        assertEquals(1, matches.size());
+        assertEquals("alice", matches.getName(0));
+        assertTrue(matches.getSimilarity(0) > threshold);
+        assertEquals("alice", gallery.findNearest(query, threshold).getName());
+        assertEquals("alice", gallery.findTopK(query, 1).getName(0));
+        gallery.close();
+    }
+
+    @Test
+    public void centroidFirstSearch_matchesScoringEveryExemplar() throws Exception {
+        Random random = new Random(21);
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        for (int i = 0; i < 200; i++) {
+            // Up to six samples per person, some spread far enough to pass only as early samples
+            float[] identity = randomVector(random, EMBEDDING_SIZE);
+            List<float[]> samples = new ArrayList<>();
+            int count = 1 + random.nextInt(6);
+            for (int j = 0; j < count; j++) {
+                samples.add(blend(random, identity, 0.2f + random.nextFloat()));
+            }
+            gallery.enroll("person" + i, samples);
+        }
+
+        String[] names = gallery.getNames();
+        List<IdentityProfile> profiles = new ArrayList<>();
+        for (String name : names) {
+            profiles.add(gallery.getProfile(name));
+        }
+        for (int trial = 0; trial < 200; trial++) {
+            IdentityProfile target = profiles.get(random.nextInt(profiles.size()));
+            float[] query = blend(random, target.getExemplar(random.nextInt(target.getExemplarCount())), 0.5f);
+
+            float[] expected = new float[names.length];
+            for (int i = 0; i < names.length; i++) {
+                IdentityProfile profile = profiles.get(i);
+                expected[i] = SimilarityKernels.dot(query, profile.getCentroid());
+                for (int slot = 0; profile.getExemplarCount() > 1 && slot < profile.getExemplarCount(); slot++) {
+                    expected[i] = Math.max(expected[i], SimilarityKernels.dot(query, profile.getExemplar(slot)));
+                }
+            }
+            float[] sorted = expected.clone();
+            Arrays.sort(sorted);
+
+            TopMatches top = gallery.findTopK(query, 3);
+            assertEquals(3, top.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals("Rank " + i + " of trial " + trial, sorted[sorted.length - 1 - i], top.getSimilarity(i), 1e-5f);
+                assertEquals(expected[Arrays.asList(names).indexOf(top.getName(i))], top.getSimilarity(i), 1e-5f);
+            }
+
+            float threshold = sorted[sorted.length - 2] - 0.01f;
+            TopMatches above = gallery.findTopK(query, 5, threshold);
+            int count = 0;
+            for (float score : expected) {
+                if (score > threshold) {
+                    count++;
+                }
+            }
+            assertEquals("Trial " + trial, Math.min(5, count), above.size());
+        }
+        gallery.close();
+    }
+
+    @Test
+    public void exemplarBound_holdsForEveryAngle() {
+        Random random = new Random(22);
+        for (int trial = 0; trial < 1000; trial++) {
+            float[] centroid = randomVector(random, EMBEDDING_SIZE);
+            float[] exemplar = blend(random, centroid, 3 * random.nextFloat());
+            float[] query = blend(random, random.nextBoolean() ? exemplar : centroid, 3 * random.nextFloat());
+            float spread = SimilarityKernels.dot(exemplar, centroid);
+            float centroidSimilarity = SimilarityKernels.dot(query, centroid);
+            float exemplarSimilarity = SimilarityKernels.dot(query, exemplar);
+            assertTrue("Trial " + trial, exemplarSimilarity <= FaceGallery.upperBound(centroidSimilarity, spread) + 1e-5f);
+
+            // Any exemplar that beats a floor has its centroid above the cutoff
+            float floor = exemplarSimilarity - 0.01f;
+            assertTrue("Trial " + trial, centroidSimilarity > FaceGallery.centroidCutoff(floor, spread));
+        }
+    }
+
+    @Test
+    public void growingGallery_switchesToHnswWithoutReopening() throws Exception {
+        Random random = new Random(23);
+        FaceGallery gallery = new FaceGallery(folder.newFolder(), EMBEDDING_SIZE, FaceGallery.CompressionMode.NONE, DIRECT);
+        gallery.open();
+        // Exemplars do not count toward the size thresholds, only people do
+        List<float[]> samples = new ArrayList<>();
+        for (int i = 0; i < IdentityProfile.MAX_EXEMPLARS; i++) {
+            samples.add(randomVector(random, EMBEDDING_SIZE));
+        }
+        List<GalleryJournal.Entry> batch = new ArrayList<>();
+        for (int i = 0; i < 998; i++) {
+            batch.add(GalleryJournal.Entry.put("person" + i, randomVector(random, EMBEDDING_SIZE)));
+        }
+        gallery.apply(batch);
+        gallery.enroll("alice", samples);
+        assertTrue(gallery.snapshot() instanceof EmbeddingMatrix);
+
+        float[] bob = randomVector(random, EMBEDDING_SIZE);
+        gallery.put("bob", bob);
+        assertTrue(gallery.snapshot() instanceof HnswIndex);
+        assertEquals(1000, gallery.snapshot().size());
+        assertEquals("bob", gallery.findNearest(bob).getName());
+        assertEquals("alice", gallery.findNearest(samples.get(2)).getName());
+        gallery.close();
+    }
+
+    @Test
+    public void fakeBackend_isDeterministicAndBatched() {
+        Random random = new Random(9);
+        float[] first = preprocess(randomFace(random));
+        float[] second = preprocess(randomFace(random));
+
+        List<float[]> inputs = new ArrayList<>();
+        inputs.add(first);
+        inputs.add(second);
+        List<float[]> batch = backend.embed(inputs);
+
+        assertEquals(2, batch.size());
+        assertArrayEquals(embed(first), batch.get(0), 0f);
+        assertArrayEquals(embed(second), batch.get(1), 0f);
+        assertEquals(1f, SimilarityKernels.cosine(batch.get(0), batch.get(0)), 1e-5f);
+    }
+
+    private float[] embed(int[] face) {
+        return embed(preprocess(face));
+    }
+
+    private float[] embed(float[] input) {
+        List<float[]> inputs = new ArrayList<>();
+        inputs.add(input);
+        return backend.embed(inputs).get(0);
+    }
+
+    private float[] preprocess(int[] face) {
+        float[] input = new float[INPUT_SIZE * INPUT_SIZE * 3];
+        preprocessor.preprocess(face, INPUT_SIZE, INPUT_SIZE, FloatBuffer.wrap(input));
+        return input;
+    }
+
+    // Unit vector with cosine about `weight` to `a`, the rest towards `b`
+    private static float[] mix(float[] a, float[] b, float weight) {
+        float other = (float) Math.sqrt(1 - weight * weight);
+        float[] vector = new float[EMBEDDING_SIZE];
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            vector[i] = weight * a[i] + other * b[i];
+        }
+        EmbeddingMatrix.normalize(vector, 0, EMBEDDING_SIZE);
+        return vector;
+    }
+
+    private static float[] normalized(float[] embedding) {
+        float[] copy = Arrays.copyOf(embedding, embedding.length);
+        EmbeddingMatrix.normalize(copy, 0, copy.length);
+        return copy;
+    }
+
+    private static String[] sorted(String[] names) {
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static int[] randomFace(Random random) {
+        int[] argb = new int[INPUT_SIZE * INPUT_SIZE];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return argb;
+    }
+
+    // Same face in a new frame: every channel shifted by a little sensor noise
+    private static int[] withNoise(Random random, int[] face) {
+        int[] noisy = new int[face.length];
+        for (int i = 0; i < face.length; i++) {
+            int pixel = 0xFF000000;
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int channel = (face[i] >> shift) & 0xFF;
+                channel = Math.max(0, Math.min(255, channel + random.nextInt(41) - 20));
+                pixel |= channel << shift;
+            }
+            noisy[i] = pixel;
+        }
+        return noisy;
+    }
+}
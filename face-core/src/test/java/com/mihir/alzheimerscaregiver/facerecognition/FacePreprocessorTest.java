@@ -0,0 +1,84 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FacePreprocessor} against a straightforward per-pixel reference.
+ */
+public class FacePreprocessorTest {
+    private static final int SIZE = 112;
+
+    @Test
+    public void sameSize_matchesPerPixelNormalization() {
+        int[] pixels = new int[SIZE * SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | (i * 7919 & 0xFFFFFF);
+        }
+
+        FloatBuffer out = FloatBuffer.allocate(SIZE * SIZE * 3);
+        new FacePreprocessor(SIZE).preprocess(pixels, SIZE, SIZE, out);
+        assertEquals(SIZE * SIZE * 3, out.position());
+
+        out.rewind();
+        for (int pixel : pixels) {
+            assertEquals(((pixel >> 16) & 0xFF) / 127.5f - 1.0f, out.get(), 1e-6f);
+            assertEquals(((pixel >> 8) & 0xFF) / 127.5f - 1.0f, out.get(), 1e-6f);
+            assertEquals((pixel & 0xFF) / 127.5f - 1.0f, out.get(), 1e-6f);
+        }
+    }
+
+    @Test
+    public void resize_interpolatesBetweenSourcePixels() {
+        // Horizontal red ramp: every output value must lie inside the source range
+        // and rise from left to right
+        int width = 300;
+        int height = 200;
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = 0xFF000000 | ((x * 255 / (width - 1)) << 16);
+            }
+        }
+
+        FloatBuffer out = FloatBuffer.allocate(SIZE * SIZE * 3);
+        new FacePreprocessor(SIZE).preprocess(pixels, width, height, out);
+
+        for (int y = 0; y < SIZE; y++) {
+            float previous = -1.0f;
+            for (int x = 0; x < SIZE; x++) {
+                int f = (y * SIZE + x) * 3;
+                float red = out.get(f);
+                assertTrue(red >= previous);
+                assertTrue(red <= 1.0f);
+                assertEquals(-1.0f, out.get(f + 1), 1e-6f);
+                assertEquals(-1.0f, out.get(f + 2), 1e-6f);
+                previous = red;
+            }
+        }
+    }
+
+    @Test
+    public void reusedAcrossSizes_writesConsecutiveFaces() {
+        FacePreprocessor preprocessor = new FacePreprocessor(SIZE);
+        FloatBuffer out = FloatBuffer.allocate(2 * SIZE * SIZE * 3);
+
+        int[] large = preprocessor.pixelBuffer(400 * 400);
+        Arrays.fill(large, 0, 400 * 400, 0xFFFFFFFF);
+        preprocessor.preprocess(large, 400, 400, out);
+
+        int[] small = preprocessor.pixelBuffer(50 * 50);
+        assertSame(large, small);
+        Arrays.fill(small, 0, 50 * 50, 0xFF000000);
+        preprocessor.preprocess(small, 50, 50, out);
+
+        assertEquals(1.0f, out.get(0), 1e-6f);
+        assertEquals(1.0f, out.get(SIZE * SIZE * 3 - 1), 1e-6f);
+        assertEquals(-1.0f, out.get(SIZE * SIZE * 3), 1e-6f);
+        assertEquals(-1.0f, out.get(2 * SIZE * SIZE * 3 - 1), 1e-6f);
+    }
+}
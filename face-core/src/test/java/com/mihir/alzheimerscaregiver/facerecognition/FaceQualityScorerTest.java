@@ -0,0 +1,96 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FaceQualityScorerTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    // Padded like camera planes
+    private static final int ROW_STRIDE = 336;
+
+    @Test
+    public void blurredCrop_scoresBelowSharpCrop() {
+        byte[] sharp = texturedLuma(new Random(1));
+        byte[] blurred = boxBlur(boxBlur(sharp));
+        FaceQualityScorer scorer = new FaceQualityScorer();
+
+        float sharpScore = scorer.score(ByteBuffer.wrap(sharp), ROW_STRIDE, WIDTH, HEIGHT, 0,
+                100, 60, 220, 180, Float.NaN, Float.NaN, Float.NaN);
+        float blurredScore = scorer.score(ByteBuffer.wrap(blurred), ROW_STRIDE, WIDTH, HEIGHT, 0,
+                100, 60, 220, 180, Float.NaN, Float.NaN, Float.NaN);
+        assertTrue(scorer.isUsable(sharpScore));
+        assertFalse("Blurred score " + blurredScore, scorer.isUsable(blurredScore));
+
+        float flat = FaceQualityScorer.laplacianVariance(ByteBuffer.wrap(new byte[ROW_STRIDE * HEIGHT]),
+                ROW_STRIDE, WIDTH, HEIGHT, 0, 100, 60, 220, 180);
+        assertEquals(0f, flat, 0f);
+    }
+
+    @Test
+    public void smallOrTurnedFaces_failWithoutReadingPixels() {
+        FaceQualityScorer scorer = new FaceQualityScorer();
+        // An empty buffer would throw if the Laplacian were computed
+        ByteBuffer empty = ByteBuffer.allocate(0);
+
+        assertFalse(scorer.isUsable(scorer.score(empty, ROW_STRIDE, WIDTH, HEIGHT, 0,
+                10, 10, 40, 40, Float.NaN, Float.NaN, Float.NaN)));
+        assertFalse(scorer.isUsable(scorer.score(empty, ROW_STRIDE, WIDTH, HEIGHT, 0,
+                100, 60, 220, 180, 0f, 50f, 0f)));
+
+        assertEquals(1f, FaceQualityScorer.poseScore(Float.NaN, Float.NaN, Float.NaN), 0f);
+        assertEquals(1f, FaceQualityScorer.poseScore(5f, -10f, 15f), 0f);
+        assertEquals(0.5f, FaceQualityScorer.poseScore(0f, -30f, Float.NaN), 1e-6f);
+        assertEquals(1f, FaceQualityScorer.sizeScore(200, 112), 0f);
+        assertEquals(0f, FaceQualityScorer.sizeScore(200, 40), 0f);
+    }
+
+    @Test
+    public void rotatedFrame_measuresTheSameSensorRegion() {
+        ByteBuffer luma = ByteBuffer.wrap(texturedLuma(new Random(2)));
+        // Sensor region x in [100, 220), y in [60, 180)
+        float upright = FaceQualityScorer.laplacianVariance(luma, ROW_STRIDE, WIDTH, HEIGHT, 0, 100, 60, 220, 180);
+        float quarter = FaceQualityScorer.laplacianVariance(luma, ROW_STRIDE, WIDTH, HEIGHT, 90,
+                HEIGHT - 180, 100, HEIGHT - 60, 220);
+        float half = FaceQualityScorer.laplacianVariance(luma, ROW_STRIDE, WIDTH, HEIGHT, 180,
+                WIDTH - 220, HEIGHT - 180, WIDTH - 100, HEIGHT - 60);
+        float threeQuarter = FaceQualityScorer.laplacianVariance(luma, ROW_STRIDE, WIDTH, HEIGHT, 270,
+                60, WIDTH - 220, 180, WIDTH - 100);
+        assertTrue(upright > 0f);
+        assertEquals(upright, quarter, 1e-3f);
+        assertEquals(upright, half, 1e-3f);
+        assertEquals(upright, threeQuarter, 1e-3f);
+    }
+
+    // Smooth gradient with fine texture, roughly like skin in focus
+    private static byte[] texturedLuma(Random random) {
+        byte[] luma = new byte[ROW_STRIDE * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = 60 + x / 4 + y / 4 + random.nextInt(40);
+                luma[y * ROW_STRIDE + x] = (byte) Math.min(255, value);
+            }
+        }
+        return luma;
+    }
+
+    private static byte[] boxBlur(byte[] luma) {
+        byte[] out = luma.clone();
+        for (int y = 2; y < HEIGHT - 2; y++) {
+            for (int x = 2; x < WIDTH - 2; x++) {
+                int sum = 0;
+                for (int dy = -2; dy <= 2; dy++) {
+                    for (int dx = -2; dx <= 2; dx++) {
+                        sum += luma[(y + dy) * ROW_STRIDE + x + dx] & 0xFF;
+                    }
+                }
+                out[y * ROW_STRIDE + x] = (byte) (sum / 25);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,72 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FaceTrackCacheTest {
+    private static final float[] EMBEDDING = {1f, 0f, 0f};
+
+    @Test
+    public void cachedDecision_expiresAfterTheTtl() {
+        FaceTrackCache<String> cache = new FaceTrackCache<>();
+        cache.put(1, 100, 100, 200, 200, EMBEDDING, "alice", 1000);
+
+        assertEquals("alice", cache.get(1, 100, 100, 200, 200, 1000 + FaceTrackCache.DEFAULT_TTL_MS));
+        assertNull(cache.get(1, 100, 100, 200, 200, 1001 + FaceTrackCache.DEFAULT_TTL_MS));
+        assertNull("Unknown track", cache.get(2, 100, 100, 200, 200, 1000));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Expired decisions stay until replaced or evicted
+        assertSame(EMBEDDING, cache.getEmbedding(1));
+        cache.put(1, 100, 100, 200, 200, EMBEDDING, "bob", 5000);
+        assertEquals("bob", cache.get(1, 100, 100, 200, 200, 5000));
+    }
+
+    @Test
+    public void shiftBeyondAFifthOfTheBox_forcesAReembed() {
+        FaceTrackCache<String> cache = new FaceTrackCache<>();
+        cache.put(1, 100, 100, 200, 200, EMBEDDING, "alice", 0);
+
+        // The box is 100 pixels wide and tall, so up to 20 pixels of drift is the same face
+        assertEquals("alice", cache.get(1, 120, 100, 220, 200, 10));
+        assertEquals("alice", cache.get(1, 100, 80, 200, 180, 10));
+        assertEquals("alice", cache.get(1, 80, 120, 180, 220, 10));
+        assertNull(cache.get(1, 121, 100, 221, 200, 10));
+        assertNull(cache.get(1, 100, 79, 200, 179, 10));
+    }
+
+    @Test
+    public void resizeBeyondAQuarter_forcesAReembed() {
+        FaceTrackCache<String> cache = new FaceTrackCache<>();
+        cache.put(1, 100, 100, 200, 200, EMBEDDING, "alice", 0);
+
+        // Grown or shrunk about the same center
+        assertEquals("alice", cache.get(1, 88, 100, 212, 200, 10));
+        assertEquals("alice", cache.get(1, 100, 113, 200, 188, 10));
+        assertNull(cache.get(1, 87, 100, 213, 200, 10));
+        assertNull(cache.get(1, 100, 114, 200, 186, 10));
+    }
+
+    @Test
+    public void tracksTheDetectorDropped_areEvicted() {
+        FaceTrackCache<String> cache = new FaceTrackCache<>();
+        for (int id = 1; id <= 4; id++) {
+            cache.put(id, 0, 0, 10, 10, EMBEDDING, "person" + id, 0);
+        }
+
+        assertEquals(2, cache.retainAll(Arrays.asList(2, 4, 9)));
+        assertEquals(2, cache.size());
+        assertNull(cache.getEmbedding(1));
+        assertNull(cache.get(3, 0, 0, 10, 10, 0));
+        assertEquals("person2", cache.get(2, 0, 0, 10, 10, 0));
+        assertEquals("person4", cache.get(4, 0, 0, 10, 10, 0));
+
+        assertEquals(2, cache.retainAll(Collections.<Integer>emptyList()));
+        assertEquals(0, cache.size());
+    }
+}
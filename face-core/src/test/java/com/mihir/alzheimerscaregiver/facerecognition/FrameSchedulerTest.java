@@ -0,0 +1,102 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchedulerTest {
+    // A 100 fps camera and no frame rate cap, so only the CPU budget spaces frames
+    private static final long FRAME_NANOS = 10_000_000L;
+    private static final float NO_FPS_CAP = 1000f;
+    private static final float BUDGET = 0.5f;
+
+    @Test
+    public void latencies_areExponentiallySmoothed() {
+        FrameScheduler scheduler = new FrameScheduler(NO_FPS_CAP, BUDGET);
+        assertEquals(0f, scheduler.getDetectLatencyMs(), 0f);
+
+        // The first sample seeds the average, later ones move it a fifth of the way
+        scheduler.recordDetection(10_000_000L);
+        assertEquals(10f, scheduler.getDetectLatencyMs(), 1e-4f);
+        scheduler.recordDetection(20_000_000L);
+        assertEquals(12f, scheduler.getDetectLatencyMs(), 1e-4f);
+        scheduler.recordDetection(12_000_000L);
+        assertEquals(12f, scheduler.getDetectLatencyMs(), 1e-4f);
+
+        scheduler.recordEmbedding(30_000_000L);
+        scheduler.recordEmbedding(40_000_000L);
+        assertEquals(32f, scheduler.getEmbedLatencyMs(), 1e-4f);
+    }
+
+    @Test
+    public void detectionAtTheBudget_runsEveryFrame_andJustOverIt_skipsEveryOther() {
+        FrameScheduler scheduler = new FrameScheduler(NO_FPS_CAP, BUDGET);
+        long time = warmUp(scheduler);
+
+        // 5 ms of detection per 10 ms frame is exactly half the wall time
+        scheduler.recordDetection(5_000_000L);
+        for (int i = 0; i < 5; i++) {
+            assertNotEquals(FrameScheduler.Action.SKIP, scheduler.onFrame(time += FRAME_NANOS));
+        }
+        assertEquals(0, scheduler.getSkipInterval());
+
+        // 8 ms needs 16 ms of wall time per processed frame, so every other frame is dropped
+        FrameScheduler slower = new FrameScheduler(NO_FPS_CAP, BUDGET);
+        time = warmUp(slower);
+        slower.recordDetection(8_000_000L);
+        assertNotEquals(FrameScheduler.Action.SKIP, slower.onFrame(time += FRAME_NANOS));
+        assertEquals(1, slower.getSkipInterval());
+        assertEquals(FrameScheduler.Action.SKIP, slower.onFrame(time += FRAME_NANOS));
+        assertNotEquals(FrameScheduler.Action.SKIP, slower.onFrame(time += FRAME_NANOS));
+        assertEquals(FrameScheduler.Action.SKIP, slower.onFrame(time += FRAME_NANOS));
+    }
+
+    @Test
+    public void embedding_isSpreadOverProcessedFramesByTheLeftoverBudget() {
+        FrameScheduler scheduler = new FrameScheduler(NO_FPS_CAP, BUDGET);
+        long time = warmUp(scheduler);
+
+        // 2 ms detection leaves 3 ms of each 10 ms frame; 6 ms of embedding fits every other frame
+        scheduler.recordDetection(2_000_000L);
+        scheduler.recordEmbedding(6_000_000L);
+        assertEquals(FrameScheduler.Action.FULL, scheduler.onFrame(time += FRAME_NANOS));
+        assertEquals(2, scheduler.getEmbedInterval());
+        assertEquals(FrameScheduler.Action.DETECT_ONLY, scheduler.onFrame(time += FRAME_NANOS));
+        assertEquals(FrameScheduler.Action.FULL, scheduler.onFrame(time += FRAME_NANOS));
+    }
+
+    @Test
+    public void slowFrame_backsOffThenRecovers() {
+        FrameScheduler scheduler = new FrameScheduler(NO_FPS_CAP, BUDGET);
+        long time = warmUp(scheduler);
+        scheduler.recordDetection(5_000_000L);
+        scheduler.onFrame(time += FRAME_NANOS);
+        assertEquals(0, scheduler.getSkipInterval());
+
+        // One 200 ms hiccup, e.g. a GC pause or thermal throttling
+        scheduler.recordDetection(200_000_000L);
+        scheduler.onFrame(time += FRAME_NANOS);
+        int backedOff = scheduler.getSkipInterval();
+        assertTrue("Skip interval " + backedOff, backedOff >= 5);
+
+        // Fast frames pull the average back down and the skip interval with it
+        int processed = 0;
+        while (scheduler.getSkipInterval() > 0) {
+            assertTrue("Still skipping after " + processed + " fast frames", processed < 20);
+            if (scheduler.onFrame(time += FRAME_NANOS) != FrameScheduler.Action.SKIP) {
+                assertTrue(scheduler.getSkipInterval() <= backedOff);
+                scheduler.recordDetection(5_000_000L);
+                processed++;
+            }
+        }
+        assertTrue("Recovered after " + processed + " fast frames", processed > 1);
+        assertNotEquals(FrameScheduler.Action.SKIP, scheduler.onFrame(time += FRAME_NANOS));
+    }
+
+    // Two frames so the scheduler knows the camera frame interval
+    private static long warmUp(FrameScheduler scheduler) {
+        scheduler.onFrame(0L);
+        scheduler.onFrame(FRAME_NANOS);
+        return FRAME_NANOS;
+    }
+}
@@ -0,0 +1,183 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Crash safety of {@link GalleryJournal}: a process killed mid-append loses only the torn
+ * record, and a compaction interrupted at any point loses nothing.
+ */
+public class GalleryJournalTest {
+    private static final int DIMENSION = 8;
+    private static final Executor DIRECT = Runnable::run;
+    // Never runs the merge, as if the process died right after rolling the log
+    private static final Executor KILLED = command -> { };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void truncatedLastRecord_isDroppedAndTheRestReplayed() throws Exception {
+        File dir = folder.newFolder();
+        GalleryJournal journal = journal(dir);
+        journal.open();
+        journal.appendPut("alice", vector(1));
+        journal.appendPut("bob", vector(2));
+        long intact = journal.size();
+        journal.appendPut("carol", vector(3));
+        journal.close();
+
+        // Cut the last record short, as if the write was interrupted
+        File log = new File(dir, "journal");
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 7);
+        }
+
+        GalleryJournal reopened = journal(dir);
+        Map<String, float[]> faces = reopened.open();
+        assertEquals(2, faces.size());
+        assertArrayEquals(vector(1), faces.get("alice"), 0f);
+        assertArrayEquals(vector(2), faces.get("bob"), 0f);
+        assertEquals("Torn tail is truncated", intact, reopened.size());
+
+        // New records follow the intact ones instead of the garbage
+        reopened.appendPut("dave", vector(4));
+        reopened.close();
+        Map<String, float[]> again = journal(dir).open();
+        assertEquals(3, again.size());
+        assertTrue(again.containsKey("dave"));
+    }
+
+    @Test
+    public void corruptedLastRecord_failsItsChecksumAndIsDropped() throws Exception {
+        File dir = folder.newFolder();
+        GalleryJournal journal = journal(dir);
+        journal.open();
+        journal.appendPut("alice", vector(1));
+        long intact = journal.size();
+        journal.appendDelete("alice");
+        journal.close();
+
+        // Flip a byte of the last record's payload; its length field still fits
+        File log = new File(dir, "journal");
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.seek(intact + 5);
+            int value = file.read();
+            file.seek(intact + 5);
+            file.write(value ^ 0xFF);
+        }
+
+        GalleryJournal reopened = journal(dir);
+        Map<String, float[]> faces = reopened.open();
+        assertEquals("The delete never happened", 1, faces.size());
+        assertArrayEquals(vector(1), faces.get("alice"), 0f);
+        assertEquals(intact, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void compact_thenReopen_givesTheSameGallery() throws Exception {
+        File dir = folder.newFolder();
+        GalleryJournal journal = journal(dir);
+        Map<String, float[]> expected = fill(journal);
+
+        journal.compact(DIRECT);
+        assertEquals(0, journal.size());
+        assertFalse(new File(dir, "journal.old").exists());
+        journal.appendPut("zed", vector(99));
+        expected.put("zed", vector(99));
+        journal.close();
+
+        assertSameFaces(expected, journal(dir).open());
+    }
+
+    @Test
+    public void crashBetweenRollAndMerge_losesNothing() throws Exception {
+        File dir = folder.newFolder();
+        GalleryJournal journal = journal(dir);
+        Map<String, float[]> expected = fill(journal);
+
+        // The log is rolled to .old but the merge never runs
+        journal.compact(KILLED);
+        assertTrue(new File(dir, "journal.old").exists());
+        journal.appendDelete("person0");
+        expected.remove("person0");
+        journal.close();
+
+        GalleryJournal reopened = journal(dir);
+        assertSameFaces(expected, reopened.open());
+
+        // The next compaction appends to the leftover .old log and merges both
+        reopened.appendPut("person1", vector(50));
+        expected.put("person1", vector(50));
+        reopened.compact(DIRECT);
+        assertFalse(new File(dir, "journal.old").exists());
+        reopened.close();
+        assertSameFaces(expected, journal(dir).open());
+    }
+
+    @Test
+    public void read_mergesSnapshotRolledAndLiveLogForTheAskedNames() throws Exception {
+        File dir = folder.newFolder();
+        GalleryJournal journal = journal(dir);
+        fill(journal);
+        journal.compact(DIRECT);
+
+        // person1 changes in the rolled log, person2 in the live one
+        journal.appendPut("person1", vector(41));
+        journal.compact(KILLED);
+        journal.appendPut("person2", vector(42));
+        journal.appendDelete("person3");
+
+        Map<String, float[]> read = journal.read(
+                new HashSet<>(Arrays.asList("person0", "person1", "person2", "person3", "person7")));
+        Map<String, float[]> expected = new HashMap<>();
+        expected.put("person0", vector(0));
+        expected.put("person1", vector(41));
+        expected.put("person2", vector(42));
+        assertSameFaces(expected, read);
+        journal.close();
+    }
+
+    private GalleryJournal journal(File dir) {
+        return new GalleryJournal(new File(dir, "journal"), new EmbeddingStore(new File(dir, "snapshot")));
+    }
+
+    private static Map<String, float[]> fill(GalleryJournal journal) throws Exception {
+        Map<String, float[]> expected = new HashMap<>();
+        journal.open();
+        for (int i = 0; i < 20; i++) {
+            journal.appendPut("person" + i, vector(i));
+            expected.put("person" + i, vector(i));
+        }
+        journal.appendDelete("person7");
+        expected.remove("person7");
+        return expected;
+    }
+
+    private static void assertSameFaces(Map<String, float[]> expected, Map<String, float[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, float[]> entry : expected.entrySet()) {
+            assertTrue(entry.getKey(), Arrays.equals(entry.getValue(), actual.get(entry.getKey())));
+        }
+    }
+
+    private static float[] vector(int seed) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = seed + i * 0.25f;
+        }
+        return vector;
+    }
+}
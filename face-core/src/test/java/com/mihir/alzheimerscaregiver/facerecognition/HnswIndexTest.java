@@ -0,0 +1,168 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.randomVector;
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.withNoise;
+import static org.junit.Assert.*;
+
+/**
+ * Recall and latency of {@link HnswIndex} against the exact {@link EmbeddingMatrix} scan.
+ */
+public class HnswIndexTest {
+    private static final int DIMENSION = 192;
+    private static final int GALLERY_SIZE = 5000;
+    private static final int QUERIES = 500;
+
+    @Test
+    public void recall_againstExactSearch() {
+        Random random = new Random(7);
+        float[][] identities = randomVectors(random, GALLERY_SIZE);
+
+        EmbeddingMatrix exact = new EmbeddingMatrix();
+        HnswIndex hnsw = new HnswIndex();
+        for (int i = 0; i < GALLERY_SIZE; i++) {
+            exact.put("person" + i, identities[i]);
+            hnsw.put("person" + i, identities[i]);
+        }
+
+        // Queries are new "frames" of enrolled people: the identity plus sensor noise
+        float[][] queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = withNoise(random, identities[random.nextInt(GALLERY_SIZE)], 0.6f);
+        }
+
+        String[] expected = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            expected[i] = exact.findNearest(queries[i]).getName();
+        }
+
+        float previousRecall = 0f;
+        for (int ef : new int[]{10, 50, 200}) {
+            hnsw.setEfSearch(ef);
+            int hits = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                if (expected[i].equals(hnsw.findNearest(queries[i]).getName())) {
+                    hits++;
+                }
+            }
+            float recall = hits / (float) QUERIES;
+
+            // Latency per efSearch is measured in face-benchmarks (GallerySearchBenchmark)
+            assertTrue("Recall dropped to " + recall + " at efSearch=" + ef, recall >= previousRecall - 0.01f);
+            previousRecall = recall;
+        }
+        assertTrue("Recall at efSearch=200 was " + previousRecall, previousRecall >= 0.98f);
+    }
+
+    @Test
+    public void removeAndReplace_areNeverReturned() {
+        Random random = new Random(11);
+        float[][] identities = randomVectors(random, 500);
+        HnswIndex hnsw = new HnswIndex();
+        for (int i = 0; i < identities.length; i++) {
+            hnsw.put("person" + i, identities[i]);
+        }
+
+        for (int i = 0; i < identities.length; i += 2) {
+            assertTrue(hnsw.remove("person" + i));
+        }
+        assertEquals(250, hnsw.size());
+        assertFalse(hnsw.contains("person0"));
+
+        for (int i = 0; i < identities.length; i++) {
+            EmbeddingMatrix.Match match = hnsw.findNearest(identities[i]);
+            assertNotNull(match);
+            assertTrue(hnsw.contains(match.getName()));
+            if (i % 2 == 1) {
+                assertEquals("person" + i, match.getName());
+            }
+        }
+
+        // Re-registering a name moves it to the new embedding
+        hnsw.put("person1", identities[0]);
+        assertEquals("person1", hnsw.findNearest(identities[0]).getName());
+        assertEquals(250, hnsw.size());
+    }
+
+    @Test
+    public void writesToCopies_leaveTheOriginalUnchanged() {
+        Random random = new Random(13);
+        float[][] identities = randomVectors(random, 400);
+        HnswIndex original = new HnswIndex();
+        for (int i = 0; i < 300; i++) {
+            original.put("person" + i, identities[i]);
+        }
+        ByteBuffer before = original.serialize();
+
+        // Copies share storage until they write; two copies of one version may both be written
+        HnswIndex first = original.copy();
+        HnswIndex second = original.copy();
+        for (int i = 300; i < 400; i++) {
+            first.put("person" + i, identities[i]);
+        }
+        for (int i = 0; i < 100; i++) {
+            first.remove("person" + i);
+            second.put("person" + (i + 300), identities[i]);
+        }
+
+        assertEquals(before, original.serialize());
+        assertEquals(300, original.size());
+        assertEquals(300, first.size());
+        assertEquals(400, second.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("person" + i, original.findNearest(identities[i]).getName());
+            assertEquals("person" + (i + 300), first.findNearest(identities[i + 300]).getName());
+            assertTrue(second.findNearest(identities[i]).getName().matches("person" + i + "|person" + (i + 300)));
+        }
+    }
+
+    @Test
+    public void serializeAndLoad_roundTrip() throws Exception {
+        Random random = new Random(3);
+        float[][] identities = randomVectors(random, 300);
+        HnswIndex hnsw = new HnswIndex();
+        for (int i = 0; i < identities.length; i++) {
+            hnsw.put("person" + i, identities[i]);
+        }
+        hnsw.remove("person5");
+        hnsw.setEfSearch(80);
+
+        File file = File.createTempFile("gallery", ".hnsw");
+        try {
+            HnswIndex.write(hnsw.serialize(), file);
+            HnswIndex loaded = HnswIndex.load(file);
+
+            assertEquals(hnsw.size(), loaded.size());
+            assertEquals(80, loaded.getEfSearch());
+            for (int i = 0; i < identities.length; i++) {
+                assertEquals(hnsw.findNearest(identities[i]).getName(), loaded.findNearest(identities[i]).getName());
+            }
+
+            // Catch up with changes made after the graph was saved
+            Map<String, float[]> faces = hnsw.toMap();
+            faces.remove("person7");
+            float[] moved = randomVectors(random, 1)[0];
+            faces.put("person8", moved);
+            loaded.syncWith(faces);
+            assertFalse(loaded.contains("person7"));
+            assertEquals(faces.size(), loaded.size());
+            assertEquals("person8", loaded.findNearest(moved).getName());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static float[][] randomVectors(Random random, int count) {
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = randomVector(random, DIMENSION);
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,85 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    @Test
+    public void everyLatency_fallsInsideItsBucket() {
+        Random random = new Random(5);
+        int previous = 0;
+        for (long micros = 0; micros < 1 << 16; micros++) {
+            int bucket = LatencyHistogram.bucketFor(micros);
+            assertTrue("Buckets must not go backwards at " + micros, bucket >= previous);
+            previous = bucket;
+            assertBucketHolds(micros);
+        }
+        for (int i = 0; i < 10000; i++) {
+            // Up to about 36 minutes, inside the histogram's range
+            assertBucketHolds(1 + (random.nextLong() >>> 33));
+        }
+        assertEquals(0, LatencyHistogram.bucketFor(-5));
+        assertEquals(LatencyHistogram.bucketFor(Long.MAX_VALUE), LatencyHistogram.bucketFor(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void uniformLatencies_givePercentilesWithinOneBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(50), 0);
+
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.record(ms * NANOS_PER_MILLI);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMeanMillis(), 1e-9);
+        assertEquals(1000, histogram.getMaxMillis(), 0);
+
+        for (double percentile : new double[]{10, 50, 90, 95, 99}) {
+            double estimate = histogram.getPercentileMillis(percentile);
+            double exact = percentile * 10;
+            assertTrue("p" + percentile + " = " + estimate, estimate >= exact);
+            assertTrue("p" + percentile + " = " + estimate, estimate <= Math.min(exact * 1.25, 1000));
+        }
+        assertEquals(1000, histogram.getPercentileMillis(100), 0);
+    }
+
+    @Test
+    public void bimodalLatencies_separateTheTail() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(2 * NANOS_PER_MILLI);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100 * NANOS_PER_MILLI);
+        }
+
+        assertEquals(2, histogram.getPercentileMillis(50), 0.5);
+        assertEquals(2, histogram.getPercentileMillis(90), 0.5);
+        // The tail bucket is capped at the slowest recording
+        assertEquals(100, histogram.getPercentileMillis(91), 0);
+        assertEquals(100, histogram.getPercentileMillis(99), 0);
+        assertEquals("p50=2.0ms p95=100.0ms p99=100.0ms (n=100)", histogram.summary());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMillis(), 0);
+        assertEquals(0, histogram.getPercentileMillis(99), 0);
+    }
+
+    private static void assertBucketHolds(long micros) {
+        int bucket = LatencyHistogram.bucketFor(micros);
+        double upper = LatencyHistogram.bucketUpperMicros(bucket);
+        assertTrue(micros + "us above bucket " + bucket, micros < upper);
+        if (bucket > 0) {
+            double lower = LatencyHistogram.bucketUpperMicros(bucket - 1);
+            assertTrue(micros + "us below bucket " + bucket, micros >= lower);
+            // Four buckets per octave keep every bucket within 25% of its lower edge
+            assertTrue(upper <= Math.max(lower * 1.25, lower + 1));
+        }
+    }
+}
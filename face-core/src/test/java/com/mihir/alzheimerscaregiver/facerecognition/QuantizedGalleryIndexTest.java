@@ -0,0 +1,169 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.gallery;
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.randomVector;
+import static com.mihir.alzheimerscaregiver.facerecognition.TestEmbeddings.withNoise;
+import static org.junit.Assert.*;
+
+/**
+ * Recall of the int8 and product-quantized indexes against the exact float scan, and how
+ * {@link FaceGallery} picks and persists them.
+ */
+public class QuantizedGalleryIndexTest {
+    private static final int DIMENSION = 192;
+    private static final int FACES = 2000;
+    private static final int QUERIES = 300;
+    private static final float QUERY_NOISE = 0.6f;
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void int8_agreesWithExactScan() {
+        Random random = new Random(6);
+        Map<String, float[]> faces = gallery(random, FACES, DIMENSION);
+        assertTop1Agreement(Int8GalleryIndex.fromMap(DIMENSION, faces), faces, random, 0.99);
+    }
+
+    @Test
+    public void productQuantization_agreesWithExactScan() {
+        Random random = new Random(7);
+        Map<String, float[]> faces = gallery(random, FACES, DIMENSION);
+        ProductQuantizer quantizer = ProductQuantizer.train(new ArrayList<>(faces.values()), DIMENSION,
+                ProductQuantizer.DEFAULT_SUBSPACES, faces.size());
+        PqGalleryIndex index = PqGalleryIndex.fromMap(quantizer, faces);
+        assertTrue(index.bytesPerFace() < DIMENSION);
+        assertTop1Agreement(index, faces, random, 0.9);
+    }
+
+    @Test
+    public void productQuantizer_survivesSaveAndLoad() throws Exception {
+        Random random = new Random(8);
+        Map<String, float[]> faces = gallery(random, 500, DIMENSION);
+        List<float[]> vectors = new ArrayList<>(faces.values());
+        ProductQuantizer quantizer = ProductQuantizer.train(vectors, DIMENSION,
+                ProductQuantizer.DEFAULT_SUBSPACES, faces.size());
+
+        File file = new File(folder.newFolder(), "codebooks.pq");
+        quantizer.save(file);
+        ProductQuantizer loaded = ProductQuantizer.load(file);
+        assertEquals(quantizer.getDimension(), loaded.getDimension());
+        assertEquals(quantizer.getSubspaces(), loaded.getSubspaces());
+        assertEquals(quantizer.getTrainedOn(), loaded.getTrainedOn());
+
+        byte[] codes = new byte[quantizer.getSubspaces()];
+        byte[] loadedCodes = new byte[loaded.getSubspaces()];
+        for (float[] vector : vectors.subList(0, 50)) {
+            quantizer.encode(vector, codes, 0);
+            loaded.encode(vector, loadedCodes, 0);
+            assertArrayEquals(codes, loadedCodes);
+        }
+    }
+
+    @Test
+    public void gallery_fallsBackToInt8BelowPqMinimumAndReloadsCodebooks() throws Exception {
+        Random random = new Random(9);
+        File small = folder.newFolder();
+        FaceGallery smallGallery = new FaceGallery(small, DIMENSION,
+                FaceGallery.CompressionMode.PRODUCT_QUANTIZATION, DIRECT);
+        smallGallery.importSnapshot(gallery(random, 100, DIMENSION));
+        smallGallery.open();
+        assertTrue("Too few faces to train codebooks", smallGallery.snapshot() instanceof Int8GalleryIndex);
+        assertFalse(new File(small, FaceGallery.PQ_FILE).exists());
+        smallGallery.close();
+
+        File large = folder.newFolder();
+        Map<String, float[]> faces = gallery(random, 600, DIMENSION);
+        FaceGallery largeGallery = new FaceGallery(large, DIMENSION,
+                FaceGallery.CompressionMode.PRODUCT_QUANTIZATION, DIRECT);
+        largeGallery.importSnapshot(faces);
+        largeGallery.open();
+        assertTrue(largeGallery.snapshot() instanceof PqGalleryIndex);
+        File pqFile = new File(large, FaceGallery.PQ_FILE);
+        assertTrue(pqFile.exists());
+        long written = pqFile.lastModified();
+        largeGallery.close();
+
+        // Reopening reuses the saved codebooks and still finds everyone
+        FaceGallery reopened = new FaceGallery(large, DIMENSION,
+                FaceGallery.CompressionMode.PRODUCT_QUANTIZATION, DIRECT);
+        reopened.open();
+        assertTrue(reopened.snapshot() instanceof PqGalleryIndex);
+        assertEquals(written, pqFile.lastModified());
+        assertEquals(faces.size(), reopened.size());
+        int found = 0;
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            EmbeddingMatrix.Match match = reopened.findNearest(entry.getValue());
+            if (match != null && match.getName().equals(entry.getKey())) {
+                found++;
+            }
+        }
+        assertTrue("Found " + found, found >= faces.size() * 0.99);
+        reopened.close();
+    }
+
+    @Test
+    public void growingGallery_trainsAndRetrainsCodebooksWithoutReopening() throws Exception {
+        Random random = new Random(10);
+        File dir = folder.newFolder();
+        FaceGallery gallery = new FaceGallery(dir, DIMENSION, FaceGallery.CompressionMode.PRODUCT_QUANTIZATION, DIRECT);
+        gallery.open();
+        putAll(gallery, gallery(random, 255, DIMENSION), "a");
+        assertTrue(gallery.snapshot() instanceof Int8GalleryIndex);
+
+        gallery.put("b", randomVector(random, DIMENSION));
+        assertTrue(gallery.snapshot() instanceof PqGalleryIndex);
+        assertEquals(256, ((PqGalleryIndex) gallery.snapshot()).getQuantizer().getTrainedOn());
+        assertTrue(new File(dir, FaceGallery.PQ_FILE).exists());
+
+        // Retrained once the gallery has doubled since the codebooks were trained
+        Map<String, float[]> more = gallery(random, 256, DIMENSION);
+        putAll(gallery, more, "c");
+        assertEquals(512, ((PqGalleryIndex) gallery.snapshot()).getQuantizer().getTrainedOn());
+        assertEquals(512, gallery.size());
+        int found = 0;
+        for (Map.Entry<String, float[]> entry : more.entrySet()) {
+            EmbeddingMatrix.Match match = gallery.findNearest(entry.getValue());
+            if (match != null && match.getName().equals("c" + entry.getKey())) {
+                found++;
+            }
+        }
+        assertTrue("Found " + found, found >= more.size() * 0.99);
+        gallery.close();
+    }
+
+    private static void putAll(FaceGallery gallery, Map<String, float[]> faces, String prefix) throws Exception {
+        List<GalleryJournal.Entry> batch = new ArrayList<>();
+        for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+            batch.add(GalleryJournal.Entry.put(prefix + entry.getKey(), entry.getValue()));
+        }
+        gallery.apply(batch);
+    }
+
+    private static void assertTop1Agreement(GalleryIndex index, Map<String, float[]> faces, Random random,
+                                            double minAgreement) {
+        EmbeddingMatrix exact = EmbeddingMatrix.fromMap(faces);
+        List<float[]> identities = new ArrayList<>(faces.values());
+        int agree = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            float[] query = withNoise(random, identities.get(random.nextInt(identities.size())), QUERY_NOISE);
+            if (exact.findNearest(query).getName().equals(index.findNearest(query).getName())) {
+                agree++;
+            }
+        }
+        assertTrue(index.getClass().getSimpleName() + " agreed on " + agree + " of " + QUERIES,
+                agree >= QUERIES * minAgreement);
+    }
+}
@@ -0,0 +1,129 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The unrolled {@link SimilarityKernels} against double-precision reference loops,
+ * across lengths that exercise the remainder handling.
+ */
+public class SimilarityKernelsTest {
+    // A naive float loop is itself only this close to the exact result at 192-d
+    private static final float TOLERANCE = 1e-5f;
+    private static final int[] LENGTHS = {0, 1, 2, 3, 4, 5, 7, 8, 63, 128, 191, 192, 193, 512};
+
+    @Test
+    public void dotAndDistances_matchReference() {
+        Random random = new Random(11);
+        for (int length : LENGTHS) {
+            float[] a = randomVector(random, length + 3);
+            float[] b = randomVector(random, length + 5);
+
+            assertEquals(referenceDot(a, 3, b, 5, length), SimilarityKernels.dot(a, 3, b, 5, length), TOLERANCE);
+            assertEquals(referenceDot(a, 0, a, 0, length), SimilarityKernels.squaredNorm(a, 0, length), TOLERANCE);
+
+            double squared = 0;
+            for (int i = 0; i < length; i++) {
+                double d = (double) a[3 + i] - b[5 + i];
+                squared += d * d;
+            }
+            assertEquals(squared, SimilarityKernels.squaredEuclidean(a, 3, b, 5, length), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void cosineAndEuclidean_matchReferenceAndPrecomputedNorms() {
+        Random random = new Random(13);
+        for (int length : LENGTHS) {
+            if (length == 0) {
+                continue;
+            }
+            float[] a = randomVector(random, length);
+            float[] b = randomVector(random, length);
+            float normA = SimilarityKernels.norm(a);
+            float normB = SimilarityKernels.norm(b);
+
+            double cosine = referenceDot(a, 0, b, 0, length)
+                    / Math.sqrt(referenceDot(a, 0, a, 0, length) * referenceDot(b, 0, b, 0, length));
+            assertEquals(cosine, SimilarityKernels.cosine(a, b), TOLERANCE);
+            assertEquals(cosine, SimilarityKernels.cosine(a, normA, b, normB), TOLERANCE);
+
+            float euclidean = SimilarityKernels.euclidean(a, b);
+            double squared = 0;
+            for (int i = 0; i < length; i++) {
+                squared += ((double) a[i] - b[i]) * ((double) a[i] - b[i]);
+            }
+            assertEquals(Math.sqrt(squared), euclidean, TOLERANCE * Math.max(1, euclidean));
+            // |a|^2 + |b|^2 - 2ab cancels, so allow more error
+            assertEquals(euclidean, SimilarityKernels.euclidean(a, normA, b, normB), 1e-3f * Math.max(1, euclidean));
+        }
+    }
+
+    @Test
+    public void edgeCases_keepLegacyResults() {
+        float[] zero = new float[192];
+        float[] one = randomVector(new Random(1), 192);
+        assertEquals(0f, SimilarityKernels.cosine(zero, one), 0f);
+        assertEquals(0f, SimilarityKernels.cosine(one, new float[191]), 0f);
+        assertEquals(Float.MAX_VALUE, SimilarityKernels.euclidean(one, new float[191]), 0f);
+        assertEquals(1f, SimilarityKernels.cosine(one, one), TOLERANCE);
+        assertEquals(0f, SimilarityKernels.euclidean(one, one), 0f);
+    }
+
+    @Test
+    public void batchedRows_matchSingleDots() {
+        Random random = new Random(17);
+        int dimension = 192;
+        int rowCount = 300;
+        float[] query = randomVector(random, dimension);
+        float[] rows = randomVector(random, dimension * rowCount);
+
+        float[] scores = new float[rowCount];
+        SimilarityKernels.dotRows(query, rows, rowCount, dimension, scores);
+
+        int best = 0;
+        for (int row = 0; row < rowCount; row++) {
+            assertEquals(SimilarityKernels.dot(query, 0, rows, row * dimension, dimension), scores[row], 0f);
+            if (scores[row] > scores[best]) {
+                best = row;
+            }
+        }
+        assertEquals(best, SimilarityKernels.maxDotRow(query, rows, rowCount, dimension));
+        assertEquals(-1, SimilarityKernels.maxDotRow(query, rows, 0, dimension));
+    }
+
+    @Test
+    public void int8Dot_matchesReference() {
+        Random random = new Random(19);
+        for (int length : LENGTHS) {
+            float[] q = randomVector(random, length);
+            byte[] codes = new byte[length + 2];
+            random.nextBytes(codes);
+
+            double expected = 0;
+            for (int i = 0; i < length; i++) {
+                expected += (double) q[i] * codes[2 + i];
+            }
+            assertEquals(expected, SimilarityKernels.dot(q, codes, 2, length), 1e-3);
+        }
+    }
+
+    private static double referenceDot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        return vector;
+    }
+}
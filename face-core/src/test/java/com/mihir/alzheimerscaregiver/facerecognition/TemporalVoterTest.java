@@ -0,0 +1,193 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TemporalVoterTest {
+    private static final float THRESHOLD = 0.75f;
+    private static final float FLOOR = 0.70f;
+    private static final int FIXED_FRAMES = 5;
+    private static final int TRIALS = 2000;
+
+    @Test
+    public void clearFace_isRecognizedWithinTwoFrames() {
+        TemporalVoter voter = new TemporalVoter(THRESHOLD, FLOOR);
+        TemporalVoter.Outcome outcome = TemporalVoter.Outcome.PENDING;
+        while (outcome == TemporalVoter.Outcome.PENDING) {
+            outcome = voter.offer(matches("alice", 0.86f, "bob", 0.71f));
+        }
+        assertEquals(TemporalVoter.Outcome.RECOGNIZED, outcome);
+        assertEquals("alice", voter.getName());
+        assertEquals(0.86f, voter.getSimilarity(), 1e-6f);
+        assertTrue(voter.getFrames() <= 2);
+
+        // Decided votes ignore later frames until reset
+        assertEquals(TemporalVoter.Outcome.RECOGNIZED, voter.offer(null));
+        voter.reset();
+        assertEquals(TemporalVoter.Outcome.PENDING, voter.getOutcome());
+        assertEquals(0, voter.getFrames());
+    }
+
+    @Test
+    public void stranger_isUnknownAndOneBadFrameIsOutvoted() {
+        TemporalVoter voter = new TemporalVoter(THRESHOLD, FLOOR);
+        TemporalVoter.Outcome outcome = TemporalVoter.Outcome.PENDING;
+        while (outcome == TemporalVoter.Outcome.PENDING) {
+            outcome = voter.offer(null);
+        }
+        assertEquals(TemporalVoter.Outcome.UNKNOWN, outcome);
+        assertNull(voter.getName());
+
+        // A blurred frame below the floor delays recognition instead of rejecting
+        voter.reset();
+        assertEquals(TemporalVoter.Outcome.PENDING, voter.offer(matches("alice", 0.82f)));
+        assertEquals(TemporalVoter.Outcome.PENDING, voter.offer(null));
+        outcome = TemporalVoter.Outcome.PENDING;
+        while (outcome == TemporalVoter.Outcome.PENDING) {
+            outcome = voter.offer(matches("alice", 0.82f));
+        }
+        assertEquals(TemporalVoter.Outcome.RECOGNIZED, outcome);
+        assertEquals("alice", voter.getName());
+    }
+
+    @Test
+    public void lookalikes_areNeverRecognized() {
+        TemporalVoter voter = new TemporalVoter(THRESHOLD, FLOOR, TemporalVoter.DEFAULT_DECAY,
+                TemporalVoter.DEFAULT_ERROR_RATE, 10);
+        TemporalVoter.Outcome outcome = TemporalVoter.Outcome.PENDING;
+        for (int frame = 0; outcome == TemporalVoter.Outcome.PENDING; frame++) {
+            // The leader flips between two people who both clear the threshold
+            outcome = frame % 2 == 0
+                    ? voter.offer(matches("alice", 0.83f, "ann", 0.80f))
+                    : voter.offer(matches("ann", 0.82f, "alice", 0.81f));
+        }
+        assertEquals(TemporalVoter.Outcome.INCONCLUSIVE, outcome);
+        assertEquals(10, voter.getFrames());
+        assertTrue(voter.getEvidence("alice") > 0f);
+        assertTrue(voter.getEvidence("ann") > 0f);
+    }
+
+    @Test
+    public void onlyRejectedFrames_stillReachTheFrameCap() {
+        TemporalVoter voter = new TemporalVoter(THRESHOLD, FLOOR);
+        TemporalVoter.Outcome outcome = TemporalVoter.Outcome.PENDING;
+        while (outcome == TemporalVoter.Outcome.PENDING) {
+            outcome = voter.abstain();
+        }
+        assertEquals(TemporalVoter.Outcome.INCONCLUSIVE, outcome);
+        assertEquals(TemporalVoter.DEFAULT_MAX_FRAMES, voter.getFrames());
+        assertNull(voter.getName());
+
+        // Abstentions add no evidence, they only let what was seen fade
+        voter.reset();
+        assertEquals(TemporalVoter.Outcome.PENDING, voter.offer(matches("alice", 0.77f)));
+        float seen = voter.getEvidence("alice");
+        assertEquals(TemporalVoter.Outcome.PENDING, voter.abstain());
+        assertEquals(seen * TemporalVoter.DEFAULT_DECAY, voter.getEvidence("alice"), 1e-5f);
+        assertEquals(2, voter.getFrames());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void floorAboveThreshold_isRejected() {
+        new TemporalVoter(THRESHOLD, THRESHOLD + 0.01f);
+    }
+
+    /**
+     * Against averaging a fixed number of frames, the sequential test decides in fewer
+     * frames on average without making more mistakes, on both enrolled people and strangers
+     * under noisy per-frame similarities.
+     */
+    @Test
+    public void sequentialTest_needsFewerFramesThanFixedAveraging() {
+        Random random = new Random(23);
+        int sequentialFrames = 0;
+        int sequentialErrors = 0;
+        int fixedErrors = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            boolean enrolled = trial % 2 == 0;
+            List<TopMatches> frames = new ArrayList<>();
+            for (int i = 0; i < TemporalVoter.DEFAULT_MAX_FRAMES; i++) {
+                frames.add(simulateFrame(random, enrolled));
+            }
+
+            TemporalVoter voter = new TemporalVoter(THRESHOLD, FLOOR);
+            TemporalVoter.Outcome outcome = TemporalVoter.Outcome.PENDING;
+            for (int i = 0; outcome == TemporalVoter.Outcome.PENDING; i++) {
+                outcome = voter.offer(frames.get(i));
+            }
+            sequentialFrames += voter.getFrames();
+            boolean recognized = outcome == TemporalVoter.Outcome.RECOGNIZED;
+            if (enrolled ? !recognized || !"alice".equals(voter.getName()) : recognized) {
+                sequentialErrors++;
+            }
+
+            // Baseline: average alice's similarity over the first frames, floor when absent
+            float sum = 0f;
+            for (int i = 0; i < FIXED_FRAMES; i++) {
+                sum += similarityOf(frames.get(i), "alice");
+            }
+            if ((sum / FIXED_FRAMES > THRESHOLD) != enrolled) {
+                fixedErrors++;
+            }
+        }
+
+        double meanFrames = sequentialFrames / (double) TRIALS;
+        assertTrue("Mean frames " + meanFrames, meanFrames < FIXED_FRAMES * 0.7);
+        assertTrue(sequentialErrors + " vs " + fixedErrors, sequentialErrors <= fixedErrors);
+    }
+
+    // One frame of an enrolled person, alice, or of a stranger who resembles her, with poor
+    // lighting now and then; only similarities above the floor are reported
+    private static TopMatches simulateFrame(Random random, boolean enrolled) {
+        float mean = enrolled ? 0.82f : 0.62f;
+        if (random.nextInt(5) == 0) {
+            mean -= 0.12f;
+        }
+        float alice = mean + 0.05f * (float) random.nextGaussian();
+        float bob = 0.60f + 0.05f * (float) random.nextGaussian();
+        List<String> names = new ArrayList<>();
+        List<Float> scores = new ArrayList<>();
+        if (alice >= bob) {
+            add(names, scores, "alice", alice);
+            add(names, scores, "bob", bob);
+        } else {
+            add(names, scores, "bob", bob);
+            add(names, scores, "alice", alice);
+        }
+        String[] nameArray = names.toArray(new String[0]);
+        float[] scoreArray = new float[scores.size()];
+        for (int i = 0; i < scoreArray.length; i++) {
+            scoreArray[i] = scores.get(i);
+        }
+        return new TopMatches(nameArray, new int[nameArray.length], scoreArray);
+    }
+
+    private static void add(List<String> names, List<Float> scores, String name, float score) {
+        if (score >= FLOOR) {
+            names.add(name);
+            scores.add(score);
+        }
+    }
+
+    private static float similarityOf(TopMatches matches, String name) {
+        for (int i = 0; i < matches.size(); i++) {
+            if (matches.getName(i).equals(name)) {
+                return matches.getSimilarity(i);
+            }
+        }
+        return FLOOR;
+    }
+
+    private static TopMatches matches(String name, float score) {
+        return new TopMatches(new String[]{name}, new int[1], new float[]{score});
+    }
+
+    private static TopMatches matches(String first, float firstScore, String second, float secondScore) {
+        return new TopMatches(new String[]{first, second}, new int[2], new float[]{firstScore, secondScore});
+    }
+}
@@ -0,0 +1,200 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvFaceConverterTest {
+    private static final float EPSILON = 1e-4f;
+    // Rows are padded past the width, as camera planes often are
+    private static final int ROW_PADDING = 4;
+
+    @Test
+    public void sensorCorners_landWhereTheRotationPutsThem() {
+        int side = 6;
+        Frame frame = new Frame(side, side);
+        frame.fillLuma(100);
+        frame.fillChroma(128, 128);
+        frame.setLuma(0, 0, 250);        // sensor top-left
+        frame.setLuma(side - 1, 0, 50);  // sensor top-right
+
+        // {rotation, top-left x, y, top-right x, y} in the upright output
+        int[][] expected = {
+                {0, 0, 0, side - 1, 0},
+                {90, side - 1, 0, side - 1, side - 1},
+                {180, side - 1, side - 1, 0, side - 1},
+                {270, 0, side - 1, 0, 0},
+        };
+        YuvFaceConverter converter = new YuvFaceConverter(side);
+        for (int[] corners : expected) {
+            FloatBuffer out = FloatBuffer.allocate(side * side * 3);
+            assertTrue(frame.convert(converter, corners[0], 0, 0, side, side, out));
+            String rotation = corners[0] + " degrees";
+            assertGray(rotation, 250, out, side, corners[1], corners[2]);
+            assertGray(rotation, 50, out, side, corners[3], corners[4]);
+            assertGray(rotation, 100, out, side, side / 2, side / 2);
+        }
+    }
+
+    @Test
+    public void chroma_isConvertedWithBt601() {
+        Frame frame = new Frame(4, 4);
+        frame.fillLuma(100);
+        frame.fillChroma(128, 128);
+        // Top-right 2x2 block: Cb +20, Cr -10
+        frame.setChroma(1, 0, 148, 118);
+
+        FloatBuffer out = FloatBuffer.allocate(4 * 4 * 3);
+        assertTrue(frame.convert(new YuvFaceConverter(4), 0, 0, 0, 4, 4, out));
+        for (int y = 0; y < 2; y++) {
+            for (int x = 2; x < 4; x++) {
+                int offset = (y * 4 + x) * 3;
+                assertEquals(normalized(100 + 1.402f * -10), out.get(offset), EPSILON);
+                assertEquals(normalized(100 - 0.344136f * 20 - 0.714136f * -10), out.get(offset + 1), EPSILON);
+                assertEquals(normalized(100 + 1.772f * 20), out.get(offset + 2), EPSILON);
+            }
+        }
+        assertGray("neutral block", 100, out, 4, 0, 0);
+    }
+
+    @Test
+    public void boxOutsideTheFrame_writesNothing() {
+        Frame frame = new Frame(4, 4);
+        FloatBuffer out = FloatBuffer.allocate(4 * 4 * 3);
+        assertFalse(frame.convert(new YuvFaceConverter(4), 90, 4, 0, 8, 4, out));
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    public void croppedSensorRect_convertsLikeTheFullFrame() {
+        int width = 12;
+        int height = 8;
+        Frame frame = new Frame(width, height);
+        frame.fillRandom(new Random(17));
+
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            boolean swapped = rotation == 90 || rotation == 270;
+            // An even box inside the upright frame, so the sensor rect is even as cropNv21 needs
+            int left = 0;
+            int top = 2;
+            int right = 4;
+            int bottom = swapped ? 8 : 6;
+            int size = 4;
+
+            int[] rect = YuvFaceConverter.toSensorRect(rotation, width, height, left, top, right, bottom);
+            int cropWidth = rect[2] - rect[0];
+            int cropHeight = rect[3] - rect[1];
+            assertEquals(swapped ? bottom - top : right - left, cropWidth);
+            assertEquals(swapped ? right - left : bottom - top, cropHeight);
+
+            byte[] nv21 = new byte[cropWidth * cropHeight * 3 / 2];
+            YuvFaceConverter.cropNv21(frame.y, frame.yRowStride, frame.u, frame.v, frame.uvRowStride, 2,
+                    rect[0], rect[1], cropWidth, cropHeight, nv21);
+            for (int row = 0; row < cropHeight; row++) {
+                for (int col = 0; col < cropWidth; col++) {
+                    assertEquals(frame.luma(rect[0] + col, rect[1] + row), nv21[row * cropWidth + col] & 0xFF);
+                }
+            }
+
+            FloatBuffer expected = FloatBuffer.allocate(size * size * 3);
+            assertTrue(frame.convert(new YuvFaceConverter(size), rotation, left, top, right, bottom, expected));
+
+            // The crop alone, as the detector would see it: NV21 is interleaved V/U after the luma
+            int lumaBytes = cropWidth * cropHeight;
+            ByteBuffer cropY = ByteBuffer.wrap(nv21, 0, lumaBytes).slice();
+            ByteBuffer cropV = ByteBuffer.wrap(nv21, lumaBytes, lumaBytes / 2).slice();
+            ByteBuffer cropU = ByteBuffer.wrap(nv21, lumaBytes + 1, lumaBytes / 2 - 1).slice();
+            FloatBuffer actual = FloatBuffer.allocate(size * size * 3);
+            assertTrue(new YuvFaceConverter(size).convert(cropY, cropWidth, cropU, cropV, cropWidth, 2,
+                    cropWidth, cropHeight, rotation, 0, 0, right - left, bottom - top, actual));
+
+            assertArrayEquals(rotation + " degrees", expected.array(), actual.array(), EPSILON);
+        }
+    }
+
+    private static void assertGray(String message, int luma, FloatBuffer out, int size, int x, int y) {
+        int offset = (y * size + x) * 3;
+        for (int channel = 0; channel < 3; channel++) {
+            assertEquals(message + " at " + x + "," + y, normalized(luma), out.get(offset + channel), EPSILON);
+        }
+    }
+
+    private static float normalized(float value) {
+        return value / 127.5f - 1.0f;
+    }
+
+    // A YUV_420_888 frame with separate U/V planes of pixel stride 2, like NV21 from CameraX
+    private static final class Frame {
+        final int width;
+        final int height;
+        final int yRowStride;
+        final int uvRowStride;
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+
+        Frame(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.yRowStride = width + ROW_PADDING;
+            this.uvRowStride = width + ROW_PADDING;
+            this.y = ByteBuffer.allocate(yRowStride * height);
+            this.u = ByteBuffer.allocate(uvRowStride * height / 2);
+            this.v = ByteBuffer.allocate(uvRowStride * height / 2);
+        }
+
+        boolean convert(YuvFaceConverter converter, int rotation, int left, int top, int right, int bottom,
+                        FloatBuffer out) {
+            return converter.convert(y, yRowStride, u, v, uvRowStride, 2, width, height, rotation,
+                    left, top, right, bottom, out);
+        }
+
+        int luma(int x, int row) {
+            return y.get(row * yRowStride + x) & 0xFF;
+        }
+
+        void setLuma(int x, int row, int value) {
+            y.put(row * yRowStride + x, (byte) value);
+        }
+
+        void fillLuma(int value) {
+            for (int row = 0; row < height; row++) {
+                for (int x = 0; x < width; x++) {
+                    setLuma(x, row, value);
+                }
+            }
+        }
+
+        // Chroma is addressed per 2x2 block
+        void setChroma(int blockX, int blockY, int cb, int cr) {
+            int index = blockY * uvRowStride + blockX * 2;
+            u.put(index, (byte) cb);
+            v.put(index, (byte) cr);
+        }
+
+        void fillChroma(int cb, int cr) {
+            for (int blockY = 0; blockY < height / 2; blockY++) {
+                for (int blockX = 0; blockX < width / 2; blockX++) {
+                    setChroma(blockX, blockY, cb, cr);
+                }
+            }
+        }
+
+        void fillRandom(Random random) {
+            for (int row = 0; row < height; row++) {
+                for (int x = 0; x < width; x++) {
+                    setLuma(x, row, random.nextInt(256));
+                }
+            }
+            for (int blockY = 0; blockY < height / 2; blockY++) {
+                for (int blockX = 0; blockX < width / 2; blockX++) {
+                    setChroma(blockX, blockY, random.nextInt(256), random.nextInt(256));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeded synthetic embeddings shared by the face-core tests and the JMH benchmarks,
+ * so every run and every fork sees the same gallery
+ */
+final class TestEmbeddings {
+
+    private TestEmbeddings() {
+    }
+
+    /**
+     * Gaussian vector scaled to unit length, like a FaceNet embedding
+     */
+    static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        EmbeddingMatrix.normalize(vector, 0, dimension);
+        return vector;
+    }
+
+    /**
+     * A new "frame" of an enrolled face: the identity plus per-dimension noise
+     */
+    static float[] withNoise(Random random, float[] identity, float noise) {
+        float[] vector = new float[identity.length];
+        for (int i = 0; i < identity.length; i++) {
+            vector[i] = identity[i] + noise * (float) random.nextGaussian() / (float) Math.sqrt(identity.length);
+        }
+        EmbeddingMatrix.normalize(vector, 0, vector.length);
+        return vector;
+    }
+
+    /**
+     * Another view of the same person: the embedding moved by {@code spread} in a random
+     * direction, then scaled back to unit length
+     */
+    static float[] blend(Random random, float[] embedding, float spread) {
+        float[] offset = randomVector(random, embedding.length);
+        float[] vector = new float[embedding.length];
+        for (int i = 0; i < embedding.length; i++) {
+            vector[i] = embedding[i] + spread * offset[i];
+        }
+        EmbeddingMatrix.normalize(vector, 0, vector.length);
+        return vector;
+    }
+
+    /**
+     * {@code size} random faces named "person0", "person1", ...
+     */
+    static Map<String, float[]> gallery(Random random, int size, int dimension) {
+        Map<String, float[]> faces = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            faces.put("person" + i, randomVector(random, dimension));
+        }
+        return faces;
+    }
+}
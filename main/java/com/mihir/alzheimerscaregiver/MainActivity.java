@@ -25,6 +25,7 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
+import com.mihir.alzheimerscaregiver.facerecognition.FaceNetModelRegistry;
 import com.mihir.alzheimerscaregiver.facerecognition.FaceRecognitionActivity;
     import com.mihir.alzheimerscaregiver.facerecognition.FaceRecognitionHelper;
 import com.mihir.alzheimerscaregiver.facerecognition.ManageFacesActivity;
@@ -82,6 +83,9 @@ public class MainActivity extends AppCompatActivity {
         setupToolbar();
         setupClickListeners();
 
+        // Load and warm up the shared face model in the background
+        FaceNetModelRegistry.warmUp(this);
+
         // Initialize face recognition helper
         faceRecognitionHelper = new FaceRecognitionHelper(this);
 
@@ -437,7 +441,7 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         if (faceRecognitionHelper != null) {
-            FaceRecognitionHelper.close();
+            faceRecognitionHelper.close();
         }
     }
 }
\ No newline at end of file
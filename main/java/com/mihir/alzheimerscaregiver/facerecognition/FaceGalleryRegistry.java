@@ -0,0 +1,129 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The process-wide {@link FaceGallery} in the app's files directory, shared by every
+ * {@link FaceRecognitionHelper}. The first acquire queues the load on the persistence
+ * executor, so a helper created in onCreate does not wait for the journal replay, HNSW
+ * build or codebook training; until then the gallery searches as empty. Screens after
+ * the first reuse the loaded gallery and its snapshots. Each acquire must be paired with
+ * a release; when the last reference goes away the gallery is closed on the persistence
+ * executor, after any writes still queued there.
+ */
+public final class FaceGalleryRegistry {
+    private static final String TAG = "FaceGalleryRegistry";
+    private static final String PREFS_NAME = "face_recognition_prefs";
+    private static final String KEY_REGISTERED_FACES = "registered_faces";
+    private static final String KEY_COMPRESSION_MODE = "gallery_compression";
+
+    // Snapshot and index writes, transaction commits and the final close, in order
+    private static final ExecutorService persistenceExecutor = Executors.newSingleThreadExecutor();
+    private static FaceGallery gallery = null;
+    private static int references = 0;
+
+    private FaceGalleryRegistry() {
+    }
+
+    /**
+     * Get the shared gallery, starting its load in the background on first use
+     * @return Gallery, possibly still loading; pass it to {@link #release} when done
+     */
+    public static synchronized FaceGallery acquire(Context context) {
+        // A gallery whose close is still queued is simply reused
+        if (gallery == null) {
+            gallery = create(context.getApplicationContext());
+            FaceGallery loading = gallery;
+            persistenceExecutor.execute(() -> {
+                loading.open();
+                Log.d(TAG, "Loaded " + loading.size() + " registered faces");
+            });
+        }
+        references++;
+        return gallery;
+    }
+
+    public static synchronized void release(FaceGallery released) {
+        if (released != gallery || references == 0) {
+            Log.w(TAG, "Released a gallery that is not registered");
+            return;
+        }
+        if (--references == 0) {
+            persistenceExecutor.execute(() -> closeIfUnused(released));
+        }
+    }
+
+    /**
+     * Choose how the in-memory gallery is stored. Takes effect the next time the gallery
+     * is opened; the gallery file on disk always keeps full float32 embeddings.
+     */
+    public static void setCompressionMode(Context context, FaceGallery.CompressionMode mode) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_COMPRESSION_MODE, mode.name())
+                .apply();
+    }
+
+    /**
+     * Single-threaded executor the gallery persists on; work queued here runs before it is closed
+     */
+    static Executor getPersistenceExecutor() {
+        return persistenceExecutor;
+    }
+
+    private static synchronized void closeIfUnused(FaceGallery closing) {
+        if (closing == gallery && references == 0) {
+            gallery.close();
+            gallery = null;
+            Log.d(TAG, "Closed face gallery");
+        }
+    }
+
+    // Nothing is loaded yet, except for the one-time legacy migration, which must land
+    // before any write can open the gallery
+    private static FaceGallery create(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        FaceGallery created = new FaceGallery(context.getFilesDir(), FaceNetModel.EMBEDDING_SIZE,
+                getCompressionMode(prefs), persistenceExecutor);
+        try {
+            if (!created.exists() && prefs.contains(KEY_REGISTERED_FACES)) {
+                migrateFromPreferences(prefs, created);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to migrate registered faces", e);
+        }
+        return created;
+    }
+
+    private static FaceGallery.CompressionMode getCompressionMode(SharedPreferences prefs) {
+        try {
+            return FaceGallery.CompressionMode.valueOf(
+                    prefs.getString(KEY_COMPRESSION_MODE, FaceGallery.CompressionMode.NONE.name()));
+        } catch (IllegalArgumentException e) {
+            return FaceGallery.CompressionMode.NONE;
+        }
+    }
+
+    // One-time move of the legacy Gson/SharedPreferences gallery into the binary store
+    private static void migrateFromPreferences(SharedPreferences prefs, FaceGallery target) throws IOException {
+        String json = prefs.getString(KEY_REGISTERED_FACES, "{}");
+        Type type = new TypeToken<HashMap<String, float[]>>(){}.getType();
+        HashMap<String, float[]> legacy = new Gson().fromJson(json, type);
+
+        target.importSnapshot(legacy != null ? legacy : new HashMap<>());
+        prefs.edit().remove(KEY_REGISTERED_FACES).apply();
+        Log.d(TAG, "Migrated " + (legacy != null ? legacy.size() : 0) + " faces to " + FaceGallery.GALLERY_FILE);
+    }
+}
@@ -0,0 +1,167 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import android.content.Context;
+import android.graphics.RectF;
+import android.util.Log;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link SimilarityClassifier.Classifier} over the shared {@link FaceNetModel} and the
+ * registered face gallery. {@link #recognizeImage} treats its input as one face crop.
+ *
+ * Preprocess, inference and gallery match are timed separately into lock-free
+ * {@link LatencyHistogram}s; {@link #getStatString()} reports their p50/p95/p99 so
+ * thread count and delegate settings can be compared on real devices.
+ */
+public class FaceNetClassifier implements SimilarityClassifier.Classifier {
+    private static final String TAG = "FaceNetClassifier";
+    // Log statistics every this many recognitions while stat logging is on
+    private static final int STAT_LOG_INTERVAL = 100;
+
+    private final Context context;
+    private final FaceRecognitionHelper faceRecognitionHelper;
+    private final FacePreprocessor preprocessor = new FacePreprocessor(FaceNetModel.INPUT_SIZE);
+    private final float[] input = new float[FaceNetModel.INPUT_LENGTH];
+    private final FloatBuffer inputView = FloatBuffer.wrap(input);
+
+    private final LatencyHistogram preprocessLatency = new LatencyHistogram();
+    private final LatencyHistogram inferenceLatency = new LatencyHistogram();
+    private final LatencyHistogram matchLatency = new LatencyHistogram();
+
+    private InterpreterConfig config = InterpreterConfig.DEFAULT;
+    private FaceNetModel model;
+    private volatile boolean statLogging = false;
+    private long recognitions = 0;
+
+    public FaceNetClassifier(Context context) {
+        this.context = context.getApplicationContext();
+        this.faceRecognitionHelper = new FaceRecognitionHelper(context);
+        this.model = FaceNetModelRegistry.acquire(this.context, FaceNetModel.DEFAULT_MODEL_FILE, config);
+    }
+
+    /**
+     * @param pixels Face crop as packed RGB (3 bytes per pixel) or RGBA (4 bytes per pixel)
+     * @return The best registered matches for the crop, best first. A single entry is the
+     *         decision itself ("Unknown" if nobody came close); several mean the top two
+     *         were too close to call. Empty if the crop could not be processed.
+     */
+    @Override
+    public synchronized List<SimilarityClassifier.Recognition> recognizeImage(byte[] pixels, int width, int height) {
+        if (model == null || width <= 0 || height <= 0) {
+            return Collections.emptyList();
+        }
+        int bytesPerPixel = pixels.length / (width * height);
+        if (bytesPerPixel != 3 && bytesPerPixel != 4) {
+            Log.e(TAG, "Unsupported pixel layout: " + pixels.length + " bytes for " + width + "x" + height);
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        int[] argb = preprocessor.pixelBuffer(width * height);
+        for (int i = 0, b = 0; i < width * height; i++, b += bytesPerPixel) {
+            argb[i] = 0xFF000000 | (pixels[b] & 0xFF) << 16 | (pixels[b + 1] & 0xFF) << 8 | (pixels[b + 2] & 0xFF);
+        }
+        inputView.rewind();
+        preprocessor.preprocess(argb, width, height, inputView);
+        long preprocessed = System.nanoTime();
+
+        List<float[]> embeddings = model.getPreprocessedEmbeddings(Collections.singletonList(input));
+        long inferred = System.nanoTime();
+        if (embeddings == null) {
+            return Collections.emptyList();
+        }
+
+        FaceRecognitionHelper.RecognitionResult result = faceRecognitionHelper.matchFace(embeddings.get(0));
+        long matched = System.nanoTime();
+
+        preprocessLatency.record(preprocessed - start);
+        inferenceLatency.record(inferred - preprocessed);
+        matchLatency.record(matched - inferred);
+        if (statLogging && ++recognitions % STAT_LOG_INTERVAL == 0) {
+            Log.d(TAG, getStatString());
+        }
+
+        RectF location = new RectF(0, 0, width, height);
+        TopMatches candidates = result.isAmbiguous() ? result.getCandidates() : null;
+        int count = candidates != null ? candidates.size() : 1;
+        List<SimilarityClassifier.Recognition> recognitionList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = candidates != null ? candidates.getName(i) : result.getName();
+            float confidence = candidates != null ? candidates.getSimilarity(i) : result.getConfidence();
+            SimilarityClassifier.Recognition recognition =
+                    new SimilarityClassifier.Recognition(name, name, confidence, location);
+            recognition.setExtra(result.getEmbedding());
+            recognitionList.add(recognition);
+        }
+        return recognitionList;
+    }
+
+    @Override
+    public void enableStatLogging(boolean debug) {
+        statLogging = debug;
+    }
+
+    @Override
+    public String getStatString() {
+        EmbeddingMatrix.PruningStats pruning = faceRecognitionHelper.getPruningStats();
+        return "config[" + getConfig().toKey() + "]"
+                + " preprocess " + preprocessLatency.summary()
+                + " | inference " + inferenceLatency.summary()
+                + " | match " + matchLatency.summary()
+                + (pruning != null ? String.format(Locale.US, " | pruned %.0f%% of rows, %.0f%% of work",
+                        pruning.getPruningRate() * 100, pruning.getSkippedWorkRate() * 100) : "");
+    }
+
+    /**
+     * Forget recorded timings, e.g. after switching configuration
+     */
+    public void resetStats() {
+        preprocessLatency.reset();
+        inferenceLatency.reset();
+        matchLatency.reset();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (model != null) {
+            FaceNetModelRegistry.release(model);
+            model = null;
+        }
+        faceRecognitionHelper.close();
+    }
+
+    @Override
+    public void setNumThreads(int numThreads) {
+        applyConfig(getConfig().withNumThreads(numThreads));
+    }
+
+    @Override
+    public void setUseNNAPI(boolean isChecked) {
+        applyConfig(getConfig().withNnapi(isChecked));
+    }
+
+    public void setUseXNNPACK(boolean useXnnpack) {
+        applyConfig(getConfig().withXnnpack(useXnnpack));
+    }
+
+    public synchronized InterpreterConfig getConfig() {
+        return config;
+    }
+
+    // Swap to the shared model for the new settings; the interpreter loads on next use
+    private synchronized void applyConfig(InterpreterConfig newConfig) {
+        if (newConfig.equals(config) || model == null) {
+            config = newConfig;
+            return;
+        }
+        FaceNetModel previous = model;
+        model = FaceNetModelRegistry.acquire(context, FaceNetModel.DEFAULT_MODEL_FILE, newConfig);
+        FaceNetModelRegistry.release(previous);
+        config = newConfig;
+    }
+}
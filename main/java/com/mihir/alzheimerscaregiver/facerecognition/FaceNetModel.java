@@ -2,8 +2,11 @@ package com.mihir.alzheimerscaregiver.facerecognition;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.util.Log;
 
+import androidx.camera.core.ImageProxy;
+
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.support.common.FileUtil;
 
@@ -11,109 +14,273 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class FaceNetModel {
     private static final String TAG = "FaceNetModel";
-    private static final String MODEL_FILE = "mobile_face_net.tflite";
-    private static final int INPUT_SIZE = 112;
-    private static final int EMBEDDING_SIZE = 192;
+    static final String DEFAULT_MODEL_FILE = "mobile_face_net.tflite";
+    static final int INPUT_SIZE = 112;
+    static final int EMBEDDING_SIZE = 192;
+    // Larger groups are split into several interpreter runs
+    private static final int MAX_BATCH_SIZE = 8;
+
+    // Floats per preprocessed face, in the layout YuvFaceConverter writes
+    static final int INPUT_LENGTH = INPUT_SIZE * INPUT_SIZE * 3;
+    private static final int FACE_INPUT_BYTES = 4 * INPUT_LENGTH;
 
+    private final Context context;
+    private final String modelFile;
+    private final InterpreterConfig config;
     private Interpreter interpreter;
-    private ByteBuffer inputBuffer;
-    private FloatBuffer outputBuffer;
+    private boolean loadFailed = false;
+    private boolean closed = false;
 
-    public FaceNetModel(Context context) {
-        try {
-            ByteBuffer model = FileUtil.loadMappedFile(context, MODEL_FILE);
-            interpreter = new Interpreter(model);
+    // Direct buffers per batch size, reused across calls
+    private final Map<Integer, ByteBuffer> batchInputBuffers = new HashMap<>();
+    private final Map<Integer, ByteBuffer> batchOutputBuffers = new HashMap<>();
+    private final Map<Integer, FloatBuffer> batchInputFloats = new HashMap<>();
+    private final Map<Integer, FloatBuffer> batchOutputFloats = new HashMap<>();
+    private final boolean[] validFaces = new boolean[MAX_BATCH_SIZE];
+    private int interpreterBatchSize = 1;
+    private boolean batchingSupported = true;
 
-            // Initialize buffers
-            inputBuffer = ByteBuffer.allocateDirect(4 * INPUT_SIZE * INPUT_SIZE * 3);
-            inputBuffer.order(ByteOrder.nativeOrder());
+    private final YuvFaceConverter yuvConverter = new YuvFaceConverter(INPUT_SIZE);
+    private final FacePreprocessor preprocessor = new FacePreprocessor(INPUT_SIZE);
 
-            outputBuffer = ByteBuffer.allocateDirect(4 * EMBEDDING_SIZE).asFloatBuffer();
-            outputBuffer.order();
+    // Writes the preprocessed face at `index` into the input tensor, positioned at the
+    // face's slot; false if it is unusable
+    private interface FaceWriter {
+        boolean write(int index, FloatBuffer input);
+    }
 
-        } catch (IOException e) {
-            Log.e(TAG, "Error loading model", e);
+    // Instances are shared through FaceNetModelRegistry; the interpreter is built on first use
+    FaceNetModel(Context context, String modelFile, InterpreterConfig config) {
+        this.context = context.getApplicationContext();
+        this.modelFile = modelFile;
+        this.config = config;
+    }
+
+    String getModelFile() {
+        return modelFile;
+    }
+
+    InterpreterConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Load the interpreter and run one throwaway inference, so the first real
+     * frame does not pay for model mapping, tensor allocation and kernel setup
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        // Input contents do not matter here
+        if (runFaces(1, (index, input) -> true) != null) {
+            Log.d(TAG, "Warmed up " + modelFile + " in " + (System.nanoTime() - start) / 1000000 + " ms");
         }
     }
 
     public float[] getFaceEmbedding(Bitmap bitmap) {
-        if (interpreter == null) {
-            Log.e(TAG, "Model not loaded");
-            return null;
-        }
+        List<float[]> embeddings = runFaces(1, (index, input) -> writeBitmap(bitmap, input));
+        return embeddings != null ? embeddings.get(0) : null;
+    }
 
-        // Preprocess image
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, INPUT_SIZE, INPUT_SIZE, true);
-        convertBitmapToByteBuffer(resizedBitmap);
+    /**
+     * Get embeddings for several faces with one interpreter run per batch
+     * @param bitmaps Face crops, in any size
+     * @return Embeddings in the same order as {@code bitmaps}, or null if the model is not loaded
+     */
+    public List<float[]> getFaceEmbeddings(List<Bitmap> bitmaps) {
+        return runFaces(bitmaps.size(), (index, input) -> writeBitmap(bitmaps.get(index), input));
+    }
 
-        // Run inference
-        outputBuffer.rewind();
-        interpreter.run(inputBuffer, outputBuffer);
+    /**
+     * Embed one face straight from a YUV_420_888 camera frame, without creating a Bitmap
+     * @param bounds Face box in upright frame coordinates, as reported by ML Kit
+     * @return Embedding, or null if the box is outside the frame or the model is not loaded
+     */
+    public float[] getFaceEmbedding(ImageProxy imageProxy, Rect bounds) {
+        List<float[]> embeddings = getFaceEmbeddings(imageProxy, Collections.singletonList(bounds));
+        return embeddings != null ? embeddings.get(0) : null;
+    }
+
+    /**
+     * Embed several faces of one YUV_420_888 camera frame with batched interpreter runs
+     * @param boxes Face boxes in upright frame coordinates, as reported by ML Kit
+     * @return Embeddings in the same order as {@code boxes} (null entries for unusable boxes),
+     *         or null if the model is not loaded
+     */
+    public List<float[]> getFaceEmbeddings(ImageProxy imageProxy, List<Rect> boxes) {
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        ByteBuffer yPlane = planes[0].getBuffer();
+        ByteBuffer uPlane = planes[1].getBuffer();
+        ByteBuffer vPlane = planes[2].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        int rotation = imageProxy.getImageInfo().getRotationDegrees();
 
-        // Get output
-        float[] embedding = new float[EMBEDDING_SIZE];
-        outputBuffer.rewind();
-        outputBuffer.get(embedding);
+        return runFaces(boxes.size(), (index, input) -> {
+            Rect box = boxes.get(index);
+            return yuvConverter.convert(yPlane, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride,
+                    width, height, rotation, box.left, box.top, box.right, box.bottom, input);
+        });
+    }
 
-        return embedding;
+    /**
+     * Embed faces that were already preprocessed, e.g. cropped with {@link YuvFaceConverter}
+     * on another thread
+     * @param inputs Arrays of {@link #INPUT_LENGTH} normalized RGB floats
+     * @return Embeddings in the same order, or null if the model is not loaded
+     */
+    public List<float[]> getPreprocessedEmbeddings(List<float[]> inputs) {
+        return runFaces(inputs.size(), (index, input) -> {
+            input.put(inputs.get(index), 0, INPUT_LENGTH);
+            return true;
+        });
     }
 
-    private void convertBitmapToByteBuffer(Bitmap bitmap) {
-        if (inputBuffer == null) {
-            return;
+    private synchronized List<float[]> runFaces(int count, FaceWriter writer) {
+        if (!ensureLoaded()) {
+            Log.e(TAG, "Model not loaded");
+            return null;
         }
 
-        inputBuffer.rewind();
+        List<float[]> embeddings = new ArrayList<>(count);
+        int start = 0;
+        while (start < count) {
+            int batchSize = batchingSupported ? Math.min(MAX_BATCH_SIZE, count - start) : 1;
+            if (!resizeInterpreter(batchSize)) {
+                batchSize = 1;
+            }
+            ByteBuffer input = inputBufferFor(batchSize);
+            FloatBuffer inputFloats = batchInputFloats.get(batchSize);
+            ByteBuffer output = outputBufferFor(batchSize);
 
-        int[] intValues = new int[INPUT_SIZE * INPUT_SIZE];
-        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+            // Preprocess directly into the input tensor
+            for (int i = 0; i < batchSize; i++) {
+                inputFloats.position(i * INPUT_LENGTH);
+                validFaces[i] = writer.write(start + i, inputFloats);
+            }
+            input.rewind();
 
-        int pixel = 0;
-        for (int i = 0; i < INPUT_SIZE; ++i) {
-            for (int j = 0; j < INPUT_SIZE; ++j) {
-                final int val = intValues[pixel++];
+            // Run inference
+            output.rewind();
+            interpreter.run(input, output);
 
-                // Normalize pixel values to [-1, 1]
-                inputBuffer.putFloat(((val >> 16) & 0xFF) / 127.5f - 1.0f);
-                inputBuffer.putFloat(((val >> 8) & 0xFF) / 127.5f - 1.0f);
-                inputBuffer.putFloat((val & 0xFF) / 127.5f - 1.0f);
+            // Get output
+            FloatBuffer floats = batchOutputFloats.get(batchSize);
+            floats.rewind();
+            for (int i = 0; i < batchSize; i++) {
+                float[] embedding = new float[EMBEDDING_SIZE];
+                floats.get(embedding);
+                embeddings.add(validFaces[i] ? embedding : null);
             }
+            start += batchSize;
         }
+        return embeddings;
     }
 
-    public void close() {
+    private boolean ensureLoaded() {
         if (interpreter != null) {
-            interpreter.close();
-            interpreter = null;
+            return true;
+        }
+        if (closed || loadFailed) {
+            return false;
+        }
+        try {
+            ByteBuffer model = FileUtil.loadMappedFile(context, modelFile);
+            interpreter = new Interpreter(model, createOptions(config));
+
+            // Initialize buffers
+            inputBufferFor(1);
+            outputBufferFor(1);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading model", e);
+            loadFailed = true;
+            return false;
         }
     }
 
-    // Calculate cosine similarity between two embeddings
-    public static float calculateSimilarity(float[] embedding1, float[] embedding2) {
-        if (embedding1.length != embedding2.length) {
-            return 0f;
+    static Interpreter.Options createOptions(InterpreterConfig config) {
+        Interpreter.Options options = new Interpreter.Options();
+        if (config.getNumThreads() > 0) {
+            options.setNumThreads(config.getNumThreads());
+        }
+        options.setUseXNNPACK(config.useXnnpack());
+        options.setUseNNAPI(config.useNnapi());
+        return options;
+    }
+
+    private ByteBuffer inputBufferFor(int batchSize) {
+        ByteBuffer input = batchInputBuffers.get(batchSize);
+        if (input == null) {
+            input = ByteBuffer.allocateDirect(batchSize * FACE_INPUT_BYTES);
+            input.order(ByteOrder.nativeOrder());
+            batchInputBuffers.put(batchSize, input);
+            batchInputFloats.put(batchSize, input.asFloatBuffer());
         }
+        return input;
+    }
 
-        float dotProduct = 0f;
-        float norm1 = 0f;
-        float norm2 = 0f;
+    private ByteBuffer outputBufferFor(int batchSize) {
+        ByteBuffer output = batchOutputBuffers.get(batchSize);
+        if (output == null) {
+            output = ByteBuffer.allocateDirect(batchSize * 4 * EMBEDDING_SIZE);
+            output.order(ByteOrder.nativeOrder());
+            batchOutputBuffers.put(batchSize, output);
+            batchOutputFloats.put(batchSize, output.asFloatBuffer());
+        }
+        return output;
+    }
 
-        for (int i = 0; i < embedding1.length; i++) {
-            dotProduct += embedding1[i] * embedding2[i];
-            norm1 += embedding1[i] * embedding1[i];
-            norm2 += embedding2[i] * embedding2[i];
+    // Reshape the input tensor to the batch size; false if the model has a fixed batch
+    private boolean resizeInterpreter(int batchSize) {
+        if (batchSize == interpreterBatchSize) {
+            return true;
         }
+        try {
+            interpreter.resizeInput(0, new int[]{batchSize, INPUT_SIZE, INPUT_SIZE, 3});
+            interpreter.allocateTensors();
+            interpreterBatchSize = batchSize;
+            return true;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.w(TAG, "Model does not support batch size " + batchSize + ", falling back to single faces", e);
+            batchingSupported = false;
+            if (batchSize != 1) {
+                resizeInterpreter(1);
+            }
+            return false;
+        }
+    }
 
-        norm1 = (float) Math.sqrt(norm1);
-        norm2 = (float) Math.sqrt(norm2);
+    private boolean writeBitmap(Bitmap bitmap, FloatBuffer out) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = preprocessor.pixelBuffer(width * height);
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        preprocessor.preprocess(pixels, width, height, out);
+        return true;
+    }
 
-        if (norm1 == 0f || norm2 == 0f) {
-            return 0f;
+    // Called by FaceNetModelRegistry once the last reference is released
+    synchronized void close() {
+        closed = true;
+        if (interpreter != null) {
+            interpreter.close();
+            interpreter = null;
         }
+    }
 
-        return dotProduct / (norm1 * norm2);
+    // Calculate cosine similarity between two embeddings
+    public static float calculateSimilarity(float[] embedding1, float[] embedding2) {
+        return SimilarityKernels.cosine(embedding1, embedding2);
     }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide FaceNet models, one per model file and {@link InterpreterConfig},
+ * shared by every {@link FaceRecognitionHelper}. Each acquire must be paired with a release; the
+ * interpreter is closed when the last reference goes away.
+ *
+ * Call {@link #warmUp} early (e.g. from the launcher activity) so the model is loaded
+ * and has run once on a background thread before the camera screen opens. It starts
+ * with the configuration tuned on an earlier launch, or the default one; on first launch
+ * the device is tuned afterwards and the tuned model replaces the default one, which
+ * holders pick up through {@link #refresh}.
+ */
+public final class FaceNetModelRegistry {
+    private static final String TAG = "FaceNetModelRegistry";
+    private static final String PREFS_NAME = "face_recognition_prefs";
+    private static final String KEY_CONFIG_PREFIX = "interpreter_config_";
+    private static final int MAX_TUNING_THREADS = 4;
+
+    private static final Map<String, Entry> models = new HashMap<>();
+    private static final ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor();
+    // Model handed out by acquire(Context); warm-up keeps it loaded for the life of the process
+    private static FaceNetModel pinnedModel = null;
+
+    private FaceNetModelRegistry() {
+    }
+
+    /**
+     * Get the default model: the one warm-up loaded, or one with the default
+     * configuration if warm-up has not got that far yet
+     */
+    public static synchronized FaceNetModel acquire(Context context) {
+        FaceNetModel pinned = pinnedModel;
+        if (pinned != null) {
+            return acquire(context, pinned.getModelFile(), pinned.getConfig());
+        }
+        return acquire(context, FaceNetModel.DEFAULT_MODEL_FILE, InterpreterConfig.DEFAULT);
+    }
+
+    /**
+     * Trade a model from {@link #acquire(Context)} for the one warm-up has swapped in since
+     * @return The current default model; {@code held} is released if it was replaced, so a
+     *         thread still running it gets no embedding for that call
+     */
+    public static synchronized FaceNetModel refresh(FaceNetModel held) {
+        FaceNetModel pinned = pinnedModel;
+        if (pinned == null || pinned == held || !pinned.getModelFile().equals(held.getModelFile())) {
+            return held;
+        }
+        models.get(keyFor(pinned.getModelFile(), pinned.getConfig())).references++;
+        release(held);
+        return pinned;
+    }
+
+    /**
+     * Get the shared model for a file and configuration, creating it on first use
+     * @param modelFile tflite asset name
+     * @return Shared model; pass it to {@link #release} when done
+     */
+    public static synchronized FaceNetModel acquire(Context context, String modelFile, InterpreterConfig config) {
+        String key = keyFor(modelFile, config);
+        Entry entry = models.get(key);
+        if (entry == null) {
+            entry = new Entry(new FaceNetModel(context, modelFile, config));
+            models.put(key, entry);
+        }
+        entry.references++;
+        return entry.model;
+    }
+
+    public static synchronized void release(FaceNetModel model) {
+        String key = keyFor(model.getModelFile(), model.getConfig());
+        Entry entry = models.get(key);
+        if (entry == null || entry.model != model) {
+            Log.w(TAG, "Released a model that is not registered: " + model.getModelFile());
+            return;
+        }
+        if (--entry.references == 0) {
+            models.remove(key);
+            model.close();
+            Log.d(TAG, "Closed " + key);
+        }
+    }
+
+    /**
+     * On a background thread: load the default model with the configuration stored for
+     * this device, or the default one, and run one inference. If the device was never
+     * tuned, benchmark the candidates after that and swap in a warmed-up model with the
+     * fastest configuration. The current model stays loaded for the life of the process
+     * and is what {@link #acquire(Context)} returns.
+     */
+    public static void warmUp(Context context) {
+        Context appContext = context.getApplicationContext();
+        warmUpExecutor.execute(() -> {
+            try {
+                String modelFile = FaceNetModel.DEFAULT_MODEL_FILE;
+                ByteBuffer modelBuffer = FileUtil.loadMappedFile(appContext, modelFile);
+                String modelHash = InterpreterTuner.hash(modelBuffer);
+                InterpreterTuner tuner = tuner(appContext);
+                InterpreterConfig stored = tuner.getStored(modelHash);
+
+                FaceNetModel model = pinFirst(appContext, modelFile,
+                        stored != null ? stored : InterpreterConfig.DEFAULT);
+                model.warmUp();
+
+                InterpreterConfig tuned = stored != null ? stored : tune(tuner, modelHash, modelBuffer);
+                Log.d(TAG, "Interpreter config for " + modelFile + ": " + tuned);
+                if (!tuned.equals(model.getConfig())) {
+                    FaceNetModel tunedModel = acquire(appContext, modelFile, tuned);
+                    tunedModel.warmUp();
+                    pin(tunedModel);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Model warm-up failed", e);
+            }
+        });
+    }
+
+    // Pin the first model; a screen that acquired one before warm-up got here keeps sharing it
+    private static synchronized FaceNetModel pinFirst(Context context, String modelFile, InterpreterConfig config) {
+        if (models.containsKey(keyFor(modelFile, InterpreterConfig.DEFAULT))) {
+            config = InterpreterConfig.DEFAULT;
+        }
+        FaceNetModel model = acquire(context, modelFile, config);
+        pin(model);
+        return model;
+    }
+
+    private static synchronized void pin(FaceNetModel model) {
+        FaceNetModel previous = pinnedModel;
+        pinnedModel = model;
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    private static InterpreterTuner tuner(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return new InterpreterTuner(new InterpreterTuner.Store() {
+            @Override
+            public String get(String modelHash) {
+                return prefs.getString(KEY_CONFIG_PREFIX + modelHash, null);
+            }
+
+            @Override
+            public void put(String modelHash, String configKey) {
+                prefs.edit().putString(KEY_CONFIG_PREFIX + modelHash, configKey).apply();
+            }
+        });
+    }
+
+    // Benchmark the candidates for this device and store the fastest
+    private static InterpreterConfig tune(InterpreterTuner tuner, String modelHash, ByteBuffer model) {
+        int maxThreads = Math.min(MAX_TUNING_THREADS, Runtime.getRuntime().availableProcessors());
+        boolean allowNnapi = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1;
+        return tuner.tune(modelHash, InterpreterTuner.candidates(maxThreads, allowNnapi),
+                new InterpreterTuner.TfliteRunner(model));
+    }
+
+    static synchronized int getReferenceCount(String modelFile, InterpreterConfig config) {
+        Entry entry = models.get(keyFor(modelFile, config));
+        return entry != null ? entry.references : 0;
+    }
+
+    private static String keyFor(String modelFile, InterpreterConfig config) {
+        return modelFile + "|" + config.toKey();
+    }
+
+    private static class Entry {
+        private final FaceNetModel model;
+        private int references = 0;
+
+        Entry(FaceNetModel model) {
+            this.model = model;
+        }
+    }
+}
@@ -2,13 +2,12 @@ package com.mihir.alzheimerscaregiver.facerecognition;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.media.Image;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
@@ -36,7 +35,7 @@ import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.mihir.alzheimerscaregiver.R;
 
 import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -46,6 +45,13 @@ public class FaceRecognitionActivity extends AppCompatActivity {
     private static final String TAG = "FaceRecognitionActivity";
     private static final int REQUEST_CODE_PERMISSIONS = 1001;
     private static final String[] REQUIRED_PERMISSIONS = {Manifest.permission.CAMERA};
+    // Frames captured per enrollment; each one adds a sample to the person's profile
+    private static final int ENROLLMENT_FRAMES = 5;
+    // Head Euler angles are only reliable with landmark or classification mode on
+    private static final int LANDMARK_MODE = FaceDetectorOptions.LANDMARK_MODE_NONE;
+    private static final int CLASSIFICATION_MODE = FaceDetectorOptions.CLASSIFICATION_MODE_NONE;
+    private static final boolean HEAD_POSE_AVAILABLE = LANDMARK_MODE != FaceDetectorOptions.LANDMARK_MODE_NONE
+            || CLASSIFICATION_MODE != FaceDetectorOptions.CLASSIFICATION_MODE_NONE;
 
     private PreviewView previewView;
     private Button btnAddFace, btnRecognize, btnBack;
@@ -56,8 +62,22 @@ public class FaceRecognitionActivity extends AppCompatActivity {
     private FaceRecognitionHelper faceRecognitionHelper;
     private ExecutorService cameraExecutor;
 
-    private boolean isAddingFace = false;
-    private boolean isRecognizing = false;
+    private RecognitionPipeline recognitionPipeline;
+    private final FrameScheduler frameScheduler = new FrameScheduler();
+    // Where the detector runs on each frame, and the NV21 copy of that region; camera thread only
+    private final DetectionRegionPlanner regionPlanner = new DetectionRegionPlanner();
+    private byte[] regionBuffer = new byte[0];
+
+    // Set on the UI thread, read by detector callbacks on the camera thread
+    private volatile boolean isAddingFace = false;
+    private volatile boolean isRecognizing = false;
+    // Enrollment progress, only touched on the camera thread after being reset
+    private volatile int enrollmentFrames = 0;
+    // Embeddings of the capture burst, enrolled together once it is complete; camera thread only
+    private final List<float[]> enrollmentSamples = new ArrayList<>();
+
+    // Last decision per ML Kit tracking ID
+    private final FaceTrackCache<FaceRecognitionHelper.RecognitionResult> trackCache = new FaceTrackCache<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -70,6 +90,11 @@ public class FaceRecognitionActivity extends AppCompatActivity {
 
         faceRecognitionHelper = new FaceRecognitionHelper(this);
         cameraExecutor = Executors.newSingleThreadExecutor();
+        recognitionPipeline = new RecognitionPipeline(faceRecognitionHelper, trackCache, this::showRecognitionResults);
+        recognitionPipeline.setFrameScheduler(frameScheduler);
+        // Keep recognizing until each face's vote is decided instead of stopping after one frame
+        recognitionPipeline.setVoting(true);
+        recognitionPipeline.start();
 
         if (allPermissionsGranted()) {
             startCamera();
@@ -89,8 +114,8 @@ public class FaceRecognitionActivity extends AppCompatActivity {
     private void initFaceDetection() {
         FaceDetectorOptions options = new FaceDetectorOptions.Builder()
                 .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
-                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .setLandmarkMode(LANDMARK_MODE)
+                .setClassificationMode(CLASSIFICATION_MODE)
                 .setMinFaceSize(0.1f)
                 .build();
 
@@ -103,6 +128,7 @@ public class FaceRecognitionActivity extends AppCompatActivity {
         });
 
         btnRecognize.setOnClickListener(v -> {
+            recognitionPipeline.resetVotes();
             isRecognizing = true;
             isAddingFace = false;
             tvResult.setText("Recognizing face...");
@@ -122,6 +148,8 @@ public class FaceRecognitionActivity extends AppCompatActivity {
         builder.setPositiveButton("Add", (dialog, which) -> {
             String name = input.getText().toString().trim();
             if (!name.isEmpty()) {
+                currentPersonName = name;
+                enrollmentFrames = 0;
                 isAddingFace = true;
                 isRecognizing = false;
                 tvResult.setText("Position face in camera to add: " + name);
@@ -196,25 +224,86 @@ public class FaceRecognitionActivity extends AppCompatActivity {
     }
 
     private void analyzeFace(ImageProxy imageProxy) {
+        // Every frame follows the measured budget; registering a face embeds on each frame that runs
+        FrameScheduler.Action action = frameScheduler.onFrame(imageProxy.getImageInfo().getTimestamp());
+        if (action == FrameScheduler.Action.SKIP) {
+            imageProxy.close();
+            return;
+        }
+        boolean embed = action == FrameScheduler.Action.FULL || isAddingFace;
+
         @SuppressWarnings("UnsafeOptInUsageError")
         Image mediaImage = imageProxy.getImage();
         if (mediaImage != null) {
-            InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
-
+            int rotation = imageProxy.getImageInfo().getRotationDegrees();
+            boolean swapped = rotation == 90 || rotation == 270;
+            int uprightWidth = swapped ? imageProxy.getHeight() : imageProxy.getWidth();
+            int uprightHeight = swapped ? imageProxy.getWidth() : imageProxy.getHeight();
+            long detectStart = SystemClock.elapsedRealtimeNanos();
+
+            // While faces are tracked, only the area around them is searched
+            int[] region = regionPlanner.nextRegion(uprightWidth, uprightHeight);
+            InputImage image = region != null
+                    ? regionImage(imageProxy, rotation, region)
+                    : InputImage.fromMediaImage(mediaImage, rotation);
+
+            // Handle detections on the camera thread so cropping never blocks the UI
             faceDetector.process(image)
-                    .addOnSuccessListener(faces -> processFaces(faces, imageProxy))
-                    .addOnFailureListener(e -> {
+                    .addOnSuccessListener(cameraExecutor, faces -> {
+                        // Detection ends here; cropping and embedding are measured separately
+                        frameScheduler.recordDetection(SystemClock.elapsedRealtimeNanos() - detectStart);
+                        processFaces(faces, region, imageProxy, embed);
+                    })
+                    .addOnFailureListener(cameraExecutor, e -> {
                         Log.e(TAG, "Face detection failed", e);
                         imageProxy.close();
                     })
-                    .addOnCompleteListener(task -> imageProxy.close());
+                    .addOnCompleteListener(cameraExecutor, task -> imageProxy.close());
         } else {
             imageProxy.close();
         }
     }
 
-    private void processFaces(List<Face> faces, ImageProxy imageProxy) {
+    /**
+     * Copy a detection region of the frame into {@link #regionBuffer}. The buffer can be
+     * reused because the analyzer gets no new frame until this one is closed.
+     * @param region Upright frame coordinates from {@link DetectionRegionPlanner#nextRegion}
+     */
+    private InputImage regionImage(ImageProxy imageProxy, int rotation, int[] region) {
+        int[] sensor = YuvFaceConverter.toSensorRect(rotation, imageProxy.getWidth(), imageProxy.getHeight(),
+                region[0], region[1], region[2], region[3]);
+        int cropWidth = sensor[2] - sensor[0];
+        int cropHeight = sensor[3] - sensor[1];
+        int size = cropWidth * cropHeight * 3 / 2;
+        if (regionBuffer.length != size) {
+            regionBuffer = new byte[size];
+        }
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        YuvFaceConverter.cropNv21(planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                sensor[0], sensor[1], cropWidth, cropHeight, regionBuffer);
+        return InputImage.fromByteArray(regionBuffer, cropWidth, cropHeight, rotation, InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    /**
+     * @param region Region the faces were detected in, or null for the full frame
+     */
+    private void processFaces(List<Face> faces, int[] region, ImageProxy imageProxy, boolean embed) {
+        // Boxes in full-frame coordinates, with track IDs that survive region changes
+        List<Rect> faceBounds = new ArrayList<>(faces.size());
+        List<int[]> boxes = new ArrayList<>(faces.size());
+        for (Face face : faces) {
+            Rect bounds = new Rect(face.getBoundingBox());
+            if (region != null) {
+                bounds.offset(region[0], region[1]);
+            }
+            faceBounds.add(bounds);
+            boxes.add(new int[]{bounds.left, bounds.top, bounds.right, bounds.bottom});
+        }
+        int[] ids = regionPlanner.update(boxes);
+
         if (faces.isEmpty()) {
+            trackCache.clear();
             runOnUiThread(() -> {
                 if (isAddingFace || isRecognizing) {
                     tvResult.setText("No face detected. Please position your face in the camera.");
@@ -223,128 +312,118 @@ public class FaceRecognitionActivity extends AppCompatActivity {
             return;
         }
 
-        // Get the first face
-        Face face = faces.get(0);
-        Bitmap bitmap = imageProxyToBitmap(imageProxy);
-
-        if (bitmap != null) {
-            // Crop face from bitmap
-            Rect bounds = face.getBoundingBox();
-            Bitmap faceBitmap = cropFace(bitmap, bounds, imageProxy.getWidth(), imageProxy.getHeight());
-
-            if (isAddingFace && faceBitmap != null) {
-                handleAddFace(faceBitmap);
-            } else if (isRecognizing && faceBitmap != null) {
-                handleRecognizeFace(faceBitmap);
-            }
-        }
-    }
-
-    private Bitmap imageProxyToBitmap(ImageProxy imageProxy) {
-        try {
-            @SuppressWarnings("UnsafeOptInUsageError")
-            Image image = imageProxy.getImage();
-            if (image == null) return null;
-
-            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes);
-            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting ImageProxy to Bitmap", e);
-            return null;
+        // Detection-only frames just keep the tracker alive between embedding runs
+        if ((!isAddingFace && !isRecognizing) || !embed) {
+            return;
         }
-    }
 
-    private Bitmap cropFace(Bitmap bitmap, Rect bounds, int imageWidth, int imageHeight) {
-        try {
-            // Scale bounds to bitmap dimensions
-            float scaleX = (float) bitmap.getWidth() / imageWidth;
-            float scaleY = (float) bitmap.getHeight() / imageHeight;
-
-            int left = Math.max(0, (int) (bounds.left * scaleX));
-            int top = Math.max(0, (int) (bounds.top * scaleY));
-            int right = Math.min(bitmap.getWidth(), (int) (bounds.right * scaleX));
-            int bottom = Math.min(bitmap.getHeight(), (int) (bounds.bottom * scaleY));
-
-            int width = right - left;
-            int height = bottom - top;
-
-            if (width > 0 && height > 0) {
-                return Bitmap.createBitmap(bitmap, left, top, width, height);
+        if (isAddingFace) {
+            // Register only the first face, straight from the YUV planes
+            handleAddFace(imageProxy, faceBounds.get(0));
+        } else {
+            // Crop here and hand off; embedding and matching run on pipeline workers
+            List<Integer> trackIds = new ArrayList<>(faces.size());
+            List<float[]> headAngles = HEAD_POSE_AVAILABLE ? new ArrayList<>(faces.size()) : null;
+            for (int i = 0; i < faces.size(); i++) {
+                Face face = faces.get(i);
+                trackIds.add(ids[i]);
+                if (headAngles != null) {
+                    headAngles.add(new float[]{face.getHeadEulerAngleX(), face.getHeadEulerAngleY(),
+                            face.getHeadEulerAngleZ()});
+                }
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error cropping face", e);
+            recognitionPipeline.submit(imageProxy, faceBounds, trackIds, headAngles);
         }
-        return null;
     }
 
-    private void handleAddFace(Bitmap faceBitmap) {
-        // Get the name from the dialog (you'll need to store this)
-        // For now, we'll use a placeholder
-        String personName = getCurrentPersonName(); // Implement this method
+    private void handleAddFace(ImageProxy imageProxy, Rect faceBounds) {
+        // Name typed into the add-face dialog
+        String personName = getCurrentPersonName();
 
         if (personName != null && !personName.isEmpty()) {
-            boolean success = faceRecognitionHelper.registerFace(personName, faceBitmap);
+            if (enrollmentFrames == 0) {
+                enrollmentSamples.clear();
+            }
+            // Each frame adds a sample; the burst is enrolled at once, dropping outliers such as blurred frames
+            long embedStart = SystemClock.elapsedRealtimeNanos();
+            enrollmentSamples.add(faceRecognitionHelper.embedFace(imageProxy, faceBounds));
+            frameScheduler.recordEmbedding(SystemClock.elapsedRealtimeNanos() - embedStart);
+            int frames = ++enrollmentFrames;
+            boolean done = frames >= ENROLLMENT_FRAMES;
+            int accepted = 0;
+            if (done) {
+                // Stop here rather than on the UI thread so no extra frame slips in
+                isAddingFace = false;
+                accepted = faceRecognitionHelper.registerEmbeddings(personName, enrollmentSamples);
+                enrollmentSamples.clear();
+                if (accepted > 0) {
+                    // Cached "Unknown" decisions may now be stale
+                    trackCache.clear();
+                }
+            }
+            int kept = accepted;
 
             runOnUiThread(() -> {
-                if (success) {
-                    tvResult.setText("Face added successfully for " + personName);
+                if (!done) {
+                    tvResult.setText("Capturing " + personName + ": " + frames + "/" + ENROLLMENT_FRAMES
+                            + ". Turn your head slightly.");
+                } else if (kept > 0) {
+                    tvResult.setText("Face added successfully for " + personName
+                            + " (" + kept + " samples)");
                     Toast.makeText(this, "Face registered for " + personName, Toast.LENGTH_SHORT).show();
                 } else {
                     tvResult.setText("Failed to add face. Please try again.");
                 }
-                isAddingFace = false;
             });
         }
     }
 
-    private void handleRecognizeFace(Bitmap faceBitmap) {
-        FaceRecognitionHelper.RecognitionResult result = faceRecognitionHelper.recognizeFace(faceBitmap);
+    private void showRecognitionResults(List<FaceRecognitionHelper.RecognitionResult> results) {
+        StringBuilder text = new StringBuilder();
+        boolean pending = false;
+        for (FaceRecognitionHelper.RecognitionResult result : results) {
+            if (text.length() > 0) {
+                text.append("\n");
+            }
+            text.append(result.toString());
+            pending |= result.isPending();
+        }
+        if (pending) {
+            text.insert(0, "Recognizing face...\n");
+        }
 
+        boolean done = !pending;
         runOnUiThread(() -> {
-            tvResult.setText(result.toString());
-            isRecognizing = false;
+            tvResult.setText(text.toString());
+            // Undecided faces keep recognition running on the next frames
+            if (done) {
+                isRecognizing = false;
+                Log.d(TAG, "Recognition done: " + recognitionPipeline.getQualitySkipCount()
+                        + " low-quality faces skipped, "
+                        + String.format("%.1f", recognitionPipeline.getMeanFramesToDecision())
+                        + " frames per decision, detector saw "
+                        + String.format("%.0f%%", regionPlanner.getMeanScannedFraction() * 100)
+                        + " of each frame");
+            }
         });
     }
 
-    private String currentPersonName = "";
+    // Set on the UI thread, read by the analyzer while adding a face
+    private volatile String currentPersonName = "";
 
     private String getCurrentPersonName() {
         return currentPersonName;
     }
 
-    // Update the showAddFaceDialog method to store the name
-    private void showAddFaceDialogUpdated() {
-        AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setTitle("Add New Face");
-
-        final EditText input = new EditText(this);
-        input.setHint("Enter person's name");
-        builder.setView(input);
-
-        builder.setPositiveButton("Add", (dialog, which) -> {
-            String name = input.getText().toString().trim();
-            if (!name.isEmpty()) {
-                currentPersonName = name;
-                isAddingFace = true;
-                isRecognizing = false;
-                tvResult.setText("Position face in camera to add: " + name);
-            } else {
-                Toast.makeText(this, "Please enter a name", Toast.LENGTH_SHORT).show();
-            }
-        });
-
-        builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
-        builder.show();
-    }
-
     @Override
     protected void onDestroy() {
         super.onDestroy();
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
         }
+        if (recognitionPipeline != null) {
+            recognitionPipeline.shutdown();
+        }
         if (faceRecognitionHelper != null) {
             faceRecognitionHelper.close();
         }
@@ -1,134 +1,384 @@
 package com.mihir.alzheimerscaregiver.facerecognition;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 
-import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
+import androidx.camera.core.ImageProxy;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Android adapter over the pure-Java face core: turns Bitmaps and camera frames into
+ * embeddings with {@link TfliteEmbeddingBackend} and matches them against the shared
+ * {@link FaceGallery} from {@link FaceGalleryRegistry}. Holds one reference to each
+ * until {@link #close()}.
+ */
 public class FaceRecognitionHelper {
     private static final String TAG = "FaceRecognitionHelper";
-    private static final String PREFS_NAME = "face_recognition_prefs";
-    private static final String KEY_REGISTERED_FACES = "registered_faces";
     private static final float SIMILARITY_THRESHOLD = 0.75f;
+    // A best match this close to the runner-up is reported as ambiguous, not recognized
+    private static final float MIN_MARGIN = 0.05f;
+    private static final int TOP_K = 3;
 
     private Context context;
-    private static FaceNetModel faceNetModel;
-    private static HashMap<String, float[]> registeredFaces;
-    private static SharedPreferences sharedPreferences;
-    private static Gson gson;
+    private TfliteEmbeddingBackend backend;
+    private final FaceGallery gallery;
+    private boolean closed = false;
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     public FaceRecognitionHelper(Context context) {
         this.context = context;
-        this.faceNetModel = new FaceNetModel(context);
-        this.registeredFaces = new HashMap<>();
-        this.sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.gson = new Gson();
-        loadRegisteredFaces();
+        this.backend = new TfliteEmbeddingBackend(context);
+        this.gallery = FaceGalleryRegistry.acquire(context);
     }
 
+    /**
+     * Add one sample to a person's enrollment; calling again adds more samples instead of
+     * overwriting, so a bad frame is outvoted rather than permanent
+     * @return false if no embedding could be computed or the sample was rejected as an outlier
+     */
     public boolean registerFace(String personName, Bitmap faceBitmap) {
         try {
-            float[] embedding = faceNetModel.getFaceEmbedding(faceBitmap);
-            if (embedding != null) {
-                registeredFaces.put(personName, embedding);
-                saveRegisteredFaces();
-                Log.d(TAG, "Face registered successfully for " + personName);
-                return true;
-            }
+            return registerEmbedding(personName, backend.getModel().getFaceEmbedding(faceBitmap));
         } catch (Exception e) {
             Log.e(TAG, "Failed to register face for " + personName, e);
         }
         return false;
     }
 
-    public RecognitionResult recognizeFace(Bitmap faceBitmap) {
+    /**
+     * Embed a face straight from a camera frame, without decoding it to a Bitmap, e.g. to
+     * collect a capture burst for {@link #registerEmbeddings}
+     * @param faceBounds Face box from the detector, in upright frame coordinates
+     * @return Embedding, or null if none could be computed
+     */
+    public float[] embedFace(ImageProxy imageProxy, Rect faceBounds) {
         try {
-            if (registeredFaces.isEmpty()) {
-                return new RecognitionResult("No registered faces", 0f, false);
+            return backend.getModel().getFaceEmbedding(imageProxy, faceBounds);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to embed face", e);
+        }
+        return null;
+    }
+
+    /**
+     * Enroll a burst of crops of the same person with one batched model run
+     * @return Number of samples kept; outliers and failed crops are skipped
+     */
+    public int registerFaces(String personName, List<Bitmap> faceBitmaps) {
+        try {
+            List<float[]> computed = backend.getModel().getFaceEmbeddings(faceBitmaps);
+            return computed != null ? registerEmbeddings(personName, computed) : 0;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register faces for " + personName, e);
+        }
+        return 0;
+    }
+
+    /**
+     * Enroll a burst of embeddings of the same person with one gallery write
+     * @param embeddings Samples; null entries are skipped
+     * @return Number of samples kept; outliers are skipped
+     */
+    public int registerEmbeddings(String personName, List<float[]> embeddings) {
+        List<float[]> samples = new ArrayList<>(embeddings.size());
+        for (float[] embedding : embeddings) {
+            if (embedding != null) {
+                samples.add(embedding);
             }
+        }
+        try {
+            int accepted = samples.isEmpty() ? 0 : gallery.enroll(personName, samples);
+            Log.d(TAG, "Enrolled " + accepted + " of " + embeddings.size() + " samples for " + personName);
+            return accepted;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register faces for " + personName, e);
+        }
+        return 0;
+    }
+
+    private boolean registerEmbedding(String personName, float[] embedding) throws IOException {
+        if (embedding == null) {
+            return false;
+        }
+        if (!gallery.enroll(personName, embedding)) {
+            Log.d(TAG, "Rejected outlier sample for " + personName);
+            return false;
+        }
+        Log.d(TAG, "Face registered successfully for " + personName);
+        return true;
+    }
 
-            float[] currentEmbedding = faceNetModel.getFaceEmbedding(faceBitmap);
-            if (currentEmbedding == null) {
-                return new RecognitionResult("Failed to process face", 0f, false);
+    public RecognitionResult recognizeFace(Bitmap faceBitmap) {
+        try {
+            if (gallery.isEmpty()) {
+                return new RecognitionResult("No registered faces", 0f, false);
             }
 
-            String bestMatch = "Unknown";
-            float bestSimilarity = 0f;
+            float[] currentEmbedding = backend.getModel().getFaceEmbedding(faceBitmap);
+            return matchEmbedding(currentEmbedding);
 
-            for (Map.Entry<String, float[]> entry : registeredFaces.entrySet()) {
-                float similarity = FaceNetModel.calculateSimilarity(currentEmbedding, entry.getValue());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to recognize face", e);
+            return new RecognitionResult("Recognition failed", 0f, false);
+        }
+    }
 
-                if (similarity > bestSimilarity) {
-                    bestMatch = entry.getKey();
-                    bestSimilarity = similarity;
-                }
+    /**
+     * Recognize several faces from the same frame with one batched model run
+     * @param faceBitmaps Face crops
+     * @return One result per crop, in the same order
+     */
+    public List<RecognitionResult> recognizeFaces(List<Bitmap> faceBitmaps) {
+        try {
+            if (gallery.isEmpty()) {
+                return repeatResult("No registered faces", faceBitmaps.size());
             }
+            return matchEmbeddings(backend.getModel().getFaceEmbeddings(faceBitmaps), faceBitmaps.size());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to recognize faces", e);
+            return repeatResult("Recognition failed", faceBitmaps.size());
+        }
+    }
 
-            boolean isRecognized = bestSimilarity > SIMILARITY_THRESHOLD;
-            if (!isRecognized) {
-                bestMatch = "Unknown";
+    /**
+     * Recognize faces straight from a YUV camera frame, without decoding it to a Bitmap
+     * @param faceBounds Face boxes from the detector, in upright frame coordinates
+     * @return One result per box, in the same order
+     */
+    public List<RecognitionResult> recognizeFaces(ImageProxy imageProxy, List<Rect> faceBounds) {
+        try {
+            if (gallery.isEmpty()) {
+                return repeatResult("No registered faces", faceBounds.size());
             }
+            return matchEmbeddings(backend.getModel().getFaceEmbeddings(imageProxy, faceBounds), faceBounds.size());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to recognize faces", e);
+            return repeatResult("Recognition failed", faceBounds.size());
+        }
+    }
 
-            return new RecognitionResult(bestMatch, bestSimilarity, isRecognized);
+    /**
+     * Embed faces that were already cropped and preprocessed off the camera frame
+     * @param inputs Arrays of {@code FaceNetModel.INPUT_LENGTH} floats
+     * @return Embeddings in the same order, or null if the model is unavailable
+     */
+    public List<float[]> getPreprocessedEmbeddings(List<float[]> inputs) {
+        try {
+            return backend.embed(inputs);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to embed faces", e);
+            return null;
+        }
+    }
 
+    /**
+     * Match one embedding against the registered faces
+     */
+    public RecognitionResult matchFace(float[] embedding) {
+        try {
+            if (gallery.isEmpty()) {
+                return new RecognitionResult("No registered faces", 0f, false);
+            }
+            return matchEmbedding(embedding);
         } catch (Exception e) {
             Log.e(TAG, "Failed to recognize face", e);
             return new RecognitionResult("Recognition failed", 0f, false);
         }
     }
 
-    public static boolean deleteFace(String personName) {
-        if (registeredFaces.containsKey(personName)) {
-            registeredFaces.remove(personName);
-            saveRegisteredFaces();
-            return true;
+    private List<RecognitionResult> matchEmbeddings(List<float[]> embeddings, int count) {
+        List<RecognitionResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(matchEmbedding(embeddings != null ? embeddings.get(i) : null));
         }
-        return false;
+        return results;
     }
 
-    public static String[] getRegisteredFaceNames() {
-        return registeredFaces.keySet().toArray(new String[0]);
+    private static List<RecognitionResult> repeatResult(String message, int count) {
+        List<RecognitionResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new RecognitionResult(message, 0f, false));
+        }
+        return results;
     }
 
-    public int getRegisteredFaceCount() {
-        return registeredFaces.size();
+    private RecognitionResult matchEmbedding(float[] currentEmbedding) {
+        if (currentEmbedding == null) {
+            return new RecognitionResult("Failed to process face", 0f, false);
+        }
+
+        // Faces that cannot clear the threshold are abandoned part-way through the scan,
+        // so "Unknown" comes without a similarity. The search reaches MIN_MARGIN below the
+        // threshold so a runner-up close to an accepted match is still seen.
+        TopMatches candidates = gallery.findTopK(currentEmbedding, TOP_K, SIMILARITY_THRESHOLD - MIN_MARGIN);
+        if (candidates.isEmpty()) {
+            return new RecognitionResult("Unknown", 0f, false, currentEmbedding);
+        }
+        if (candidates.getSimilarity(0) <= SIMILARITY_THRESHOLD) {
+            // Near misses still count as evidence for a TemporalVoter
+            return new RecognitionResult("Unknown", 0f, false, currentEmbedding, candidates);
+        }
+        boolean clear = candidates.getMargin() >= MIN_MARGIN;
+        return new RecognitionResult(candidates.getName(0), candidates.getSimilarity(0), clear,
+                currentEmbedding, candidates);
     }
 
-    private static void saveRegisteredFaces() {
+    /**
+     * Start a multi-frame vote over {@link RecognitionResult#getCandidates()} of one face,
+     * with the same threshold and search floor as single-frame matching
+     */
+    public TemporalVoter newVoter() {
+        return new TemporalVoter(SIMILARITY_THRESHOLD, SIMILARITY_THRESHOLD - MIN_MARGIN);
+    }
+
+    /**
+     * The best registered matches for a face, for showing caregivers the alternatives
+     * @return Up to {@code k} matches best first, or null if the face could not be embedded
+     */
+    public TopMatches findTopMatches(Bitmap faceBitmap, int k) {
         try {
-            String json = gson.toJson(registeredFaces);
-            sharedPreferences.edit().putString(KEY_REGISTERED_FACES, json).apply();
-            Log.d(TAG, "Registered faces saved successfully");
+            float[] embedding = backend.getModel().getFaceEmbedding(faceBitmap);
+            return embedding != null ? gallery.findTopK(embedding, k) : null;
         } catch (Exception e) {
-            Log.e(TAG, "Failed to save registered faces", e);
+            Log.e(TAG, "Failed to rank face", e);
+            return null;
         }
     }
 
-    private void loadRegisteredFaces() {
+    /**
+     * How much of the gallery scan threshold search skipped, or null for non-exact indexes
+     */
+    public EmbeddingMatrix.PruningStats getPruningStats() {
+        return gallery.getPruningStats();
+    }
+
+    public boolean deleteFace(String personName) {
         try {
-            String json = sharedPreferences.getString(KEY_REGISTERED_FACES, "{}");
-            Type type = new TypeToken<HashMap<String, float[]>>(){}.getType();
-            HashMap<String, float[]> loaded = gson.fromJson(json, type);
+            return gallery.remove(personName);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to delete face for " + personName, e);
+            return false;
+        }
+    }
 
-            if (loaded != null) {
-                registeredFaces = loaded;
-                Log.d(TAG, "Loaded " + registeredFaces.size() + " registered faces");
+    /**
+     * Start a batch of gallery changes that is persisted once on {@link Transaction#commit}
+     * @return New empty transaction
+     */
+    public Transaction beginTransaction() {
+        return new Transaction(gallery);
+    }
+
+    /**
+     * Remove every registered face in a single persisted step, off the main thread
+     * @param callback Called on the main thread when done, may be null
+     */
+    public void clear(TransactionCallback callback) {
+        beginTransaction().clear().commit(callback);
+    }
+
+    /**
+     * Choose how the in-memory gallery is stored; see {@link FaceGalleryRegistry#setCompressionMode}
+     */
+    public static void setCompressionMode(Context context, FaceGallery.CompressionMode mode) {
+        FaceGalleryRegistry.setCompressionMode(context, mode);
+    }
+
+    public String[] getRegisteredFaceNames() {
+        return gallery.getNames();
+    }
+
+    public int getRegisteredFaceCount() {
+        return gallery.size();
+    }
+
+    // Runs on the gallery's persistence executor, so it completes before the gallery is closed
+    private static void commitTransaction(FaceGallery gallery, List<GalleryJournal.Entry> entries,
+                                          TransactionCallback callback) {
+        FaceGalleryRegistry.getPersistenceExecutor().execute(() -> {
+            boolean success = false;
+            try {
+                gallery.apply(entries);
+                success = true;
+                Log.d(TAG, "Committed " + entries.size() + " gallery changes");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to commit gallery changes", e);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to load registered faces", e);
-            registeredFaces = new HashMap<>();
+
+            if (callback != null) {
+                final boolean result = success;
+                mainHandler.post(() -> callback.onComplete(result));
+            }
+        });
+    }
+
+    /**
+     * Release this helper's references to the shared model and gallery
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
         }
+        closed = true;
+        backend.close();
+        FaceGalleryRegistry.release(gallery);
+    }
+
+    public interface TransactionCallback {
+        void onComplete(boolean success);
     }
 
-    public static void close() {
-        if (faceNetModel != null) {
-            faceNetModel.close();
+    // Batch of gallery changes, persisted with one journal write on commit
+    public static class Transaction {
+        private final FaceGallery gallery;
+        private final List<GalleryJournal.Entry> entries = new ArrayList<>();
+        private boolean committed = false;
+
+        private Transaction(FaceGallery gallery) {
+            this.gallery = gallery;
+        }
+
+        public Transaction put(String personName, float[] embedding) {
+            checkOpen();
+            entries.add(GalleryJournal.Entry.put(personName, embedding));
+            return this;
+        }
+
+        public Transaction remove(String personName) {
+            checkOpen();
+            entries.add(GalleryJournal.Entry.delete(personName));
+            return this;
+        }
+
+        public Transaction clear() {
+            checkOpen();
+            // Earlier changes in this batch are wiped out anyway
+            entries.clear();
+            entries.add(GalleryJournal.Entry.clear());
+            return this;
+        }
+
+        /**
+         * Persist and apply all changes on a background thread
+         * @param callback Called on the main thread when done, may be null
+         */
+        public void commit(TransactionCallback callback) {
+            checkOpen();
+            committed = true;
+            commitTransaction(gallery, entries, callback);
+        }
+
+        private void checkOpen() {
+            if (committed) {
+                throw new IllegalStateException("Transaction already committed");
+            }
         }
     }
 
@@ -137,20 +387,58 @@ public class FaceRecognitionHelper {
         private String name;
         private float confidence;
         private boolean isRecognized;
+        private float[] embedding;
+        private TopMatches candidates;
+        private boolean pending;
 
         public RecognitionResult(String name, float confidence, boolean isRecognized) {
+            this(name, confidence, isRecognized, null);
+        }
+
+        public RecognitionResult(String name, float confidence, boolean isRecognized, float[] embedding) {
+            this(name, confidence, isRecognized, embedding, null);
+        }
+
+        public RecognitionResult(String name, float confidence, boolean isRecognized, float[] embedding,
+                                 TopMatches candidates) {
+            this(name, confidence, isRecognized, embedding, candidates, false);
+        }
+
+        public RecognitionResult(String name, float confidence, boolean isRecognized, float[] embedding,
+                                 TopMatches candidates, boolean pending) {
             this.name = name;
             this.confidence = confidence;
             this.isRecognized = isRecognized;
+            this.embedding = embedding;
+            this.candidates = candidates;
+            this.pending = pending;
         }
 
         public String getName() { return name; }
         public float getConfidence() { return confidence; }
         public boolean isRecognized() { return isRecognized; }
+        // Embedding the decision was made from, or null if the face could not be embedded
+        public float[] getEmbedding() { return embedding; }
+        // Best matches above the search floor, or null if no registered face came close
+        public TopMatches getCandidates() { return candidates; }
+        // Current best guess of a multi-frame vote that needs more frames
+        public boolean isPending() { return pending; }
+
+        /**
+         * True if the best match cleared the threshold but the runner-up was too close to call
+         */
+        public boolean isAmbiguous() {
+            return !isRecognized && confidence > 0f && candidates != null && candidates.size() > 1;
+        }
 
         @Override
         public String toString() {
-            return name + " (" + String.format("%.2f", confidence * 100) + "%)";
+            String text = name + " (" + String.format("%.2f", confidence * 100) + "%)";
+            if (isAmbiguous()) {
+                text += " or " + candidates.getName(1)
+                        + " (" + String.format("%.2f", candidates.getSimilarity(1) * 100) + "%)?";
+            }
+            return text;
         }
     }
 }
\ No newline at end of file
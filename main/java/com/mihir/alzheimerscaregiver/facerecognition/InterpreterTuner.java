@@ -0,0 +1,170 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One-time calibration of {@link InterpreterConfig} for a model on this device.
+ *
+ * Candidate configurations (thread counts, XNNPACK on/off, NNAPI where allowed) are
+ * benchmarked on a synthetic 112x112 input; the fastest is stored under the model's
+ * hash and reused on later launches. Candidates that fail to build or run are skipped,
+ * and if none work the tuner settles on a plain single-threaded CPU configuration,
+ * so it also runs on a desktop JVM without any delegate support.
+ */
+public class InterpreterTuner {
+    public static final InterpreterConfig CPU_FALLBACK = new InterpreterConfig(1, false, false);
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 10;
+
+    /**
+     * Times a configuration; throws if the configuration cannot be used on this device
+     */
+    public interface Runner {
+        /**
+         * @return Median latency of one inference, in nanoseconds
+         */
+        long benchmark(InterpreterConfig config, int warmupRuns, int timedRuns) throws Exception;
+    }
+
+    /**
+     * Persists the chosen configuration key per model hash
+     */
+    public interface Store {
+        String get(String modelHash);
+
+        void put(String modelHash, String configKey);
+    }
+
+    private final Store store;
+
+    public InterpreterTuner(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * Candidate configurations for a device
+     * @param maxThreads Highest thread count to try
+     * @param allowNnapi Whether the NNAPI delegate may be tried
+     */
+    public static List<InterpreterConfig> candidates(int maxThreads, boolean allowNnapi) {
+        List<InterpreterConfig> configs = new ArrayList<>();
+        for (int threads = 1; threads <= Math.max(1, maxThreads); threads++) {
+            configs.add(new InterpreterConfig(threads, true, false));
+            configs.add(new InterpreterConfig(threads, false, false));
+        }
+        if (allowNnapi) {
+            configs.add(new InterpreterConfig(1, false, true));
+        }
+        return configs;
+    }
+
+    /**
+     * Return the stored configuration for the model, or benchmark the candidates and store the fastest
+     * @param modelHash Identifies the model, e.g. from {@link #hash(ByteBuffer)}
+     */
+    public InterpreterConfig tune(String modelHash, List<InterpreterConfig> candidates, Runner runner) {
+        InterpreterConfig stored = getStored(modelHash);
+        if (stored != null) {
+            return stored;
+        }
+
+        InterpreterConfig best = null;
+        long bestNanos = Long.MAX_VALUE;
+        for (InterpreterConfig candidate : candidates) {
+            try {
+                long nanos = runner.benchmark(candidate, WARMUP_RUNS, TIMED_RUNS);
+                if (nanos < bestNanos) {
+                    bestNanos = nanos;
+                    best = candidate;
+                }
+            } catch (Exception | LinkageError e) {
+                // Delegate missing or unsupported on this device
+            }
+        }
+        if (best == null) {
+            best = CPU_FALLBACK;
+        }
+        store.put(modelHash, best.toKey());
+        return best;
+    }
+
+    /**
+     * @return Configuration chosen on an earlier launch, or null if the model was never tuned
+     */
+    public InterpreterConfig getStored(String modelHash) {
+        return InterpreterConfig.fromKey(store.get(modelHash));
+    }
+
+    /**
+     * Hex SHA-256 prefix of the model bytes; the buffer's position is left unchanged
+     */
+    public static String hash(ByteBuffer model) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.duplicate());
+            byte[] bytes = digest.digest();
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", bytes[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Benchmarks configurations with real TFLite interpreters on a synthetic face input
+     */
+    public static class TfliteRunner implements Runner {
+        private final ByteBuffer model;
+        private final ByteBuffer input;
+        private final ByteBuffer output;
+
+        public TfliteRunner(ByteBuffer model) {
+            this.model = model;
+            this.input = ByteBuffer.allocateDirect(4 * FaceNetModel.INPUT_LENGTH).order(ByteOrder.nativeOrder());
+            this.output = ByteBuffer.allocateDirect(4 * FaceNetModel.EMBEDDING_SIZE).order(ByteOrder.nativeOrder());
+
+            Random random = new Random(112);
+            for (int i = 0; i < FaceNetModel.INPUT_LENGTH; i++) {
+                input.putFloat(random.nextFloat() * 2f - 1f);
+            }
+        }
+
+        @Override
+        public long benchmark(InterpreterConfig config, int warmupRuns, int timedRuns) {
+            Interpreter interpreter = new Interpreter(model, FaceNetModel.createOptions(config));
+            try {
+                for (int i = 0; i < warmupRuns; i++) {
+                    runOnce(interpreter);
+                }
+                long[] times = new long[timedRuns];
+                for (int i = 0; i < timedRuns; i++) {
+                    long start = System.nanoTime();
+                    runOnce(interpreter);
+                    times[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(times);
+                return times[timedRuns / 2];
+            } finally {
+                interpreter.close();
+            }
+        }
+
+        private void runOnce(Interpreter interpreter) {
+            input.rewind();
+            output.rewind();
+            interpreter.run(input, output);
+        }
+    }
+}
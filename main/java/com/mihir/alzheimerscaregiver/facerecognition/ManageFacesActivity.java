@@ -157,22 +157,22 @@ public class ManageFacesActivity extends AppCompatActivity {
                 "You will need to re-register all faces after this action.");
 
         builder.setPositiveButton("Clear All", (dialog, which) -> {
-            String[] faceNames = faceRecognitionHelper.getRegisteredFaceNames();
-            int deletedCount = 0;
+            btnClearAll.setEnabled(false);
 
-            for (String name : faceNames) {
-                if (faceRecognitionHelper.deleteFace(name)) {
-                    deletedCount++;
+            // Single batched delete, persisted off the UI thread
+            faceRecognitionHelper.clear(success -> {
+                if (isFinishing() || isDestroyed()) {
+                    return;
                 }
-            }
 
-            if (deletedCount == faceNames.length) {
-                Toast.makeText(this, "All " + deletedCount + " faces deleted successfully", Toast.LENGTH_LONG).show();
-            } else {
-                Toast.makeText(this, "Deleted " + deletedCount + " out of " + faceNames.length + " faces", Toast.LENGTH_LONG).show();
-            }
+                if (success) {
+                    Toast.makeText(this, "All " + faceCount + " faces deleted successfully", Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(this, "Failed to delete faces", Toast.LENGTH_LONG).show();
+                }
 
-            loadFaces(); // Refresh list
+                loadFaces(); // Refresh list
+            });
         });
 
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
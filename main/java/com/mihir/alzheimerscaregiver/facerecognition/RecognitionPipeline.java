@@ -0,0 +1,452 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged detect -> crop -> embed -> match recognition.
+ *
+ * The detection callback calls {@link #submit}, which reuses cached decisions for
+ * tracked faces, drops faces that fail the {@link FaceQualityScorer} gate without
+ * embedding them, crops the remaining faces out of the YUV frame into pooled float
+ * arrays and returns, so the camera frame can be closed right away. Embedding and
+ * gallery matching each run on their own worker, connected by bounded queues that
+ * drop the oldest frame when full: a slow embedding stage always works on the
+ * freshest faces instead of building up latency.
+ *
+ * With {@link #setVoting} on, each tracked face gets a {@link TemporalVoter} on the
+ * match worker: results stay pending, and the face keeps being embedded, until the
+ * vote is decided. Faces the quality gate drops still count toward their track's frame
+ * cap, as abstaining votes. Only decided results go into the track cache.
+ */
+public class RecognitionPipeline {
+    private static final String TAG = "RecognitionPipeline";
+    public static final int DEFAULT_EMBED_QUEUE_CAPACITY = 2;
+    public static final int DEFAULT_MATCH_QUEUE_CAPACITY = 4;
+
+    public interface ResultListener {
+        /**
+         * Called on the match worker with one result per submitted face, in order
+         */
+        void onResults(List<FaceRecognitionHelper.RecognitionResult> results);
+    }
+
+    private final FaceRecognitionHelper faceRecognitionHelper;
+    private final FaceTrackCache<FaceRecognitionHelper.RecognitionResult> trackCache;
+    private final ResultListener listener;
+    private final YuvFaceConverter yuvConverter = new YuvFaceConverter(FaceNetModel.INPUT_SIZE);
+    private final FaceQualityScorer qualityScorer = new FaceQualityScorer();
+    private final AtomicLong qualitySkips = new AtomicLong();
+    private final ConcurrentLinkedQueue<float[]> inputPool = new ConcurrentLinkedQueue<>();
+
+    private final DropOldestQueue<FrameJob> embedQueue;
+    private final DropOldestQueue<FrameJob> matchQueue;
+    private final ExecutorService embedExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService matchExecutor = Executors.newSingleThreadExecutor();
+    private volatile FrameScheduler frameScheduler;
+
+    // Votes in progress per tracking ID, only touched on the match worker
+    private final Map<Integer, TemporalVoter> voters = new HashMap<>();
+    private volatile boolean voting = false;
+    private final AtomicBoolean votesReset = new AtomicBoolean();
+    private final AtomicLong decisions = new AtomicLong();
+    private final AtomicLong decisionFrames = new AtomicLong();
+
+    public RecognitionPipeline(FaceRecognitionHelper faceRecognitionHelper,
+                               FaceTrackCache<FaceRecognitionHelper.RecognitionResult> trackCache,
+                               ResultListener listener) {
+        this(faceRecognitionHelper, trackCache, listener,
+                DEFAULT_EMBED_QUEUE_CAPACITY, DEFAULT_MATCH_QUEUE_CAPACITY);
+    }
+
+    public RecognitionPipeline(FaceRecognitionHelper faceRecognitionHelper,
+                               FaceTrackCache<FaceRecognitionHelper.RecognitionResult> trackCache,
+                               ResultListener listener, int embedQueueCapacity, int matchQueueCapacity) {
+        this.faceRecognitionHelper = faceRecognitionHelper;
+        this.trackCache = trackCache;
+        this.listener = listener;
+        this.embedQueue = new DropOldestQueue<>(embedQueueCapacity);
+        this.matchQueue = new DropOldestQueue<>(matchQueueCapacity);
+    }
+
+    /**
+     * Report embedding latency to a scheduler, or stop reporting with null
+     */
+    public void setFrameScheduler(FrameScheduler frameScheduler) {
+        this.frameScheduler = frameScheduler;
+    }
+
+    /**
+     * Decide tracked faces over several frames instead of from each frame on its own
+     */
+    public void setVoting(boolean voting) {
+        this.voting = voting;
+        votesReset.set(true);
+    }
+
+    /**
+     * Drop votes in progress, e.g. when the user starts a new recognition
+     */
+    public void resetVotes() {
+        votesReset.set(true);
+    }
+
+    /**
+     * Votes decided so far, including unknown and inconclusive ones
+     */
+    public long getDecisionCount() {
+        return decisions.get();
+    }
+
+    /**
+     * Mean frames per decided vote, including abstaining ones
+     */
+    public double getMeanFramesToDecision() {
+        long count = decisions.get();
+        return count == 0 ? 0 : decisionFrames.get() / (double) count;
+    }
+
+    public void start() {
+        embedExecutor.execute(this::runEmbedStage);
+        matchExecutor.execute(this::runMatchStage);
+    }
+
+    public void shutdown() {
+        embedQueue.close();
+        matchQueue.close();
+        embedExecutor.shutdownNow();
+        matchExecutor.shutdownNow();
+    }
+
+    /**
+     * Detection stage: resolve cached faces and crop the rest out of the frame.
+     * Does not keep any reference to {@code imageProxy}, so the caller may close it
+     * as soon as this returns.
+     * @param faceBounds Face boxes in upright frame coordinates
+     * @param trackIds Detector tracking ID per face, or null entries for untracked faces
+     */
+    public void submit(ImageProxy imageProxy, List<Rect> faceBounds, List<Integer> trackIds) {
+        submit(imageProxy, faceBounds, trackIds, null);
+    }
+
+    /**
+     * Detection stage with head pose for the quality gate
+     * @param headAngles Euler angles {x, y, z} in degrees per face, or null if the detector
+     *                   does not report them
+     */
+    public void submit(ImageProxy imageProxy, List<Rect> faceBounds, List<Integer> trackIds,
+                       List<float[]> headAngles) {
+        long now = SystemClock.elapsedRealtime();
+        FrameJob job = new FrameJob(faceBounds.size(), now);
+        Set<Integer> visibleTracks = new HashSet<>();
+
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        ByteBuffer yPlane = planes[0].getBuffer();
+        ByteBuffer uPlane = planes[1].getBuffer();
+        ByteBuffer vPlane = planes[2].getBuffer();
+        int rotation = imageProxy.getImageInfo().getRotationDegrees();
+
+        for (int i = 0; i < faceBounds.size(); i++) {
+            Rect bounds = faceBounds.get(i);
+            Integer trackId = trackIds.get(i);
+            job.trackIds[i] = trackId;
+            job.bounds[i] = bounds;
+
+            // Reuse decisions for tracked faces that have barely moved
+            if (trackId != null) {
+                visibleTracks.add(trackId);
+                job.results[i] = trackCache.get(trackId, bounds.left, bounds.top, bounds.right, bounds.bottom, now);
+                if (job.results[i] != null) {
+                    continue;
+                }
+            }
+
+            // Blurred, tiny or turned faces would only produce a misleading embedding
+            float[] angles = headAngles != null ? headAngles.get(i) : null;
+            float quality = qualityScorer.score(yPlane, planes[0].getRowStride(),
+                    imageProxy.getWidth(), imageProxy.getHeight(), rotation,
+                    bounds.left, bounds.top, bounds.right, bounds.bottom,
+                    angles != null ? angles[0] : Float.NaN,
+                    angles != null ? angles[1] : Float.NaN,
+                    angles != null ? angles[2] : Float.NaN);
+            if (!qualityScorer.isUsable(quality)) {
+                qualitySkips.incrementAndGet();
+                job.gated.add(i);
+                // While voting, a poor frame only delays the decision
+                job.results[i] = new FaceRecognitionHelper.RecognitionResult("Face not clear, hold still",
+                        0f, false, null, null, voting);
+                continue;
+            }
+
+            float[] input = obtainInput();
+            boolean cropped = yuvConverter.convert(yPlane, planes[0].getRowStride(),
+                    uPlane, vPlane, planes[1].getRowStride(), planes[1].getPixelStride(),
+                    imageProxy.getWidth(), imageProxy.getHeight(), rotation,
+                    bounds.left, bounds.top, bounds.right, bounds.bottom, FloatBuffer.wrap(input));
+            if (cropped) {
+                job.pending.add(i);
+                job.inputs.add(input);
+            } else {
+                inputPool.offer(input);
+                job.results[i] = new FaceRecognitionHelper.RecognitionResult("Failed to process face", 0f, false);
+            }
+        }
+        trackCache.retainAll(visibleTracks);
+
+        FrameJob dropped = embedQueue.offer(job);
+        if (dropped != null) {
+            recycleInputs(dropped);
+        }
+    }
+
+    /**
+     * Faces that failed the quality gate, i.e. embedding runs saved
+     */
+    public long getQualitySkipCount() {
+        return qualitySkips.get();
+    }
+
+    /**
+     * Frames waiting for the embedding stage
+     */
+    public int getEmbedQueueDepth() {
+        return embedQueue.size();
+    }
+
+    /**
+     * Embedded frames waiting for gallery matching
+     */
+    public int getMatchQueueDepth() {
+        return matchQueue.size();
+    }
+
+    public long getEmbedDropCount() {
+        return embedQueue.getDropCount();
+    }
+
+    public long getMatchDropCount() {
+        return matchQueue.getDropCount();
+    }
+
+    private void runEmbedStage() {
+        try {
+            while (true) {
+                FrameJob job = embedQueue.take();
+                if (!job.inputs.isEmpty()) {
+                    long start = System.nanoTime();
+                    job.embeddings = faceRecognitionHelper.getPreprocessedEmbeddings(job.inputs);
+                    FrameScheduler scheduler = frameScheduler;
+                    if (scheduler != null) {
+                        scheduler.recordEmbedding(System.nanoTime() - start);
+                    }
+                }
+                recycleInputs(job);
+                matchQueue.offer(job);
+            }
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Embed stage stopped");
+        }
+    }
+
+    private void runMatchStage() {
+        try {
+            while (true) {
+                FrameJob job = matchQueue.take();
+                boolean vote = voting;
+                if (votesReset.getAndSet(false)) {
+                    voters.clear();
+                }
+                for (int j = 0; j < job.pending.size(); j++) {
+                    int i = job.pending.get(j);
+                    float[] embedding = job.embeddings != null ? job.embeddings.get(j) : null;
+                    FaceRecognitionHelper.RecognitionResult result = faceRecognitionHelper.matchFace(embedding);
+
+                    Integer trackId = job.trackIds[i];
+                    if (vote && trackId != null && result.getEmbedding() != null) {
+                        result = vote(trackId, result);
+                    }
+                    job.results[i] = result;
+
+                    if (trackId != null && result.getEmbedding() != null && !result.isPending()) {
+                        Rect bounds = job.bounds[i];
+                        trackCache.put(trackId, bounds.left, bounds.top, bounds.right, bounds.bottom,
+                                result.getEmbedding(), result, job.timestampMs);
+                    }
+                }
+                for (int i : job.gated) {
+                    Integer trackId = job.trackIds[i];
+                    if (vote && trackId != null) {
+                        job.results[i] = abstain(trackId, job.results[i]);
+                    }
+                }
+                if (vote) {
+                    voters.keySet().retainAll(Arrays.asList(job.trackIds));
+                }
+                listener.onResults(Arrays.asList(job.results));
+            }
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Match stage stopped");
+        }
+    }
+
+    // Add one frame's result to the track's vote and report where the vote stands
+    private FaceRecognitionHelper.RecognitionResult vote(int trackId, FaceRecognitionHelper.RecognitionResult result) {
+        TemporalVoter voter = voterFor(trackId);
+        TemporalVoter.Outcome outcome = voter.offer(result.getCandidates());
+        if (outcome == TemporalVoter.Outcome.PENDING) {
+            return new FaceRecognitionHelper.RecognitionResult(result.getName(), result.getConfidence(), false,
+                    result.getEmbedding(), result.getCandidates(), true);
+        }
+
+        recordDecision(trackId, voter, outcome);
+        switch (outcome) {
+            case RECOGNIZED:
+                return new FaceRecognitionHelper.RecognitionResult(voter.getName(), voter.getSimilarity(), true,
+                        result.getEmbedding(), result.getCandidates());
+            case UNKNOWN:
+                return new FaceRecognitionHelper.RecognitionResult("Unknown", 0f, false, result.getEmbedding());
+            default:
+                // Out of frames: report this frame's best guess without accepting it
+                return new FaceRecognitionHelper.RecognitionResult(result.getName(), result.getConfidence(), false,
+                        result.getEmbedding(), result.getCandidates());
+        }
+    }
+
+    // Count a quality-gated frame toward the track's vote; with no embedding, a vote that
+    // runs out of frames this way reports an unknown face
+    private FaceRecognitionHelper.RecognitionResult abstain(int trackId, FaceRecognitionHelper.RecognitionResult gated) {
+        TemporalVoter voter = voterFor(trackId);
+        TemporalVoter.Outcome outcome = voter.abstain();
+        if (outcome == TemporalVoter.Outcome.PENDING) {
+            return gated;
+        }
+
+        recordDecision(trackId, voter, outcome);
+        if (outcome == TemporalVoter.Outcome.RECOGNIZED) {
+            return new FaceRecognitionHelper.RecognitionResult(voter.getName(), voter.getSimilarity(), true);
+        }
+        return new FaceRecognitionHelper.RecognitionResult("Unknown", 0f, false);
+    }
+
+    private TemporalVoter voterFor(int trackId) {
+        TemporalVoter voter = voters.get(trackId);
+        if (voter == null) {
+            voter = faceRecognitionHelper.newVoter();
+            voters.put(trackId, voter);
+        }
+        return voter;
+    }
+
+    private void recordDecision(int trackId, TemporalVoter voter, TemporalVoter.Outcome outcome) {
+        voters.remove(trackId);
+        decisions.incrementAndGet();
+        decisionFrames.addAndGet(voter.getFrames());
+        Log.d(TAG, "Track " + trackId + ": " + outcome + " after " + voter.getFrames() + " frames");
+    }
+
+    private float[] obtainInput() {
+        float[] input = inputPool.poll();
+        return input != null ? input : new float[FaceNetModel.INPUT_LENGTH];
+    }
+
+    private void recycleInputs(FrameJob job) {
+        for (float[] input : job.inputs) {
+            inputPool.offer(input);
+        }
+        job.inputs.clear();
+    }
+
+    private static class FrameJob {
+        private final long timestampMs;
+        private final FaceRecognitionHelper.RecognitionResult[] results;
+        private final Integer[] trackIds;
+        private final Rect[] bounds;
+        // Faces that need an embedding, and their preprocessed inputs
+        private final List<Integer> pending = new ArrayList<>();
+        private final List<float[]> inputs = new ArrayList<>();
+        // Faces the quality gate dropped, which abstain from their track's vote
+        private final List<Integer> gated = new ArrayList<>();
+        private List<float[]> embeddings;
+
+        FrameJob(int faceCount, long timestampMs) {
+            this.timestampMs = timestampMs;
+            this.results = new FaceRecognitionHelper.RecognitionResult[faceCount];
+            this.trackIds = new Integer[faceCount];
+            this.bounds = new Rect[faceCount];
+        }
+    }
+
+    /**
+     * Bounded blocking queue that evicts the oldest element instead of blocking producers
+     */
+    static class DropOldestQueue<T> {
+        private final ArrayDeque<T> items = new ArrayDeque<>();
+        private final int capacity;
+        private long dropCount = 0;
+        private boolean closed = false;
+
+        DropOldestQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * @return The element evicted to make room, or null
+         */
+        synchronized T offer(T item) {
+            if (closed) {
+                return item;
+            }
+            T dropped = null;
+            if (items.size() >= capacity) {
+                dropped = items.pollFirst();
+                dropCount++;
+            }
+            items.addLast(item);
+            notifyAll();
+            return dropped;
+        }
+
+        synchronized T take() throws InterruptedException {
+            while (items.isEmpty()) {
+                if (closed) {
+                    throw new InterruptedException("Queue closed");
+                }
+                wait();
+            }
+            return items.pollFirst();
+        }
+
+        synchronized int size() {
+            return items.size();
+        }
+
+        synchronized long getDropCount() {
+            return dropCount;
+        }
+
+        synchronized void close() {
+            closed = true;
+            items.clear();
+            notifyAll();
+        }
+    }
+}
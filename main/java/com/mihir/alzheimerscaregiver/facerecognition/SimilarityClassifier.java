@@ -214,28 +214,7 @@ public class SimilarityClassifier {
          * @return Similarity score between 0.0 and 1.0
          */
         public static float calculateCosineSimilarity(float[] embedding1, float[] embedding2) {
-            if (embedding1.length != embedding2.length) {
-                return 0f;
-            }
-
-            float dotProduct = 0f;
-            float norm1 = 0f;
-            float norm2 = 0f;
-
-            for (int i = 0; i < embedding1.length; i++) {
-                dotProduct += embedding1[i] * embedding2[i];
-                norm1 += embedding1[i] * embedding1[i];
-                norm2 += embedding2[i] * embedding2[i];
-            }
-
-            norm1 = (float) Math.sqrt(norm1);
-            norm2 = (float) Math.sqrt(norm2);
-
-            if (norm1 == 0f || norm2 == 0f) {
-                return 0f;
-            }
-
-            return dotProduct / (norm1 * norm2);
+            return SimilarityKernels.cosine(embedding1, embedding2);
         }
 
         /**
@@ -245,22 +224,14 @@ public class SimilarityClassifier {
          * @return Distance value (lower means more similar)
          */
         public static float calculateEuclideanDistance(float[] embedding1, float[] embedding2) {
-            if (embedding1.length != embedding2.length) {
-                return Float.MAX_VALUE;
-            }
-
-            float sum = 0f;
-            for (int i = 0; i < embedding1.length; i++) {
-                float diff = embedding1[i] - embedding2[i];
-                sum += diff * diff;
-            }
-
-            return (float) Math.sqrt(sum);
+            return SimilarityKernels.euclidean(embedding1, embedding2);
         }
 
         /**
-         * Find the best matching recognition from a list based on similarity threshold
-         * @param recognitions List of possible recognitions
+         * Find the best matching recognition from a list based on similarity threshold.
+         * Gallery searches should use {@link FaceGallery#findTopK}, which ranks without boxing
+         * and also reports the margin to the runner-up.
+         * @param recognitions List of possible recognitions, e.g. from {@link FaceNetClassifier}
          * @param threshold Minimum similarity threshold
          * @return Best matching Recognition or null if none meet threshold
          */
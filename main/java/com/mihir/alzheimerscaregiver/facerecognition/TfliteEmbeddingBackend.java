@@ -0,0 +1,53 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import android.content.Context;
+
+import java.util.List;
+
+/**
+ * {@link EmbeddingBackend} over the process-wide {@link FaceNetModel}. Holds one
+ * registry reference until {@link #close()}.
+ */
+public class TfliteEmbeddingBackend implements EmbeddingBackend {
+    private FaceNetModel model;
+
+    public TfliteEmbeddingBackend(Context context) {
+        this.model = FaceNetModelRegistry.acquire(context);
+    }
+
+    /**
+     * The underlying model, for the Bitmap and camera-frame paths that write straight
+     * into its input tensor; switches to the tuned model once warm-up has swapped it in
+     * @return Model, or null after {@link #close()}
+     */
+    public synchronized FaceNetModel getModel() {
+        if (model != null) {
+            model = FaceNetModelRegistry.refresh(model);
+        }
+        return model;
+    }
+
+    @Override
+    public int getInputSize() {
+        return FaceNetModel.INPUT_SIZE;
+    }
+
+    @Override
+    public int getEmbeddingSize() {
+        return FaceNetModel.EMBEDDING_SIZE;
+    }
+
+    @Override
+    public List<float[]> embed(List<float[]> inputs) {
+        FaceNetModel current = getModel();
+        return current != null ? current.getPreprocessedEmbeddings(inputs) : null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (model != null) {
+            FaceNetModelRegistry.release(model);
+            model = null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hand-off queue between {@link RecognitionPipeline} stages: producers never block,
+ * the oldest frames are dropped, and close releases a waiting worker.
+ */
+public class DropOldestQueueTest {
+
+    @Test
+    public void fullQueue_dropsTheOldestAndCountsIt() throws Exception {
+        RecognitionPipeline.DropOldestQueue<String> queue = new RecognitionPipeline.DropOldestQueue<>(2);
+        assertNull(queue.offer("frame1"));
+        assertNull(queue.offer("frame2"));
+        assertEquals("frame1", queue.offer("frame3"));
+        assertEquals("frame2", queue.offer("frame4"));
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.getDropCount());
+
+        assertEquals("frame3", queue.take());
+        assertNull(queue.offer("frame5"));
+        assertEquals("frame4", queue.take());
+        assertEquals("frame5", queue.take());
+        assertEquals(0, queue.size());
+        assertEquals(2, queue.getDropCount());
+    }
+
+    @Test
+    public void take_waitsForTheNextOffer() throws Exception {
+        RecognitionPipeline.DropOldestQueue<String> queue = new RecognitionPipeline.DropOldestQueue<>(2);
+        AtomicReference<String> taken = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            try {
+                taken.set(queue.take());
+            } catch (InterruptedException e) {
+                taken.set("interrupted");
+            }
+            done.countDown();
+        });
+        worker.start();
+
+        assertFalse("Nothing to take yet", done.await(100, TimeUnit.MILLISECONDS));
+        queue.offer("frame1");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("frame1", taken.get());
+    }
+
+    @Test
+    public void close_releasesAWaitingWorkerAndRejectsOffers() throws Exception {
+        RecognitionPipeline.DropOldestQueue<String> queue = new RecognitionPipeline.DropOldestQueue<>(2);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            try {
+                queue.take();
+            } catch (InterruptedException e) {
+                thrown.set(e);
+            }
+            done.countDown();
+        });
+        worker.start();
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        queue.close();
+        assertTrue("Close did not wake the worker", done.await(5, TimeUnit.SECONDS));
+        assertTrue(thrown.get() instanceof InterruptedException);
+
+        // Offers after close are handed back so the caller can release them
+        assertEquals("frame1", queue.offer("frame1"));
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.getDropCount());
+    }
+}
@@ -0,0 +1,104 @@
+package com.mihir.alzheimerscaregiver.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Selection, persistence and CPU fallback of {@link InterpreterTuner}, with a fake
+ * benchmark so it runs on any JVM.
+ */
+public class InterpreterTunerTest {
+
+    private static class MapStore implements InterpreterTuner.Store {
+        final Map<String, String> values = new HashMap<>();
+
+        @Override
+        public String get(String modelHash) {
+            return values.get(modelHash);
+        }
+
+        @Override
+        public void put(String modelHash, String configKey) {
+            values.put(modelHash, configKey);
+        }
+    }
+
+    @Test
+    public void tune_picksFastestAndSkipsFailingCandidates() {
+        MapStore store = new MapStore();
+        List<InterpreterConfig> tried = new ArrayList<>();
+
+        // Four threads with XNNPACK is fastest; NNAPI is not available here
+        InterpreterConfig best = new InterpreterTuner(store).tune("model",
+                InterpreterTuner.candidates(4, true),
+                (config, warmupRuns, timedRuns) -> {
+                    tried.add(config);
+                    if (config.useNnapi()) {
+                        throw new IllegalArgumentException("NNAPI delegate unavailable");
+                    }
+                    return 1000000L / config.getNumThreads() - (config.useXnnpack() ? 1000 : 0);
+                });
+
+        assertEquals(new InterpreterConfig(4, true, false), best);
+        assertEquals(9, tried.size());
+        assertEquals(best.toKey(), store.values.get("model"));
+    }
+
+    @Test
+    public void tune_reusesStoredConfigWithoutBenchmarking() {
+        MapStore store = new MapStore();
+        InterpreterConfig stored = new InterpreterConfig(2, false, false);
+        assertNull(new InterpreterTuner(store).getStored("model"));
+        store.put("model", stored.toKey());
+        assertEquals(stored, new InterpreterTuner(store).getStored("model"));
+
+        InterpreterConfig config = new InterpreterTuner(store).tune("model",
+                InterpreterTuner.candidates(4, false),
+                (c, warmupRuns, timedRuns) -> {
+                    fail("Stored configuration should be reused");
+                    return 0;
+                });
+
+        assertEquals(stored, config);
+    }
+
+    @Test
+    public void tune_fallsBackToCpuWhenNothingRuns() {
+        MapStore store = new MapStore();
+
+        InterpreterConfig config = new InterpreterTuner(store).tune("model",
+                InterpreterTuner.candidates(2, true),
+                (c, warmupRuns, timedRuns) -> {
+                    throw new UnsatisfiedLinkError("No native library");
+                });
+
+        assertEquals(InterpreterTuner.CPU_FALLBACK, config);
+        assertEquals(InterpreterTuner.CPU_FALLBACK.toKey(), store.values.get("model"));
+    }
+
+    @Test
+    public void configKey_roundTrips() {
+        InterpreterConfig config = new InterpreterConfig(3, false, true);
+        assertEquals(config, InterpreterConfig.fromKey(config.toKey()));
+        assertNull(InterpreterConfig.fromKey("threads=x"));
+        assertNull(InterpreterConfig.fromKey(null));
+    }
+
+    @Test
+    public void hash_dependsOnContentOnly() {
+        ByteBuffer a = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        ByteBuffer b = ByteBuffer.allocateDirect(4).put(new byte[]{1, 2, 3, 4});
+        b.flip();
+
+        assertEquals(InterpreterTuner.hash(a), InterpreterTuner.hash(b));
+        assertEquals(0, a.position());
+        assertNotEquals(InterpreterTuner.hash(a), InterpreterTuner.hash(ByteBuffer.wrap(new byte[]{1, 2, 3, 5})));
+    }
+}